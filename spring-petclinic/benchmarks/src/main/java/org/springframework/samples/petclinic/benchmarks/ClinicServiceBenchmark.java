@@ -0,0 +1,203 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Vet;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.repository.VetRepository;
+import org.springframework.samples.petclinic.service.ClinicService;
+import org.springframework.samples.petclinic.util.DatasetGenerator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Throughput and latency of the main {@link ClinicService} operations for each repository profile, against an
+ * in-memory HSQLDB database holding a generated dataset of {@link #owners} owners.
+ * <p/>
+ * With {@link #cache} set to "off", the owners cache, the last name index and the Hibernate second-level and query
+ * caches are disabled, and {@link #findVets} goes to the repository instead of the vets cache, so that every operation
+ * reaches the repositories of the profile being compared. With "on", the operations are served as in the application.
+ * <p/>
+ * Build the PetClinic war first (<code>mvn install</code> in the parent directory), then run for instance
+ * <pre>
+ * mvn clean package
+ * java -jar target/benchmarks.jar ClinicServiceBenchmark -p profile=jdbc,jpa -p owners=10000 -p cache=off
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ClinicServiceBenchmark {
+
+    private static final int SAVED_VISIT_PETS = 100;
+
+    /**
+     * A search by one of the generated last names matches about owners / LAST_NAME_COUNT owners.
+     */
+    private static final int LAST_NAME_COUNT = 500;
+
+    @Param({"jdbc", "jpa", "spring-data-jpa"})
+    public String profile;
+
+    @Param({"1000", "100000"})
+    public int owners;
+
+    @Param({"off", "on"})
+    public String cache;
+
+    private GenericXmlApplicationContext context;
+
+    private ClinicService clinicService;
+
+    private DatasetGenerator dataset;
+
+    private List<Pet> savedVisitPets;
+
+    /**
+     * Loads the vets from the repository when the caches are off.
+     */
+    private TransactionTemplate vetsTransaction;
+
+    private VetRepository vetRepository;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // a fresh database per trial, and no SQL logging in the measurements
+        System.setProperty("jdbc.url", "jdbc:hsqldb:mem:petclinic-" + this.profile + "-" + this.owners);
+        System.setProperty("jpa.showSql", "false");
+        boolean cached = this.cache.equals("on");
+        System.setProperty("owners.cache.maxOwners", cached ? "10000" : "0");
+        System.setProperty("owners.lastNameIndex", String.valueOf(cached));
+        System.setProperty("jpa.secondLevelCache", String.valueOf(cached));
+        System.setProperty("jpa.queryCache", String.valueOf(cached));
+
+        this.context = new GenericXmlApplicationContext();
+        this.context.getEnvironment().setActiveProfiles(this.profile);
+        this.context.load("classpath:spring/business-config.xml");
+        this.context.refresh();
+
+        this.dataset = new DatasetGenerator(this.context.getBean("dataSource", DataSource.class));
+        this.dataset.setSeed(42);
+        this.dataset.setOwners(this.owners);
+        this.dataset.setVets(100);
+        this.dataset.setLastNameCount(LAST_NAME_COUNT);
+        this.dataset.generate();
+        this.clinicService = this.context.getBean(ClinicService.class);
+        if (!cached) {
+            this.vetsTransaction = new TransactionTemplate(this.context.getBean(PlatformTransactionManager.class));
+            this.vetsTransaction.setReadOnly(true);
+            this.vetRepository = this.context.getBean(VetRepository.class);
+        }
+
+        this.savedVisitPets = new ArrayList<Pet>(SAVED_VISIT_PETS);
+        for (int i = 0; i < SAVED_VISIT_PETS; i++) {
+            this.savedVisitPets.add(this.clinicService.findPetById(
+                    this.dataset.getFirstPetId() + i % this.dataset.getPetCount()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.context.close();
+    }
+
+    @Benchmark
+    public Collection<Owner> findOwnerByLastName(ThreadState state) {
+        return this.clinicService.findOwnerByLastName(
+                this.dataset.getLastName(state.random.nextInt(LAST_NAME_COUNT)));
+    }
+
+    @Benchmark
+    public Owner findOwnerById(ThreadState state) {
+        return this.clinicService.findOwnerById(
+                this.dataset.getFirstOwnerId() + state.random.nextInt(this.dataset.getOwnerCount()));
+    }
+
+    @Benchmark
+    public Pet findPetById(ThreadState state) {
+        return this.clinicService.findPetById(
+                this.dataset.getFirstPetId() + state.random.nextInt(this.dataset.getPetCount()));
+    }
+
+    @Benchmark
+    public Collection<Vet> findVets() {
+        if (this.vetsTransaction == null) {
+            return this.clinicService.findVets();
+        }
+        return this.vetsTransaction.execute(new TransactionCallback<Collection<Vet>>() {
+            @Override
+            public Collection<Vet> doInTransaction(TransactionStatus status) {
+                Collection<Vet> vets = vetRepository.findAll();
+                // the specialties of the JPA profiles are lazy, and would be loaded by the view
+                for (Vet vet : vets) {
+                    vet.getNrOfSpecialties();
+                }
+                return vets;
+            }
+        });
+    }
+
+    @Benchmark
+    public Visit saveVisit(ThreadState state) {
+        Visit visit = new Visit();
+        visit.setDescription("benchmark");
+        // not added to the pet's visits, so that the shared pets do not grow during the run
+        visit.setPet(this.savedVisitPets.get(state.random.nextInt(SAVED_VISIT_PETS)));
+        this.clinicService.saveVisit(visit);
+        return visit;
+    }
+
+
+    /**
+     * Per-thread source of random ids and names, seeded so that runs are repeatable.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        final Random random = new Random(7);
+    }
+
+}
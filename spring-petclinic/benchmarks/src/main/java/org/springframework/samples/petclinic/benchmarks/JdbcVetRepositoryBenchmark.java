@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmarks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.ParameterizedBeanPropertyRowMapper;
+import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.samples.petclinic.model.Specialty;
+import org.springframework.samples.petclinic.model.Vet;
+import org.springframework.samples.petclinic.repository.jdbc.JdbcVetRepositoryImpl;
+import org.springframework.samples.petclinic.util.EntityUtils;
+import org.springframework.samples.petclinic.util.ReferenceDataCache;
+
+/**
+ * Compares {@link JdbcVetRepositoryImpl#findAll()}, which reads every vet and specialty from one joined result set,
+ * with the former implementation issuing one <code>vet_specialties</code> query per vet, for {@link #vets} vets in an
+ * in-memory HSQLDB database. Neither goes through the vets cache of the application.
+ * <pre>
+ * java -jar target/benchmarks.jar JdbcVetRepositoryBenchmark -p vets=10,1000
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class JdbcVetRepositoryBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int vets;
+
+    private EmbeddedDatabase database;
+
+    private JdbcVetRepositoryImpl singleJoinRepository;
+
+    private QueryPerVetLoader queryPerVetLoader;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("jdbcVetRepositoryBenchmark-" + this.vets)
+                .addScript("classpath:db/hsqldb/initDB.sql")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(this.database);
+        populate(jdbcTemplate, this.vets);
+        this.singleJoinRepository = new JdbcVetRepositoryImpl(jdbcTemplate, new ReferenceDataCache(this.database));
+        this.queryPerVetLoader = new QueryPerVetLoader(jdbcTemplate);
+        check(this.singleJoinRepository.findAll());
+        check(this.queryPerVetLoader.findAll());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.database.shutdown();
+    }
+
+    @Benchmark
+    public Collection<Vet> singleJoin() {
+        return this.singleJoinRepository.findAll();
+    }
+
+    @Benchmark
+    public Collection<Vet> queryPerVet() {
+        return this.queryPerVetLoader.findAll();
+    }
+
+    /**
+     * Inserts the given number of vets, with zero, one or two of the three specialties each.
+     */
+    private static void populate(JdbcTemplate jdbcTemplate, int vetCount) {
+        jdbcTemplate.update("INSERT INTO specialties VALUES (1, 'radiology')");
+        jdbcTemplate.update("INSERT INTO specialties VALUES (2, 'surgery')");
+        jdbcTemplate.update("INSERT INTO specialties VALUES (3, 'dentistry')");
+        List<Object[]> vets = new ArrayList<Object[]>(vetCount);
+        List<Object[]> vetSpecialties = new ArrayList<Object[]>(vetCount);
+        for (int id = 1; id <= vetCount; id++) {
+            vets.add(new Object[]{id, "First" + id, "Last" + (id % 997)});
+            for (int specialtyId = 1; specialtyId <= id % 3; specialtyId++) {
+                vetSpecialties.add(new Object[]{id, specialtyId});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO vets VALUES (?, ?, ?)", vets);
+        jdbcTemplate.batchUpdate("INSERT INTO vet_specialties VALUES (?, ?)", vetSpecialties);
+    }
+
+    private void check(Collection<Vet> loaded) {
+        if (loaded.size() != this.vets) {
+            throw new IllegalStateException("Expected " + this.vets + " vets but loaded " + loaded.size());
+        }
+    }
+
+
+    /**
+     * The previous {@link JdbcVetRepositoryImpl#findAll()} implementation: one query for the vets, one for the
+     * specialties, then one query per vet for its specialty ids, each resolved by scanning the specialties list.
+     */
+    private static class QueryPerVetLoader {
+
+        private final JdbcTemplate jdbcTemplate;
+
+        QueryPerVetLoader(JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        Collection<Vet> findAll() {
+            List<Vet> vets = this.jdbcTemplate.query(
+                    "SELECT id, first_name, last_name FROM vets ORDER BY last_name,first_name",
+                    ParameterizedBeanPropertyRowMapper.newInstance(Vet.class));
+            List<Specialty> specialties = this.jdbcTemplate.query(
+                    "SELECT id, name FROM specialties",
+                    ParameterizedBeanPropertyRowMapper.newInstance(Specialty.class));
+            for (Vet vet : vets) {
+                List<Integer> vetSpecialtiesIds = this.jdbcTemplate.query(
+                        "SELECT specialty_id FROM vet_specialties WHERE vet_id=?",
+                        new ParameterizedRowMapper<Integer>() {
+                            @Override
+                            public Integer mapRow(ResultSet rs, int row) throws SQLException {
+                                return Integer.valueOf(rs.getInt(1));
+                            }
+                        },
+                        vet.getId().intValue());
+                for (int specialtyId : vetSpecialtiesIds) {
+                    vet.addSpecialty(EntityUtils.getById(specialties, Specialty.class, specialtyId));
+                }
+            }
+            return vets;
+        }
+    }
+
+}
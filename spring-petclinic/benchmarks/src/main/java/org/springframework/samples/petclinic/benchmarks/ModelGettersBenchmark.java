@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.support.MutableSortDefinition;
+import org.springframework.beans.support.PropertyComparator;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Visit;
+
+/**
+ * Cost of walking an owner's pets and visits through their sorted getters the way the owner details page and the
+ * marshallers do, reading each list several times, for an owner with hundreds of visits.
+ * <p/>
+ * <code>sortedGetters</code> uses {@link Owner#getPets()} and {@link Pet#getVisits()}, which keep their sorted list
+ * until a pet or visit is added; <code>copyAndSortOnEachCall</code> repeats what the getters used to do on every call:
+ * copy the collection and sort it with a reflective {@link PropertyComparator}. Run with the GC profiler to compare
+ * the bytes allocated per operation:
+ * <pre>
+ * java -jar target/benchmarks.jar ModelGettersBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ModelGettersBenchmark {
+
+    private static final int PETS = 4;
+
+    /**
+     * Number of times each list is read per rendering, as by a JSP page iterating it and testing its size.
+     */
+    private static final int READS_PER_RENDERING = 3;
+
+    @Param({"100", "500"})
+    public int visitsPerPet;
+
+    private Owner owner;
+
+
+    @Setup
+    public void setUp() {
+        this.owner = new Owner();
+        this.owner.setId(1);
+        this.owner.setLastName("Franklin");
+        DateTime firstVisit = new DateTime(2013, 1, 1, 0, 0);
+        for (int p = 0; p < PETS; p++) {
+            Pet pet = new Pet();
+            pet.setId(p);
+            pet.setName("pet" + (PETS - p));
+            for (int v = 0; v < this.visitsPerPet; v++) {
+                Visit visit = new Visit();
+                visit.setId(p * this.visitsPerPet + v);
+                // not in date order, so that sorting has work to do
+                visit.setDate(firstVisit.plusDays((v * 7919) % this.visitsPerPet));
+                visit.setDescription("visit " + v);
+                pet.addVisit(visit);
+            }
+            this.owner.addPet(pet);
+        }
+    }
+
+    @Benchmark
+    public void sortedGetters(Blackhole blackhole) {
+        for (int i = 0; i < READS_PER_RENDERING; i++) {
+            for (Pet pet : this.owner.getPets()) {
+                for (Visit visit : pet.getVisits()) {
+                    blackhole.consume(visit);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void copyAndSortOnEachCall(Blackhole blackhole) {
+        for (int i = 0; i < READS_PER_RENDERING; i++) {
+            List<Pet> pets = new ArrayList<Pet>(this.owner.getPets());
+            PropertyComparator.sort(pets, new MutableSortDefinition("name", true, true));
+            for (Pet pet : pets) {
+                List<Visit> visits = new ArrayList<Visit>(pet.getVisits());
+                PropertyComparator.sort(visits, new MutableSortDefinition("date", false, false));
+                for (Visit visit : visits) {
+                    blackhole.consume(visit);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtests;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * The owners, last names and pets the virtual users pick from, read from the database of the embedded application.
+ */
+public class ClinicData {
+
+    private final String[] lastNames;
+
+    private final int[] ownerIds;
+
+    private final int[] petIds;
+
+    private final int[] petOwnerIds;
+
+
+    private ClinicData(String[] lastNames, int[] ownerIds, int[] petIds, int[] petOwnerIds) {
+        this.lastNames = lastNames;
+        this.ownerIds = ownerIds;
+        this.petIds = petIds;
+        this.petOwnerIds = petOwnerIds;
+    }
+
+    /**
+     * @return a DataSource on the database of the application, as configured by <code>data-access.properties</code>
+     *         and the system properties that override it
+     */
+    public static DataSource applicationDataSource() throws Exception {
+        Properties properties = PropertiesLoaderUtils.loadAllProperties("spring/data-access.properties");
+        properties.putAll(System.getProperties());
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(properties.getProperty("jdbc.url"),
+                properties.getProperty("jdbc.username"), properties.getProperty("jdbc.password"));
+        dataSource.setDriverClassName(properties.getProperty("jdbc.driverClassName"));
+        return dataSource;
+    }
+
+    public static ClinicData load(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        List<String> lastNames = jdbcTemplate.queryForList("SELECT DISTINCT last_name FROM owners", String.class);
+        List<Integer> ownerIds = jdbcTemplate.queryForList("SELECT id FROM owners", Integer.class);
+        int petCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pets", Integer.class);
+        final int[] petIds = new int[petCount];
+        final int[] petOwnerIds = new int[petCount];
+        jdbcTemplate.query("SELECT id, owner_id FROM pets", new RowCallbackHandler() {
+            private int row;
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                if (this.row < petIds.length) {
+                    petIds[this.row] = rs.getInt(1);
+                    petOwnerIds[this.row] = rs.getInt(2);
+                    this.row++;
+                }
+            }
+        });
+        if (ownerIds.isEmpty() || petCount == 0) {
+            throw new IllegalStateException("The database holds no owner or no pet");
+        }
+        int[] owners = new int[ownerIds.size()];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = ownerIds.get(i);
+        }
+        return new ClinicData(lastNames.toArray(new String[lastNames.size()]), owners, petIds, petOwnerIds);
+    }
+
+    public String randomLastName(Random random) {
+        return this.lastNames[random.nextInt(this.lastNames.length)];
+    }
+
+    public int randomOwnerId(Random random) {
+        return this.ownerIds[random.nextInt(this.ownerIds.length)];
+    }
+
+    /**
+     * @return the index of a random pet, for {@link #getPetId} and {@link #getPetOwnerId}
+     */
+    public int randomPet(Random random) {
+        return random.nextInt(this.petIds.length);
+    }
+
+    public int getPetId(int pet) {
+        return this.petIds[pet];
+    }
+
+    public int getPetOwnerId(int pet) {
+        return this.petOwnerIds[pet];
+    }
+
+    public int getOwnerCount() {
+        return this.ownerIds.length;
+    }
+
+    public int getPetCount() {
+        return this.petIds.length;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtests;
+
+import java.io.File;
+
+import javax.servlet.ServletException;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.deploy.ApplicationParameter;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * PetClinic deployed on an embedded Tomcat: the JSPs, static resources and <code>web.xml</code> come from the webapp
+ * directory of the quickstart, the classes and libraries from the classpath. The database is the in-memory HSQLDB of
+ * <code>data-access.properties</code>, created and populated on startup.
+ */
+public class EmbeddedPetclinic {
+
+    public static final String CONTEXT_PATH = "/petclinic";
+
+    private final Tomcat tomcat = new Tomcat();
+
+    private final File webappDirectory;
+
+    private final String profiles;
+
+
+    /**
+     * @param webappDirectory the <code>src/main/webapp</code> directory of the quickstart
+     * @param profiles        the active Spring profiles, replacing those of <code>web.xml</code> (e.g. "jdbc")
+     */
+    public EmbeddedPetclinic(File webappDirectory, String profiles) {
+        this.webappDirectory = webappDirectory;
+        this.profiles = profiles;
+    }
+
+    /**
+     * Start the container on the given port (0 for any free one), and wait until the application has started.
+     */
+    public void start(int port) throws ServletException, LifecycleException {
+        if (!new File(this.webappDirectory, "WEB-INF/web.xml").isFile()) {
+            throw new IllegalArgumentException("No WEB-INF/web.xml in " + this.webappDirectory.getAbsolutePath());
+        }
+        this.tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        this.tomcat.setPort(port);
+        Context context = this.tomcat.addWebapp(CONTEXT_PATH, this.webappDirectory.getAbsolutePath());
+        // takes precedence over the context-param of web.xml
+        ApplicationParameter activeProfiles = new ApplicationParameter();
+        activeProfiles.setName("spring.profiles.active");
+        activeProfiles.setValue(this.profiles);
+        activeProfiles.setOverride(false);
+        context.addApplicationParameter(activeProfiles);
+        this.tomcat.start();
+        if (!context.getState().isAvailable()) {
+            throw new IllegalStateException("PetClinic failed to start, see the log above");
+        }
+    }
+
+    /**
+     * @return the URL of the application, without trailing slash
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + this.tomcat.getConnector().getLocalPort() + CONTEXT_PATH;
+    }
+
+    public void stop() throws LifecycleException {
+        this.tomcat.stop();
+        this.tomcat.destroy();
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtests;
+
+/**
+ * The kinds of front desk traffic replayed by the virtual users, with the name used in the traffic mix and the report.
+ */
+public enum Operation {
+
+    /**
+     * Search owners by last name, as in the 'Find Owners' form (a single match is answered with a redirect).
+     */
+    FIND_OWNER("findOwner"),
+
+    /**
+     * Show an owner with its pets and their visits.
+     */
+    SHOW_OWNER("showOwner"),
+
+    /**
+     * Open the 'New Visit' form of a pet and submit it: two requests in the same session, timed together.
+     */
+    ADD_VISIT("addVisit"),
+
+    /**
+     * List the vets.
+     */
+    LIST_VETS("listVets");
+
+    private final String name;
+
+    private Operation(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public static Operation forName(String name) {
+        for (Operation operation : values()) {
+            if (operation.name.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation '" + name + "', expected one of findOwner, showOwner, " +
+                "addVisit and listVets");
+    }
+
+}
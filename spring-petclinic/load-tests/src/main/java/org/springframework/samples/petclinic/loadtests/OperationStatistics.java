@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtests;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.samples.petclinic.util.ConcurrentHistogram;
+
+/**
+ * Latencies of the successful runs of an operation, and the number of failed ones, shared by all virtual users.
+ * Percentiles are those of {@link ConcurrentHistogram}, within about 1.6% of the exact value.
+ */
+public class OperationStatistics {
+
+    private final ConcurrentHistogram latencies = new ConcurrentHistogram();
+
+    private final AtomicLong errors = new AtomicLong();
+
+
+    public void recordSuccess(long latencyNanos) {
+        this.latencies.recordValue(latencyNanos);
+    }
+
+    public void recordError() {
+        this.errors.incrementAndGet();
+    }
+
+    public long getCount() {
+        return this.latencies.getCount();
+    }
+
+    public long getErrors() {
+        return this.errors.get();
+    }
+
+    /**
+     * @return the figures of the report: successful and failed runs, runs per second over the given duration, and
+     *         latency mean, percentiles and max in milliseconds
+     */
+    public Map<String, Object> toReport(double seconds) {
+        Map<String, Object> latency = new LinkedHashMap<String, Object>();
+        latency.put("mean", toMillis(this.latencies.getMean()));
+        latency.put("p50", toMillis(this.latencies.getValueAtPercentile(50)));
+        latency.put("p90", toMillis(this.latencies.getValueAtPercentile(90)));
+        latency.put("p99", toMillis(this.latencies.getValueAtPercentile(99)));
+        latency.put("p999", toMillis(this.latencies.getValueAtPercentile(99.9)));
+        latency.put("max", toMillis(this.latencies.getMax()));
+
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("count", getCount());
+        report.put("errors", getErrors());
+        report.put("throughput", Math.round(getCount() / seconds * 10) / 10.0);
+        report.put("latencyMillis", latency);
+        return report;
+    }
+
+    private static double toMillis(double nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.samples.petclinic.util.DatasetGenerator;
+
+/**
+ * Load test of the PetClinic web tier: deploys the application on an embedded Tomcat against its in-memory HSQLDB
+ * database, has a number of virtual users replay a weighted mix of front desk operations (see {@link Operation})
+ * without pause or with a think time, and reports the throughput, latency percentiles and errors of each operation and
+ * of all of them as JSON, to be kept and compared between builds.
+ * <p/>
+ * Install the PetClinic war and its classes jar first (<code>mvn install</code> in the parent directory), then run for
+ * instance
+ * <pre>
+ * mvn compile exec:java -Dexec.args="--profile=jdbc --users=64 --duration=60 --output=target/jdbc-64.json"
+ * </pre>
+ * Options, all given as <code>--name=value</code>:
+ * <ul>
+ * <li><code>profile</code>: the active Spring profiles, e.g. <code>jpa,async</code> (default <code>jpa</code>)</li>
+ * <li><code>users</code>: the number of virtual users (default 16)</li>
+ * <li><code>warmup</code>, <code>duration</code>: seconds of unrecorded then recorded traffic (default 15 and 60)</li>
+ * <li><code>mix</code>: the weight of each operation (default
+ * <code>findOwner=30,showOwner=40,addVisit=10,listVets=20</code>); operations left out are not run</li>
+ * <li><code>thinkTime</code>: milliseconds each user waits between two operations (default 0)</li>
+ * <li><code>owners</code>: the number of owners generated by {@link DatasetGenerator} on top of the sample data
+ * (default 0)</li>
+ * <li><code>output</code>: the file the JSON report is written to (default: printed)</li>
+ * <li><code>webapp</code>: the webapp directory of the quickstart (default <code>../src/main/webapp</code>)</li>
+ * <li><code>port</code>: the HTTP port of the embedded Tomcat (default 0, any free port)</li>
+ * </ul>
+ */
+public class PetclinicLoadTest {
+
+    private static final String DEFAULT_MIX = "findOwner=30,showOwner=40,addVisit=10,listVets=20";
+
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        options.put("profile", "jpa");
+        options.put("users", "16");
+        options.put("warmup", "15");
+        options.put("duration", "60");
+        options.put("mix", DEFAULT_MIX);
+        options.put("thinkTime", "0");
+        options.put("owners", "0");
+        options.put("output", null);
+        options.put("webapp", "../src/main/webapp");
+        options.put("port", "0");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            if (!options.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown option '" + name + "', expected one of " +
+                        options.keySet());
+            }
+            options.put(name, arg.substring(separator + 1));
+        }
+        String profile = options.get("profile");
+        int users = Integer.parseInt(options.get("users"));
+        int warmupSeconds = Integer.parseInt(options.get("warmup"));
+        int durationSeconds = Integer.parseInt(options.get("duration"));
+        Map<Operation, Integer> mix = parseMix(options.get("mix"));
+        long thinkTimeMillis = Long.parseLong(options.get("thinkTime"));
+        int owners = Integer.parseInt(options.get("owners"));
+
+        // no SQL logging under load
+        System.setProperty("jpa.showSql", "false");
+        EmbeddedPetclinic petclinic = new EmbeddedPetclinic(new File(options.get("webapp")), profile);
+        petclinic.start(Integer.parseInt(options.get("port")));
+        Map<String, Object> report;
+        try {
+            if (owners > 0) {
+                DatasetGenerator dataset = new DatasetGenerator(ClinicData.applicationDataSource());
+                dataset.setSeed(42);
+                dataset.setOwners(owners);
+                dataset.generate();
+            }
+            ClinicData data = ClinicData.load(ClinicData.applicationDataSource());
+            Map<String, Object> settings = new LinkedHashMap<String, Object>();
+            settings.put("profile", profile);
+            settings.put("users", users);
+            settings.put("warmupSeconds", warmupSeconds);
+            settings.put("durationSeconds", durationSeconds);
+            settings.put("thinkTimeMillis", thinkTimeMillis);
+            settings.put("owners", data.getOwnerCount());
+            settings.put("pets", data.getPetCount());
+            Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+            for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+                weights.put(weight.getKey().getName(), weight.getValue());
+            }
+            settings.put("mix", weights);
+            report = new LinkedHashMap<String, Object>();
+            report.put("settings", settings);
+            report.putAll(run(petclinic.getBaseUrl(), data, mix, users, warmupSeconds, durationSeconds,
+                    thinkTimeMillis));
+        } finally {
+            petclinic.stop();
+        }
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        if (options.get("output") != null) {
+            File output = new File(options.get("output"));
+            mapper.writeValue(output, report);
+            System.out.println("Load test report written to " + output.getAbsolutePath());
+        } else {
+            System.out.println(mapper.writeValueAsString(report));
+        }
+    }
+
+    /**
+     * @param mix e.g. "findOwner=30,showOwner=40"
+     */
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] weight = part.trim().split("=");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight but got: " + part);
+            }
+            int value = Integer.parseInt(weight[1].trim());
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative weight: " + part);
+            }
+            weights.put(Operation.forName(weight[0].trim()), value);
+        }
+        return weights;
+    }
+
+    /**
+     * Run the virtual users for the warmup then the measured duration, and wait for them to finish.
+     *
+     * @return the report: statistics of all operations ("total") and of each one ("operations")
+     */
+    private static Map<String, Object> run(String baseUrl, ClinicData data, Map<Operation, Integer> mix, int users,
+                                           int warmupSeconds, int durationSeconds, long thinkTimeMillis)
+            throws InterruptedException {
+        List<Operation> schedule = new ArrayList<Operation>();
+        Map<Operation, OperationStatistics> statistics = new EnumMap<Operation, OperationStatistics>(Operation.class);
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+            for (int i = 0; i < weight.getValue(); i++) {
+                schedule.add(weight.getKey());
+            }
+            statistics.put(weight.getKey(), new OperationStatistics());
+        }
+        if (schedule.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operation with a positive weight");
+        }
+        OperationStatistics total = new OperationStatistics();
+
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Thread> threads = new ArrayList<Thread>(users);
+        for (int i = 0; i < users; i++) {
+            VirtualUser user = new VirtualUser(baseUrl, data, schedule.toArray(new Operation[schedule.size()]),
+                    statistics, total, measureFrom, end, thinkTimeMillis, i);
+            Thread thread = new Thread(user, "virtual-user-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<String, Object> operations = new LinkedHashMap<String, Object>();
+        for (Map.Entry<Operation, OperationStatistics> entry : statistics.entrySet()) {
+            if (mix.get(entry.getKey()) > 0) {
+                operations.put(entry.getKey().getName(), entry.getValue().toReport(durationSeconds));
+            }
+        }
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("total", total.toReport(durationSeconds));
+        report.put("operations", operations);
+        return report;
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A front desk replaying a mix of operations against the application in a loop, with its own HTTP session, until
+ * the end of the run. Runs started after the warmup are recorded in the shared statistics.
+ */
+public class VirtualUser implements Runnable {
+
+    private static final String VISIT_DESCRIPTION = "load test checkup";
+
+    private final String baseUrl;
+
+    private final ClinicData data;
+
+    private final Operation[] schedule;
+
+    private final Map<Operation, OperationStatistics> statistics;
+
+    private final OperationStatistics total;
+
+    private final long measureFromNanos;
+
+    private final long endNanos;
+
+    private final long thinkTimeMillis;
+
+    private final Random random;
+
+    private final SimpleDateFormat visitDateFormat = new SimpleDateFormat("yyyy/MM/dd");
+
+    private String sessionCookie;
+
+
+    /**
+     * @param schedule   the operations to pick from at random, each as many times as its weight in the mix
+     * @param statistics the statistics of each operation of the schedule
+     * @param total      the statistics of all operations
+     */
+    public VirtualUser(String baseUrl, ClinicData data, Operation[] schedule,
+                       Map<Operation, OperationStatistics> statistics, OperationStatistics total,
+                       long measureFromNanos, long endNanos, long thinkTimeMillis, long seed) {
+        this.baseUrl = baseUrl;
+        this.data = data;
+        this.schedule = schedule;
+        this.statistics = statistics;
+        this.total = total;
+        this.measureFromNanos = measureFromNanos;
+        this.endNanos = endNanos;
+        this.thinkTimeMillis = thinkTimeMillis;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < this.endNanos) {
+            Operation operation = this.schedule[this.random.nextInt(this.schedule.length)];
+            long start = System.nanoTime();
+            boolean success;
+            try {
+                success = perform(operation);
+            } catch (IOException ex) {
+                success = false;
+            }
+            if (start >= this.measureFromNanos) {
+                long latency = System.nanoTime() - start;
+                OperationStatistics operationStatistics = this.statistics.get(operation);
+                if (success) {
+                    operationStatistics.recordSuccess(latency);
+                    this.total.recordSuccess(latency);
+                } else {
+                    operationStatistics.recordError();
+                    this.total.recordError();
+                }
+            }
+            if (this.thinkTimeMillis > 0) {
+                try {
+                    Thread.sleep(this.thinkTimeMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the pages were served; redirects count as success and are not followed
+     */
+    private boolean perform(Operation operation) throws IOException {
+        switch (operation) {
+            case FIND_OWNER:
+                return get("/owners?lastName=" + encode(this.data.randomLastName(this.random))) < 400;
+            case SHOW_OWNER:
+                return get("/owners/" + this.data.randomOwnerId(this.random)) < 400;
+            case ADD_VISIT:
+                int pet = this.data.randomPet(this.random);
+                String form = "/owners/" + this.data.getPetOwnerId(pet) + "/pets/" + this.data.getPetId(pet) +
+                        "/visits/new";
+                // the form keeps the new visit in the session until it is submitted
+                if (get(form) != HttpURLConnection.HTTP_OK) {
+                    return false;
+                }
+                String visit = "date=" + encode(this.visitDateFormat.format(new Date())) +
+                        "&description=" + encode(VISIT_DESCRIPTION);
+                // saved visits are redirected to the owner page, invalid ones get the form again
+                return post(form, visit) == HttpURLConnection.HTTP_MOVED_TEMP;
+            case LIST_VETS:
+                return get("/vets") < 400;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private int get(String path) throws IOException {
+        return send(open(path));
+    }
+
+    private int post(String path, String form) throws IOException {
+        HttpURLConnection connection = open(path);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+        OutputStream body = connection.getOutputStream();
+        try {
+            body.write(form.getBytes("UTF-8"));
+        } finally {
+            body.close();
+        }
+        return send(connection);
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(this.baseUrl + path).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        if (this.sessionCookie != null) {
+            connection.setRequestProperty("Cookie", this.sessionCookie);
+        }
+        return connection;
+    }
+
+    private int send(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        List<String> cookies = connection.getHeaderFields().get("Set-Cookie");
+        if (cookies != null) {
+            for (String cookie : cookies) {
+                if (cookie.startsWith("JSESSIONID=")) {
+                    int end = cookie.indexOf(';');
+                    this.sessionCookie = (end < 0 ? cookie : cookie.substring(0, end));
+                }
+            }
+        }
+        InputStream body = (status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        if (body != null) {
+            // read the whole page so that the connection can be reused
+            byte[] buffer = new byte[8192];
+            try {
+                while (body.read(buffer) != -1) {
+                }
+            } finally {
+                body.close();
+            }
+        }
+        return status;
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Immutable dashboard figures of the clinic: the number of visits per month (<code>yyyy-MM</code>, oldest first), the
+ * number of pets per type (by type name) and the owners with the most visits, busiest first.
+ */
+public class ClinicStatistics {
+
+    private final long visitCount;
+
+    private final int petCount;
+
+    private final Map<String, Integer> visitsPerMonth;
+
+    private final Map<String, Integer> petsPerType;
+
+    private final List<OwnerActivity> busiestOwners;
+
+
+    public ClinicStatistics(long visitCount, int petCount, Map<String, Integer> visitsPerMonth,
+                            Map<String, Integer> petsPerType, List<OwnerActivity> busiestOwners) {
+        this.visitCount = visitCount;
+        this.petCount = petCount;
+        this.visitsPerMonth = Collections.unmodifiableMap(visitsPerMonth);
+        this.petsPerType = Collections.unmodifiableMap(petsPerType);
+        this.busiestOwners = Collections.unmodifiableList(busiestOwners);
+    }
+
+    public long getVisitCount() {
+        return this.visitCount;
+    }
+
+    public int getPetCount() {
+        return this.petCount;
+    }
+
+    public Map<String, Integer> getVisitsPerMonth() {
+        return this.visitsPerMonth;
+    }
+
+    public Map<String, Integer> getPetsPerType() {
+        return this.petsPerType;
+    }
+
+    public List<OwnerActivity> getBusiestOwners() {
+        return this.busiestOwners;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("visitCount", this.visitCount)
+                .append("petCount", this.petCount)
+                .append("visitsPerMonth", this.visitsPerMonth)
+                .append("petsPerType", this.petsPerType)
+                .append("busiestOwners", this.busiestOwners)
+                .toString();
+    }
+
+
+    /**
+     * An owner with the number of visits of all the owner's pets.
+     */
+    public static class OwnerActivity {
+
+        private final int ownerId;
+
+        private final String firstName;
+
+        private final String lastName;
+
+        private final int visitCount;
+
+        public OwnerActivity(int ownerId, String firstName, String lastName, int visitCount) {
+            this.ownerId = ownerId;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.visitCount = visitCount;
+        }
+
+        public int getOwnerId() {
+            return this.ownerId;
+        }
+
+        public String getFirstName() {
+            return this.firstName;
+        }
+
+        public String getLastName() {
+            return this.lastName;
+        }
+
+        public int getVisitCount() {
+            return this.visitCount;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringCreator(this)
+                    .append("ownerId", this.ownerId)
+                    .append("lastName", this.lastName)
+                    .append("visitCount", this.visitCount)
+                    .toString();
+        }
+    }
+}
@@ -15,12 +15,12 @@
  */
 package org.springframework.samples.petclinic.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -28,9 +28,9 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.validation.constraints.Digits;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.validator.constraints.NotEmpty;
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
 import org.springframework.core.style.ToStringCreator;
 
 /**
@@ -43,6 +43,8 @@ import org.springframework.core.style.ToStringCreator;
  */
 @Entity
 @Table(name = "owners")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Owner extends Person {
     @Column(name = "address")
     @NotEmpty
@@ -58,8 +60,18 @@ public class Owner extends Person {
     private String telephone;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private Set<Pet> pets;
 
+    private transient SortedCollectionView<Pet> sortedPets;
+
+    private static final Comparator<Pet> PETS_BY_NAME = new Comparator<Pet>() {
+        @Override
+        public int compare(Pet pet1, Pet pet2) {
+            return SortedCollectionView.compareNullsLast(pet1.getName(), pet2.getName(), String.CASE_INSENSITIVE_ORDER);
+        }
+    };
+
 
     public String getAddress() {
         return this.address;
@@ -87,6 +99,7 @@ public class Owner extends Person {
 
     protected void setPetsInternal(Set<Pet> pets) {
         this.pets = pets;
+        this.sortedPets = null;
     }
 
     protected Set<Pet> getPetsInternal() {
@@ -96,17 +109,33 @@ public class Owner extends Person {
         return this.pets;
     }
 
+    /**
+     * @return the pets of this owner sorted by name, ignoring case; the same read-only list is returned until a pet is
+     *         added
+     */
     public List<Pet> getPets() {
-        List<Pet> sortedPets = new ArrayList<Pet>(getPetsInternal());
-        PropertyComparator.sort(sortedPets, new MutableSortDefinition("name", true, true));
-        return Collections.unmodifiableList(sortedPets);
+        Set<Pet> pets = getPetsInternal();
+        SortedCollectionView<Pet> view = this.sortedPets;
+        if (view == null || !view.isViewOf(pets)) {
+            view = new SortedCollectionView<Pet>(pets, PETS_BY_NAME);
+            this.sortedPets = view;
+        }
+        return view.getList();
     }
 
     public void addPet(Pet pet) {
         getPetsInternal().add(pet);
+        this.sortedPets = null;
         pet.setOwner(this);
     }
 
+    /**
+     * Drop the sorted view of the pets, after the name of one of them has changed.
+     */
+    void petsChanged() {
+        this.sortedPets = null;
+    }
+
     /**
      * Return the Pet with the given name, or null if none found for this Owner.
      *
@@ -15,25 +15,25 @@
  */
 package org.springframework.samples.petclinic.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 import org.joda.time.DateTime;
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
 import org.springframework.format.annotation.DateTimeFormat;
 
 /**
@@ -45,6 +45,8 @@ import org.springframework.format.annotation.DateTimeFormat;
  */
 @Entity
 @Table(name = "pets")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Pet extends NamedEntity {
 
     @Column(name = "birth_date")
@@ -60,9 +62,36 @@ public class Pet extends NamedEntity {
     @JoinColumn(name = "owner_id")
     private Owner owner;
 
-    @OneToMany(cascade = CascadeType.ALL, mappedBy = "pet", fetch = FetchType.EAGER)
+    /**
+     * Lazy, so that lists of owners and pets do not read any visit; the first pet whose visits are read loads those of
+     * up to 50 pets of the same persistence context in a single query.
+     */
+    @OneToMany(cascade = CascadeType.ALL, mappedBy = "pet")
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private Set<Visit> visits;
 
+    private transient SortedCollectionView<Visit> sortedVisits;
+
+    private static final Comparator<Visit> VISITS_BY_DATE_DESCENDING = new Comparator<Visit>() {
+        @Override
+        public int compare(Visit visit1, Visit visit2) {
+            // swapped arguments: most recent first, and visits without a date before all others
+            return SortedCollectionView.compareNullsLast(visit2.getDate(), visit1.getDate());
+        }
+    };
+
+
+    /**
+     * Also drops the owner's sorted view of its pets, which are ordered by name.
+     */
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        if (this.owner != null) {
+            this.owner.petsChanged();
+        }
+    }
 
     public void setBirthDate(DateTime birthDate) {
         this.birthDate = birthDate;
@@ -90,6 +119,7 @@ public class Pet extends NamedEntity {
 
     protected void setVisitsInternal(Set<Visit> visits) {
         this.visits = visits;
+        this.sortedVisits = null;
     }
 
     protected Set<Visit> getVisitsInternal() {
@@ -99,15 +129,30 @@ public class Pet extends NamedEntity {
         return this.visits;
     }
 
+    /**
+     * @return the visits of this pet, most recent first; the same read-only list is returned until a visit is added
+     */
     public List<Visit> getVisits() {
-        List<Visit> sortedVisits = new ArrayList<Visit>(getVisitsInternal());
-        PropertyComparator.sort(sortedVisits, new MutableSortDefinition("date", false, false));
-        return Collections.unmodifiableList(sortedVisits);
+        Set<Visit> visits = getVisitsInternal();
+        SortedCollectionView<Visit> view = this.sortedVisits;
+        if (view == null || !view.isViewOf(visits)) {
+            view = new SortedCollectionView<Visit>(visits, VISITS_BY_DATE_DESCENDING);
+            this.sortedVisits = view;
+        }
+        return view.getList();
     }
 
     public void addVisit(Visit visit) {
         getVisitsInternal().add(visit);
+        this.sortedVisits = null;
         visit.setPet(this);
     }
 
+    /**
+     * Drop the sorted view of the visits, after the date of one of them has changed.
+     */
+    void visitsChanged() {
+        this.sortedVisits = null;
+    }
+
 }
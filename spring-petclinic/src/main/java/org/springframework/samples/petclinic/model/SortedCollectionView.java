@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorted, read-only copy of the collection behind a sorted getter such as {@link Owner#getPets()}, kept by the entity
+ * so that views, marshallers and serializers calling the getter repeatedly do not copy and sort the collection each
+ * time.
+ * <p/>
+ * A view is reused while the entity still holds the same collection instance with the same number of elements;
+ * entities also drop it when they add an element, and when the sort key of an element changes through {@link
+ * Pet#setName} or {@link Visit#setDate}. Specialties are shared reference data that is not renamed in place, so a vet's
+ * view only refreshes when a specialty is added. All fields are final, so a view can be shared between threads, as the
+ * cached vets are.
+ */
+final class SortedCollectionView<T> {
+
+    private final Collection<T> source;
+
+    private final int size;
+
+    private final List<T> sorted;
+
+    SortedCollectionView(Collection<T> source, Comparator<? super T> comparator) {
+        this.source = source;
+        this.size = source.size();
+        List<T> copy = new ArrayList<T>(source);
+        Collections.sort(copy, comparator);
+        this.sorted = Collections.unmodifiableList(copy);
+    }
+
+    boolean isViewOf(Collection<T> collection) {
+        return (collection == this.source && collection.size() == this.size);
+    }
+
+    List<T> getList() {
+        return this.sorted;
+    }
+
+    /**
+     * Compares two values in their natural order, placing <code>null</code> after any other value, as {@link
+     * org.springframework.beans.support.PropertyComparator} does.
+     */
+    static <V extends Comparable<? super V>> int compareNullsLast(V value1, V value2) {
+        if (value1 == null) {
+            return (value2 == null ? 0 : 1);
+        }
+        return (value2 == null ? -1 : value1.compareTo(value2));
+    }
+
+    /**
+     * Compares two values with the given comparator, placing <code>null</code> after any other value.
+     */
+    static <V> int compareNullsLast(V value1, V value2, Comparator<? super V> comparator) {
+        if (value1 == null) {
+            return (value2 == null ? 0 : 1);
+        }
+        return (value2 == null ? -1 : comparator.compare(value1, value2));
+    }
+
+}
@@ -15,22 +15,22 @@
  */
 package org.springframework.samples.petclinic.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
-import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlElement;
 
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Simple JavaBean domain object representing a veterinarian.
@@ -42,16 +42,34 @@ import org.springframework.beans.support.PropertyComparator;
  */
 @Entity
 @Table(name = "vets")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Vet extends Person {
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    /**
+     * Lazy: the list of vets fetches the specialties with a join, and any other vet loads those of up to 50 vets at once.
+     */
+    @ManyToMany
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(name = "vet_specialties", joinColumns = @JoinColumn(name = "vet_id"),
             inverseJoinColumns = @JoinColumn(name = "specialty_id"))
     private Set<Specialty> specialties;
 
+    private transient SortedCollectionView<Specialty> sortedSpecialties;
+
+    private static final Comparator<Specialty> SPECIALTIES_BY_NAME = new Comparator<Specialty>() {
+        @Override
+        public int compare(Specialty specialty1, Specialty specialty2) {
+            return SortedCollectionView.compareNullsLast(specialty1.getName(), specialty2.getName(),
+                    String.CASE_INSENSITIVE_ORDER);
+        }
+    };
+
 
     protected void setSpecialtiesInternal(Set<Specialty> specialties) {
         this.specialties = specialties;
+        this.sortedSpecialties = null;
     }
 
     protected Set<Specialty> getSpecialtiesInternal() {
@@ -61,11 +79,19 @@ public class Vet extends Person {
         return this.specialties;
     }
 
+    /**
+     * @return the specialties of this vet sorted by name, ignoring case; the same read-only list is returned until a
+     *         specialty is added
+     */
     @XmlElement
     public List<Specialty> getSpecialties() {
-        List<Specialty> sortedSpecs = new ArrayList<Specialty>(getSpecialtiesInternal());
-        PropertyComparator.sort(sortedSpecs, new MutableSortDefinition("name", true, true));
-        return Collections.unmodifiableList(sortedSpecs);
+        Set<Specialty> specialties = getSpecialtiesInternal();
+        SortedCollectionView<Specialty> view = this.sortedSpecialties;
+        if (view == null || !view.isViewOf(specialties)) {
+            view = new SortedCollectionView<Specialty>(specialties, SPECIALTIES_BY_NAME);
+            this.sortedSpecialties = view;
+        }
+        return view.getList();
     }
 
     public int getNrOfSpecialties() {
@@ -74,6 +100,7 @@ public class Vet extends Person {
 
     public void addSpecialty(Specialty specialty) {
         getSpecialtiesInternal().add(specialty);
+        this.sortedSpecialties = null;
     }
 
 }
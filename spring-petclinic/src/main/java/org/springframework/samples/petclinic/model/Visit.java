@@ -15,12 +15,15 @@
  */
 package org.springframework.samples.petclinic.model;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 import org.hibernate.validator.constraints.NotEmpty;
 import org.joda.time.DateTime;
@@ -33,6 +36,8 @@ import org.springframework.format.annotation.DateTimeFormat;
  */
 @Entity
 @Table(name = "visits")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Visit extends BaseEntity {
 
     /**
@@ -82,6 +87,10 @@ public class Visit extends BaseEntity {
      */
     public void setDate(DateTime date) {
         this.date = date;
+        // the pet's visits are ordered by date
+        if (this.pet != null) {
+            this.pet.visitsChanged();
+        }
     }
 
     /**
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Read-only view of a {@link Visit} found by a search on visit descriptions, with its relevance score and the names of
+ * its pet and owner. Built from a scalar query, like {@link OwnerSummary}; the date is formatted as
+ * <code>yyyy-MM-dd</code>.
+ */
+public class VisitSearchResult {
+
+    private Integer visitId;
+
+    private String date;
+
+    private String description;
+
+    private float score;
+
+    private Integer petId;
+
+    private String petName;
+
+    private String petType;
+
+    private Integer ownerId;
+
+    private String ownerFirstName;
+
+    private String ownerLastName;
+
+
+    public Integer getVisitId() {
+        return this.visitId;
+    }
+
+    public void setVisitId(Integer visitId) {
+        this.visitId = visitId;
+    }
+
+    public String getDate() {
+        return this.date;
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public float getScore() {
+        return this.score;
+    }
+
+    public void setScore(float score) {
+        this.score = score;
+    }
+
+    public Integer getPetId() {
+        return this.petId;
+    }
+
+    public void setPetId(Integer petId) {
+        this.petId = petId;
+    }
+
+    public String getPetName() {
+        return this.petName;
+    }
+
+    public void setPetName(String petName) {
+        this.petName = petName;
+    }
+
+    public String getPetType() {
+        return this.petType;
+    }
+
+    public void setPetType(String petType) {
+        this.petType = petType;
+    }
+
+    public Integer getOwnerId() {
+        return this.ownerId;
+    }
+
+    public void setOwnerId(Integer ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public String getOwnerFirstName() {
+        return this.ownerFirstName;
+    }
+
+    public void setOwnerFirstName(String ownerFirstName) {
+        this.ownerFirstName = ownerFirstName;
+    }
+
+    public String getOwnerLastName() {
+        return this.ownerLastName;
+    }
+
+    public void setOwnerLastName(String ownerLastName) {
+        this.ownerLastName = ownerLastName;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("visitId", this.visitId)
+                .append("score", this.score)
+                .append("description", this.description)
+                .append("petName", this.petName)
+                .append("ownerLastName", this.ownerLastName)
+                .toString();
+    }
+}
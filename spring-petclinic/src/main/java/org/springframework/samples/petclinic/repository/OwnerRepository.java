@@ -16,10 +16,14 @@
 package org.springframework.samples.petclinic.repository;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.samples.petclinic.model.BaseEntity;
 import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
 
 /**
  * Repository class for <code>Owner</code> domain objects All method names are compliant with Spring Data naming
@@ -42,6 +46,31 @@ public interface OwnerRepository {
      */
     Collection<Owner> findByLastName(String lastName) throws DataAccessException;
 
+    /**
+     * Retrieve one page of <code>Owner</code>s from the data store by last name, returning the owners whose last name
+     * <i>starts</i> with the given name. Owners are always ordered by last name then id, so that consecutive pages
+     * neither repeat nor skip an owner; any sort held by the <code>Pageable</code> is ignored.
+     *
+     * @param lastName Value to search for
+     * @param pageable the page number and page size to retrieve
+     * @return the requested <code>Page</code> of matching <code>Owner</code>s, along with the total number of matches
+     */
+    Page<Owner> findByLastName(String lastName, Pageable pageable) throws DataAccessException;
+
+    /**
+     * Retrieve a slice of lightweight <code>OwnerSummary</code> projections by last name, ordered by last name then id.
+     * The slice starts right after the owner identified by <code>afterLastName</code> and <code>afterId</code> (the
+     * last owner of the previous slice), so that each slice costs the same however deep the caller pages.
+     *
+     * @param lastName      Value to search for
+     * @param afterLastName last name of the last owner of the previous slice, or <code>null</code> for the first slice
+     * @param afterId       id of the last owner of the previous slice, or <code>null</code> for the first slice
+     * @param maxResults    maximum number of summaries to return
+     * @return a <code>List</code> of matching <code>OwnerSummary</code>s, each with its pet names sorted by name
+     */
+    List<OwnerSummary> findSummariesByLastName(String lastName, String afterLastName, Integer afterId, int maxResults)
+            throws DataAccessException;
+
     /**
      * Retrieve an <code>Owner</code> from the data store by id.
      *
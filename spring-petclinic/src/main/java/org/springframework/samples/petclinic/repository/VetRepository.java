@@ -38,5 +38,12 @@ public interface VetRepository {
      */
     Collection<Vet> findAll() throws DataAccessException;
 
+    /**
+     * Save a <code>Vet</code> and the list of its specialties to the data store, either inserting or updating it.
+     *
+     * @param vet the <code>Vet</code> to save
+     */
+    void save(Vet vet) throws DataAccessException;
+
 
 }
@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.dao.DataAccessException;
@@ -40,6 +41,14 @@ public interface VisitRepository {
      */
     void save(Visit visit) throws DataAccessException;
 
+    /**
+     * Insert a collection of new <code>Visit</code>s into the data store, sending them in batches rather than one
+     * statement per visit. Implementations are not required to assign ids to the saved visits.
+     *
+     * @param visits the new <code>Visit</code>s to insert
+     */
+    void saveVisits(Collection<Visit> visits) throws DataAccessException;
+
     List<Visit> findByPetId(Integer petId);
 
 }
@@ -15,28 +15,39 @@
  */
 package org.springframework.samples.petclinic.repository.jdbc;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.ParameterizedBeanPropertyRowMapper;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.orm.ObjectRetrievalFailureException;
 import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
 import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.model.PetType;
 import org.springframework.samples.petclinic.model.Visit;
 import org.springframework.samples.petclinic.repository.OwnerRepository;
 import org.springframework.samples.petclinic.repository.VisitRepository;
-import org.springframework.samples.petclinic.util.EntityUtils;
+import org.springframework.samples.petclinic.util.ReferenceDataCache;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -58,9 +69,15 @@ public class JdbcOwnerRepositoryImpl implements OwnerRepository {
 
     private SimpleJdbcInsert insertOwner;
 
+    private ReferenceDataCache referenceDataCache;
+
+    private boolean batchLoading = true;
+
+    private int batchSize = 500;
+
     @Autowired
     public JdbcOwnerRepositoryImpl(DataSource dataSource, NamedParameterJdbcTemplate namedParameterJdbcTemplate,
-                                   VisitRepository visitRepository) {
+                                   VisitRepository visitRepository, ReferenceDataCache referenceDataCache) {
 
         this.insertOwner = new SimpleJdbcInsert(dataSource)
                 .withTableName("owners")
@@ -69,6 +86,24 @@ public class JdbcOwnerRepositoryImpl implements OwnerRepository {
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
 
         this.visitRepository = visitRepository;
+        this.referenceDataCache = referenceDataCache;
+    }
+
+    /**
+     * Whether {@link #findByLastName} loads pets and visits with one set-based query per chunk of owners (the default)
+     * or with one query per owner and per pet.
+     */
+    @Value("${jdbc.batchLoading:true}")
+    public void setBatchLoading(boolean batchLoading) {
+        this.batchLoading = batchLoading;
+    }
+
+    /**
+     * Maximum number of ids bound to a single <code>IN (...)</code> clause when batch loading is enabled.
+     */
+    @Value("${jdbc.batchLoadingSize:500}")
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
     }
 
 
@@ -90,6 +125,77 @@ public class JdbcOwnerRepositoryImpl implements OwnerRepository {
         return owners;
     }
 
+    /**
+     * Loads one page of {@link Owner Owners} by last name, ordered by last name and id, together with their {@link Pet
+     * Pets} and {@link Visit Visits}. The total is counted first so that out-of-range pages skip the owners query.
+     */
+    @Override
+    public Page<Owner> findByLastName(String lastName, Pageable pageable) throws DataAccessException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("lastName", lastName + "%");
+        int total = this.namedParameterJdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM owners WHERE last_name like :lastName", params, Integer.class);
+        if (total <= pageable.getOffset()) {
+            return new PageImpl<Owner>(Collections.<Owner>emptyList(), pageable, total);
+        }
+        params.put("limit", pageable.getPageSize());
+        params.put("offset", pageable.getOffset());
+        List<Owner> owners = this.namedParameterJdbcTemplate.query(
+                "SELECT id, first_name, last_name, address, city, telephone FROM owners WHERE last_name like :lastName " +
+                        "ORDER BY last_name, id LIMIT :limit OFFSET :offset",
+                params,
+                ParameterizedBeanPropertyRowMapper.newInstance(Owner.class)
+        );
+        loadOwnersPetsAndVisits(owners);
+        return new PageImpl<Owner>(owners, pageable, total);
+    }
+
+    /**
+     * Loads {@link OwnerSummary OwnerSummaries} by last name, starting after the given owner, then adds the pet names
+     * with a single <code>pets</code> query; pet types and visits are not read at all.
+     */
+    @Override
+    public List<OwnerSummary> findSummariesByLastName(String lastName, String afterLastName, Integer afterId,
+                                                      int maxResults) throws DataAccessException {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("lastName", lastName + "%");
+        params.put("limit", maxResults);
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, first_name, last_name, address, city, telephone FROM owners WHERE last_name like :lastName");
+        if (afterLastName != null && afterId != null) {
+            sql.append(" AND (last_name > :afterLastName OR (last_name = :afterLastName AND id > :afterId))");
+            params.put("afterLastName", afterLastName);
+            params.put("afterId", afterId);
+        }
+        sql.append(" ORDER BY last_name, id LIMIT :limit");
+        List<OwnerSummary> summaries = this.namedParameterJdbcTemplate.query(
+                sql.toString(),
+                params,
+                ParameterizedBeanPropertyRowMapper.newInstance(OwnerSummary.class)
+        );
+        if (summaries.isEmpty()) {
+            return summaries;
+        }
+
+        final Map<Integer, OwnerSummary> summariesById = new HashMap<Integer, OwnerSummary>(summaries.size() * 2);
+        for (OwnerSummary summary : summaries) {
+            summariesById.put(summary.getId(), summary);
+        }
+        Map<String, Object> petParams = new HashMap<String, Object>();
+        petParams.put("ids", new ArrayList<Integer>(summariesById.keySet()));
+        this.namedParameterJdbcTemplate.query(
+                "SELECT owner_id, name FROM pets WHERE owner_id IN (:ids) ORDER BY name",
+                petParams,
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        summariesById.get(rs.getInt("owner_id")).addPetName(rs.getString("name"));
+                    }
+                }
+        );
+        return summaries;
+    }
+
     /**
      * Loads the {@link Owner} with the supplied <code>id</code>; also loads the {@link Pet Pets} and {@link Visit Visits}
      * for the corresponding owner, if not already loaded.
@@ -122,7 +228,7 @@ public class JdbcOwnerRepositoryImpl implements OwnerRepository {
         );
         for (JdbcPet pet : pets) {
             owner.addPet(pet);
-            pet.setType(EntityUtils.getById(getPetTypes(), PetType.class, pet.getTypeId()));
+            pet.setType(this.referenceDataCache.getPetType(pet.getTypeId()));
             List<Visit> visits = this.visitRepository.findByPetId(pet.getId());
             for (Visit visit : visits) {
                 pet.addVisit(visit);
@@ -145,9 +251,7 @@ public class JdbcOwnerRepositoryImpl implements OwnerRepository {
     }
 
     public Collection<PetType> getPetTypes() throws DataAccessException {
-        return this.namedParameterJdbcTemplate.query(
-                "SELECT id, name FROM types ORDER BY name", new HashMap<String, Object>(),
-                ParameterizedBeanPropertyRowMapper.newInstance(PetType.class));
+        return this.referenceDataCache.getPetTypes();
     }
 
     /**
@@ -155,12 +259,73 @@ public class JdbcOwnerRepositoryImpl implements OwnerRepository {
      *
      * @param owners the list of owners for whom the pet and visit data should be loaded
      * @see #loadPetsAndVisits(Owner)
+     * @see #loadPetsAndVisitsInBatches(List)
      */
     private void loadOwnersPetsAndVisits(List<Owner> owners) {
-        for (Owner owner : owners) {
-            loadPetsAndVisits(owner);
+        if (this.batchLoading) {
+            loadPetsAndVisitsInBatches(owners);
+        } else {
+            for (Owner owner : owners) {
+                loadPetsAndVisits(owner);
+            }
         }
     }
 
+    /**
+     * Loads the {@link Pet} and {@link Visit} data for the supplied {@link List} of {@link Owner Owners} using one
+     * <code>pets</code> query and one <code>visits</code> query per chunk of {@link #setBatchSize batchSize} owners,
+     * then stitches the rows together in memory.
+     */
+    private void loadPetsAndVisitsInBatches(List<Owner> owners) {
+        if (owners.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < owners.size(); from += this.batchSize) {
+            List<Owner> chunk = owners.subList(from, Math.min(from + this.batchSize, owners.size()));
+            Map<Integer, Owner> ownersById = new HashMap<Integer, Owner>(chunk.size() * 2);
+            for (Owner owner : chunk) {
+                ownersById.put(owner.getId(), owner);
+            }
+
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("ids", new ArrayList<Integer>(ownersById.keySet()));
+            List<JdbcPet> pets = this.namedParameterJdbcTemplate.query(
+                    "SELECT id, name, birth_date, type_id, owner_id FROM pets WHERE owner_id IN (:ids)",
+                    params,
+                    new JdbcPetRowMapper()
+            );
+            if (pets.isEmpty()) {
+                continue;
+            }
+
+            final Map<Integer, JdbcPet> petsById = new LinkedHashMap<Integer, JdbcPet>(pets.size() * 2);
+            for (JdbcPet pet : pets) {
+                ownersById.get(pet.getOwnerId()).addPet(pet);
+                pet.setType(this.referenceDataCache.getPetType(pet.getTypeId()));
+                petsById.put(pet.getId(), pet);
+            }
+            loadVisitsInBatches(petsById);
+        }
+    }
+
+    private void loadVisitsInBatches(final Map<Integer, JdbcPet> petsById) {
+        final JdbcVisitRowMapper visitRowMapper = new JdbcVisitRowMapper();
+        List<Integer> petIds = new ArrayList<Integer>(petsById.keySet());
+        for (int from = 0; from < petIds.size(); from += this.batchSize) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("ids", petIds.subList(from, Math.min(from + this.batchSize, petIds.size())));
+            this.namedParameterJdbcTemplate.query(
+                    "SELECT id, visit_date, description, pet_id FROM visits WHERE pet_id IN (:ids)",
+                    params,
+                    new RowCallbackHandler() {
+                        @Override
+                        public void processRow(ResultSet rs) throws SQLException {
+                            Visit visit = visitRowMapper.mapRow(rs, rs.getRow());
+                            petsById.get(rs.getInt("pet_id")).addVisit(visit);
+                        }
+                    }
+            );
+        }
+    }
 
 }
@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.repository.jdbc;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +27,6 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.simple.ParameterizedBeanPropertyRowMapper;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.orm.ObjectRetrievalFailureException;
 import org.springframework.samples.petclinic.model.Owner;
@@ -36,7 +36,7 @@ import org.springframework.samples.petclinic.model.Visit;
 import org.springframework.samples.petclinic.repository.OwnerRepository;
 import org.springframework.samples.petclinic.repository.PetRepository;
 import org.springframework.samples.petclinic.repository.VisitRepository;
-import org.springframework.samples.petclinic.util.EntityUtils;
+import org.springframework.samples.petclinic.util.ReferenceDataCache;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -58,9 +58,11 @@ public class JdbcPetRepositoryImpl implements PetRepository {
 
     private VisitRepository visitRepository;
 
+    private ReferenceDataCache referenceDataCache;
 
     @Autowired
-    public JdbcPetRepositoryImpl(DataSource dataSource, OwnerRepository ownerRepository, VisitRepository visitRepository) {
+    public JdbcPetRepositoryImpl(DataSource dataSource, OwnerRepository ownerRepository, VisitRepository visitRepository,
+                                 ReferenceDataCache referenceDataCache) {
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
 
         this.insertPet = new SimpleJdbcInsert(dataSource)
@@ -69,15 +71,12 @@ public class JdbcPetRepositoryImpl implements PetRepository {
 
         this.ownerRepository = ownerRepository;
         this.visitRepository = visitRepository;
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
     public List<PetType> findPetTypes() throws DataAccessException {
-        Map<String, Object> params = new HashMap<String, Object>();
-        return this.namedParameterJdbcTemplate.query(
-                "SELECT id, name FROM types ORDER BY name",
-                params,
-                ParameterizedBeanPropertyRowMapper.newInstance(PetType.class));
+        return new ArrayList<PetType>(this.referenceDataCache.getPetTypes());
     }
 
     @Override
@@ -95,7 +94,7 @@ public class JdbcPetRepositoryImpl implements PetRepository {
         }
         Owner owner = this.ownerRepository.findById(pet.getOwnerId());
         owner.addPet(pet);
-        pet.setType(EntityUtils.getById(findPetTypes(), PetType.class, pet.getTypeId()));
+        pet.setType(this.referenceDataCache.getPetType(pet.getTypeId()));
 
         List<Visit> visits = this.visitRepository.findByPetId(pet.getId());
         for (Visit visit : visits) {
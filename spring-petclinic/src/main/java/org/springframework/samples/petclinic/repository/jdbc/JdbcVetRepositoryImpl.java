@@ -19,22 +19,25 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.ParameterizedBeanPropertyRowMapper;
-import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.samples.petclinic.model.Specialty;
 import org.springframework.samples.petclinic.model.Vet;
 import org.springframework.samples.petclinic.repository.VetRepository;
-import org.springframework.samples.petclinic.util.EntityUtils;
+import org.springframework.samples.petclinic.util.ReferenceDataCache;
 import org.springframework.stereotype.Repository;
 
 /**
- * A simple JDBC-based implementation of the {@link VetRepository} interface. Uses @Cacheable to cache the result of the
- * {@link findAll} method
+ * A simple JDBC-based implementation of the {@link VetRepository} interface. The result of {@link #findAll} is cached by
+ * {@link org.springframework.samples.petclinic.service.VetsCache}
  *
  * @author Ken Krebs
  * @author Juergen Hoeller
@@ -49,45 +52,91 @@ public class JdbcVetRepositoryImpl implements VetRepository {
 
     private JdbcTemplate jdbcTemplate;
 
+    private ReferenceDataCache referenceDataCache;
+
+    private SimpleJdbcInsert insertVet;
+
     @Autowired
-    public JdbcVetRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    public JdbcVetRepositoryImpl(JdbcTemplate jdbcTemplate, ReferenceDataCache referenceDataCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.referenceDataCache = referenceDataCache;
+        this.insertVet = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("vets")
+                .usingGeneratedKeyColumns("id");
     }
 
     /**
-     * Refresh the cache of Vets that the ClinicService is holding.
+     * Refresh the cache of Vets that the ClinicService is holding. All vets and their specialties are read from a
+     * single <code>vets LEFT JOIN vet_specialties</code> result set, one row per vet and specialty (or one row for a
+     * vet without specialties).
      *
      * @see org.springframework.samples.petclinic.model.service.ClinicService#findVets()
      */
     @Override
     public Collection<Vet> findAll() throws DataAccessException {
-        List<Vet> vets = new ArrayList<Vet>();
-        // Retrieve the list of all vets.
-        vets.addAll(this.jdbcTemplate.query(
-                "SELECT id, first_name, last_name FROM vets ORDER BY last_name,first_name",
-                ParameterizedBeanPropertyRowMapper.newInstance(Vet.class)));
+        return this.jdbcTemplate.query(
+                "SELECT vets.id, vets.first_name, vets.last_name, vet_specialties.specialty_id " +
+                        "FROM vets LEFT JOIN vet_specialties ON vets.id = vet_specialties.vet_id " +
+                        "ORDER BY vets.last_name, vets.first_name, vets.id",
+                new VetsWithSpecialtiesExtractor(this.referenceDataCache));
+    }
 
-        // Retrieve the list of all possible specialties.
-        final List<Specialty> specialties = this.jdbcTemplate.query(
-                "SELECT id, name FROM specialties",
-                ParameterizedBeanPropertyRowMapper.newInstance(Specialty.class));
+    /**
+     * Inserts or updates the vet, then replaces its rows in <code>vet_specialties</code> with a single batch.
+     */
+    @Override
+    public void save(Vet vet) throws DataAccessException {
+        if (vet.isNew()) {
+            Number newKey = this.insertVet.executeAndReturnKey(new MapSqlParameterSource()
+                    .addValue("first_name", vet.getFirstName())
+                    .addValue("last_name", vet.getLastName()));
+            vet.setId(newKey.intValue());
+        } else {
+            this.jdbcTemplate.update("UPDATE vets SET first_name=?, last_name=? WHERE id=?",
+                    vet.getFirstName(), vet.getLastName(), vet.getId());
+            this.jdbcTemplate.update("DELETE FROM vet_specialties WHERE vet_id=?", vet.getId());
+        }
+        List<Object[]> vetSpecialties = new ArrayList<Object[]>(vet.getNrOfSpecialties());
+        for (Specialty specialty : vet.getSpecialties()) {
+            vetSpecialties.add(new Object[]{vet.getId(), specialty.getId()});
+        }
+        if (!vetSpecialties.isEmpty()) {
+            this.jdbcTemplate.batchUpdate("INSERT INTO vet_specialties (vet_id, specialty_id) VALUES (?, ?)", vetSpecialties);
+        }
+    }
+
+
+    /**
+     * Builds each vet once, in result set order, and adds the specialty of every joined row to it.
+     */
+    private static class VetsWithSpecialtiesExtractor implements ResultSetExtractor<Collection<Vet>> {
+
+        private final ReferenceDataCache referenceDataCache;
+
+        public VetsWithSpecialtiesExtractor(ReferenceDataCache referenceDataCache) {
+            this.referenceDataCache = referenceDataCache;
+        }
 
-        // Build each vet's list of specialties.
-        for (Vet vet : vets) {
-            final List<Integer> vetSpecialtiesIds = this.jdbcTemplate.query(
-                    "SELECT specialty_id FROM vet_specialties WHERE vet_id=?",
-                    new ParameterizedRowMapper<Integer>() {
-                        @Override
-                        public Integer mapRow(ResultSet rs, int row) throws SQLException {
-                            return Integer.valueOf(rs.getInt(1));
-                        }
-                    },
-                    vet.getId().intValue());
-            for (int specialtyId : vetSpecialtiesIds) {
-                Specialty specialty = EntityUtils.getById(specialties, Specialty.class, specialtyId);
-                vet.addSpecialty(specialty);
+        @Override
+        public Collection<Vet> extractData(ResultSet rs) throws SQLException {
+            Map<Integer, Vet> vets = new LinkedHashMap<Integer, Vet>();
+            while (rs.next()) {
+                Integer vetId = rs.getInt(1);
+                Vet vet = vets.get(vetId);
+                if (vet == null) {
+                    vet = new Vet();
+                    vet.setId(vetId);
+                    vet.setFirstName(rs.getString(2));
+                    vet.setLastName(rs.getString(3));
+                    vets.put(vetId, vet);
+                }
+                int specialtyId = rs.getInt(4);
+                if (!rs.wasNull()) {
+                    // a specialty added since the reference data was read is picked up by a reload
+                    vet.addSpecialty(this.referenceDataCache.getSpecialty(specialtyId));
+                }
             }
+            return new ArrayList<Vet>(vets.values());
         }
-        return vets;
     }
 }
@@ -15,19 +15,20 @@
  */
 package org.springframework.samples.petclinic.repository.jdbc;
 
-import java.sql.ResultSet;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.Date;
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 
 import javax.sql.DataSource;
 
-import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.samples.petclinic.model.Visit;
 import org.springframework.samples.petclinic.repository.VisitRepository;
@@ -51,6 +52,8 @@ public class JdbcVisitRepositoryImpl implements VisitRepository {
 
     private SimpleJdbcInsert insertVisit;
 
+    private int importBatchSize = 500;
+
     @Autowired
     public JdbcVisitRepositoryImpl(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
@@ -60,6 +63,14 @@ public class JdbcVisitRepositoryImpl implements VisitRepository {
                 .usingGeneratedKeyColumns("id");
     }
 
+    /**
+     * Number of visits sent to the database in a single JDBC batch by {@link #saveVisits}.
+     */
+    @Value("${visits.importBatchSize:500}")
+    public void setImportBatchSize(int importBatchSize) {
+        this.importBatchSize = importBatchSize;
+    }
+
 
     @Override
     public void save(Visit visit) throws DataAccessException {
@@ -72,6 +83,26 @@ public class JdbcVisitRepositoryImpl implements VisitRepository {
         }
     }
 
+    /**
+     * Inserts the visits with {@link JdbcTemplate#batchUpdate(String, Collection, int, ParameterizedPreparedStatementSetter)
+     * JDBC batches} of {@link #setImportBatchSize importBatchSize} rows. Generated keys are not read back, so the
+     * saved visits keep a <code>null</code> id.
+     */
+    @Override
+    public void saveVisits(Collection<Visit> visits) throws DataAccessException {
+        this.jdbcTemplate.batchUpdate(
+                "INSERT INTO visits (pet_id, visit_date, description) VALUES (?, ?, ?)",
+                visits, this.importBatchSize,
+                new ParameterizedPreparedStatementSetter<Visit>() {
+                    @Override
+                    public void setValues(PreparedStatement ps, Visit visit) throws SQLException {
+                        ps.setInt(1, visit.getPet().getId());
+                        ps.setTimestamp(2, new Timestamp(visit.getDate().getMillis()));
+                        ps.setString(3, visit.getDescription());
+                    }
+                });
+    }
+
     public void deletePet(int id) throws DataAccessException {
         this.jdbcTemplate.update("DELETE FROM pets WHERE id=?", id);
     }
@@ -90,21 +121,10 @@ public class JdbcVisitRepositoryImpl implements VisitRepository {
 
     @Override
     public List<Visit> findByPetId(Integer petId) {
-        final List<Visit> visits = this.jdbcTemplate.query(
+        return this.jdbcTemplate.query(
                 "SELECT id, visit_date, description FROM visits WHERE pet_id=?",
-                new ParameterizedRowMapper<Visit>() {
-                    @Override
-                    public Visit mapRow(ResultSet rs, int row) throws SQLException {
-                        Visit visit = new Visit();
-                        visit.setId(rs.getInt("id"));
-                        Date visitDate = rs.getDate("visit_date");
-                        visit.setDate(new DateTime(visitDate));
-                        visit.setDescription(rs.getString("description"));
-                        return visit;
-                    }
-                },
+                new JdbcVisitRowMapper(),
                 petId);
-        return visits;
     }
 
 }
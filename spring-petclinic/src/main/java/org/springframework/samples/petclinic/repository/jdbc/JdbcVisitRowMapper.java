@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.repository.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.springframework.jdbc.core.simple.ParameterizedRowMapper;
+import org.springframework.samples.petclinic.model.Visit;
+
+/**
+ * {@link ParameterizedRowMapper} implementation mapping data from a {@link ResultSet} to the corresponding properties
+ * of the {@link Visit} class.
+ */
+class JdbcVisitRowMapper implements ParameterizedRowMapper<Visit> {
+
+    @Override
+    public Visit mapRow(ResultSet rs, int rownum) throws SQLException {
+        Visit visit = new Visit();
+        visit.setId(rs.getInt("id"));
+        Date visitDate = rs.getDate("visit_date");
+        visit.setDate(new DateTime(visitDate));
+        visit.setDescription(rs.getString("description"));
+        return visit;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.repository.jpa;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
+
+/**
+ * JPA queries on owners shared by {@link JpaOwnerRepositoryImpl} and the Spring Data JPA repository, which run them
+ * with their own {@link EntityManager}.
+ */
+public abstract class JpaOwnerQueries {
+
+    /**
+     * Loads one page of owners by last name, ordered by last name and id, together with their pets.
+     * <p/>
+     * Paging a 'join fetch' query would make Hibernate apply the limit in memory after reading every matching row, so
+     * the page is first cut on owner ids and only the owners of that page are then loaded with their pets. The total is
+     * counted first so that out-of-range pages skip both queries.
+     *
+     * @param em the entity manager of the calling repository
+     */
+    @SuppressWarnings("unchecked")
+    public static Page<Owner> findByLastName(EntityManager em, String lastName, Pageable pageable) {
+        Query countQuery = em.createQuery("SELECT count(owner) FROM Owner owner WHERE owner.lastName LIKE :lastName");
+        countQuery.setParameter("lastName", lastName + "%");
+        long total = (Long) countQuery.getSingleResult();
+        if (total <= pageable.getOffset()) {
+            return new PageImpl<Owner>(Collections.<Owner>emptyList(), pageable, total);
+        }
+
+        Query idQuery = em.createQuery("SELECT owner.id FROM Owner owner WHERE owner.lastName LIKE :lastName ORDER BY owner.lastName, owner.id");
+        idQuery.setParameter("lastName", lastName + "%");
+        idQuery.setFirstResult(pageable.getOffset());
+        idQuery.setMaxResults(pageable.getPageSize());
+        List<Integer> ids = idQuery.getResultList();
+
+        Query query = em.createQuery("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.id IN (:ids) ORDER BY owner.lastName, owner.id");
+        query.setParameter("ids", ids);
+        return new PageImpl<Owner>(query.getResultList(), pageable, total);
+    }
+
+    /**
+     * Loads a keyset-paged projection of owners by last name, starting after the given owner: the owner columns are
+     * selected into {@link OwnerSummary} instances with a constructor expression, then the pet names are added with a
+     * second scalar query, so no entity is loaded into the persistence context.
+     *
+     * @param em the entity manager of the calling repository
+     */
+    @SuppressWarnings("unchecked")
+    public static List<OwnerSummary> findSummariesByLastName(EntityManager em, String lastName, String afterLastName,
+                                                             Integer afterId, int maxResults) {
+        StringBuilder jpql = new StringBuilder("SELECT new org.springframework.samples.petclinic.model.OwnerSummary(" +
+                "owner.id, owner.firstName, owner.lastName, owner.address, owner.city, owner.telephone) " +
+                "FROM Owner owner WHERE owner.lastName LIKE :lastName");
+        boolean afterOwner = afterLastName != null && afterId != null;
+        if (afterOwner) {
+            jpql.append(" AND (owner.lastName > :afterLastName OR (owner.lastName = :afterLastName AND owner.id > :afterId))");
+        }
+        jpql.append(" ORDER BY owner.lastName, owner.id");
+        Query query = em.createQuery(jpql.toString());
+        query.setParameter("lastName", lastName + "%");
+        if (afterOwner) {
+            query.setParameter("afterLastName", afterLastName);
+            query.setParameter("afterId", afterId);
+        }
+        query.setMaxResults(maxResults);
+        List<OwnerSummary> summaries = query.getResultList();
+        if (summaries.isEmpty()) {
+            return summaries;
+        }
+
+        Map<Integer, OwnerSummary> summariesById = new HashMap<Integer, OwnerSummary>(summaries.size() * 2);
+        for (OwnerSummary summary : summaries) {
+            summariesById.put(summary.getId(), summary);
+        }
+        Query petNameQuery = em.createQuery("SELECT pet.owner.id, pet.name FROM Pet pet WHERE pet.owner.id IN (:ids) ORDER BY pet.name");
+        petNameQuery.setParameter("ids", summariesById.keySet());
+        for (Object[] row : (List<Object[]>) petNameQuery.getResultList()) {
+            summariesById.get(row[0]).addPetName((String) row[1]);
+        }
+        return summaries;
+    }
+
+}
@@ -16,13 +16,19 @@
 package org.springframework.samples.petclinic.repository.jpa;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 
-import org.springframework.orm.hibernate3.support.OpenSessionInViewFilter;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewFilter;
 import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
+import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.repository.OwnerRepository;
 import org.springframework.stereotype.Repository;
 
@@ -43,11 +49,10 @@ public class JpaOwnerRepositoryImpl implements OwnerRepository {
 
 
     /**
-     * Important: in the current version of this method, we load Owners with all their Pets and Visits while 
-     * we do not need Visits at all and we only need one property from the Pet objects (the 'name' property).
-     * There are some ways to improve it such as:
-     * - creating a Ligtweight class (example here: https://community.jboss.org/wiki/LightweightClass)
-     * - Turning on lazy-loading and using {@link OpenSessionInViewFilter}
+     * Loads Owners with all their Pets, but not their Visits, which are lazy (with {@link
+     * OpenEntityManagerInViewFilter} mapped in web.xml, a view can still read them). Only one property from the Pet
+     * objects (the 'name' property) is needed for a list, so the owners list view uses the lightweight {@link
+     * #findSummariesByLastName} projection instead.
      */
     @SuppressWarnings("unchecked")
     public Collection<Owner> findByLastName(String lastName) {
@@ -55,16 +60,52 @@ public class JpaOwnerRepositoryImpl implements OwnerRepository {
         // using 'left join fetch' because it might happen that an owner does not have pets yet
         Query query = this.em.createQuery("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.lastName LIKE :lastName");
         query.setParameter("lastName", lastName + "%");
-        return query.getResultList();
+        // the query cache only keeps the owner ids: on a hit, owners and their pets come from the second-level cache
+        query.setHint("org.hibernate.cacheable", true);
+        query.setHint("org.hibernate.cacheRegion", "ownersByLastName");
+        List<Owner> owners = query.getResultList();
+        for (Owner owner : owners) {
+            loadPets(owner);
+        }
+        return owners;
+    }
+
+    /**
+     * @see JpaOwnerQueries#findByLastName(EntityManager, String, Pageable)
+     */
+    @Override
+    public Page<Owner> findByLastName(String lastName, Pageable pageable) {
+        return JpaOwnerQueries.findByLastName(this.em, lastName, pageable);
+    }
+
+    /**
+     * @see JpaOwnerQueries#findSummariesByLastName(EntityManager, String, String, Integer, int)
+     */
+    @Override
+    public List<OwnerSummary> findSummariesByLastName(String lastName, String afterLastName, Integer afterId, int maxResults) {
+        return JpaOwnerQueries.findSummariesByLastName(this.em, lastName, afterLastName, afterId, maxResults);
     }
 
     @Override
     public Owner findById(int id) {
-        // using 'join fetch' because a single query should load both owners and pets
-        // using 'left join fetch' because it might happen that an owner does not have pets yet
-        Query query = this.em.createQuery("SELECT owner FROM Owner owner left join fetch owner.pets WHERE owner.id =:id");
-        query.setParameter("id", id);
-        return (Owner) query.getSingleResult();
+        // using find() rather than a 'join fetch' query so that the owner and its pets can come from the second-level cache
+        Owner owner = this.em.find(Owner.class, id);
+        if (owner == null) {
+            throw new EmptyResultDataAccessException(1);
+        }
+        loadPets(owner);
+        // unlike the lists of owners, the owner page shows the visits: the first pet loads those of all pets
+        for (Pet pet : owner.getPets()) {
+            pet.getVisits();
+        }
+        return owner;
+    }
+
+    /**
+     * Initializes the lazy <code>pets</code> collection, so that it can still be read once the transaction is over.
+     */
+    private static void loadPets(Owner owner) {
+        owner.getPets();
     }
 
 
@@ -20,9 +20,11 @@ import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+import org.springframework.samples.petclinic.model.Owner;
 import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.model.PetType;
 import org.springframework.samples.petclinic.repository.PetRepository;
+import org.springframework.samples.petclinic.util.SecondLevelCacheUtils;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -48,13 +50,22 @@ public class JpaPetRepositoryImpl implements PetRepository {
 
     @Override
     public Pet findById(int id) {
-        return this.em.find(Pet.class, id);
+        Pet pet = this.em.find(Pet.class, id);
+        if (pet != null) {
+            // the visits page reads them once the transaction is over
+            pet.getVisits();
+        }
+        return pet;
     }
 
     @Override
     public void save(Pet pet) {
     	if (pet.getId() == null) {
     		this.em.persist(pet);     		
+    		if (pet.getOwner() != null) {
+    		    // the owner's cached 'pets' collection does not know about the new pet
+    		    SecondLevelCacheUtils.evictCollection(this.em, Owner.class.getName() + ".pets", pet.getOwner().getId());
+    		}
     	}
     	else {
     		this.em.merge(pet);    
@@ -20,7 +20,6 @@ import java.util.Collection;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.samples.petclinic.model.Vet;
 import org.springframework.samples.petclinic.repository.VetRepository;
 import org.springframework.stereotype.Repository;
@@ -42,10 +41,18 @@ public class JpaVetRepositoryImpl implements VetRepository {
 
 
     @Override
-    @Cacheable(value = "vets")
     @SuppressWarnings("unchecked")
     public Collection<Vet> findAll() {
         return this.em.createQuery("SELECT distinct vet FROM Vet vet left join fetch vet.specialties ORDER BY vet.lastName, vet.firstName").getResultList();
     }
 
+    @Override
+    public void save(Vet vet) {
+        if (vet.isNew()) {
+            this.em.persist(vet);
+        } else {
+            this.em.merge(vet);
+        }
+    }
+
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.repository.jpa;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.util.SecondLevelCacheUtils;
+
+/**
+ * JPA visit inserts shared by {@link JpaVisitRepositoryImpl} and the Spring Data JPA repository, which run them with
+ * their own {@link EntityManager}.
+ */
+public abstract class JpaVisitInserts {
+
+    /**
+     * Persists the visits, flushing and clearing the persistence context every <code>importBatchSize</code> visits so
+     * that a large import does not keep every visit (and its pet) managed until commit, then evicts the cached
+     * <code>Pet.visits</code> collections of their pets. Visit ids are generated by the database, which prevents
+     * Hibernate from grouping the inserts into JDBC batches.
+     *
+     * @param em the entity manager of the calling repository
+     */
+    public static void saveVisits(EntityManager em, Collection<Visit> visits, int importBatchSize) {
+        Set<Integer> petIds = new HashSet<Integer>();
+        int count = 0;
+        for (Visit visit : visits) {
+            em.persist(visit);
+            petIds.add(visit.getPet().getId());
+            if (++count % importBatchSize == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.flush();
+        em.clear();
+        SecondLevelCacheUtils.evictCollection(em, Pet.class.getName() + ".visits", petIds);
+    }
+
+}
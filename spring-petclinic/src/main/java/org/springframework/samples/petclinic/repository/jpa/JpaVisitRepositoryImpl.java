@@ -15,14 +15,18 @@
  */
 package org.springframework.samples.petclinic.repository.jpa;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.model.Visit;
 import org.springframework.samples.petclinic.repository.VisitRepository;
+import org.springframework.samples.petclinic.util.SecondLevelCacheUtils;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -42,11 +46,22 @@ public class JpaVisitRepositoryImpl implements VisitRepository {
     @PersistenceContext
     private EntityManager em;
 
+    private int importBatchSize = 500;
+
+    /**
+     * Number of visits persisted before the persistence context is flushed and cleared by {@link #saveVisits}.
+     */
+    @Value("${visits.importBatchSize:500}")
+    public void setImportBatchSize(int importBatchSize) {
+        this.importBatchSize = importBatchSize;
+    }
 
     @Override
     public void save(Visit visit) {
     	if (visit.getId() == null) {
     		this.em.persist(visit);     		
+    		// the pet's cached 'visits' collection does not know about the new visit
+    		SecondLevelCacheUtils.evictCollection(this.em, Pet.class.getName() + ".visits", visit.getPet().getId());
     	}
     	else {
     		this.em.merge(visit);    
@@ -54,6 +69,15 @@ public class JpaVisitRepositoryImpl implements VisitRepository {
     }
 
 
+    /**
+     * Persists the visits in groups of {@link #setImportBatchSize importBatchSize}, see {@link
+     * JpaVisitInserts#saveVisits}.
+     */
+    @Override
+    public void saveVisits(Collection<Visit> visits) {
+        JpaVisitInserts.saveVisits(this.em, visits, this.importBatchSize);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public List<Visit> findByPetId(Integer petId) {
@@ -15,27 +15,16 @@
  */
 package org.springframework.samples.petclinic.repository.springdatajpa;
 
-import java.util.Collection;
-
-import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
-import org.springframework.data.repository.query.Param;
 import org.springframework.samples.petclinic.model.Owner;
 import org.springframework.samples.petclinic.repository.OwnerRepository;
 
 /**
- * Spring Data JPA specialization of the {@link OwnerRepository} interface
+ * Spring Data JPA specialization of the {@link OwnerRepository} interface. Queries that go through the Hibernate
+ * second-level cache are implemented in {@link SpringDataOwnerRepositoryImpl}.
  *
  * @author Michael Isvy
  * @since 15.1.2013
  */
 public interface SpringDataOwnerRepository extends OwnerRepository, Repository<Owner, Integer> {
-		
-		@Override
-	    @Query("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.lastName LIKE :lastName%")
-	    public Collection<Owner> findByLastName(@Param("lastName") String lastName);
-		
-		@Override
-		@Query("SELECT owner FROM Owner owner left join fetch owner.pets WHERE owner.id =:id")
-	    public Owner findById(@Param("id") int id);
 }
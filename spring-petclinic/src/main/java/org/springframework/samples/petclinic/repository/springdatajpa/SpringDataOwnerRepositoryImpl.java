@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.repository.springdatajpa;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.repository.jpa.JpaOwnerQueries;
+
+/**
+ * Custom implementations of the {@link SpringDataOwnerRepository} queries that cannot be expressed as derived or
+ * <code>@Query</code> methods, or that need query hints and post-processing to benefit from the Hibernate second-level
+ * cache, picked up by Spring Data through the 'Impl' naming convention.
+ */
+public class SpringDataOwnerRepositoryImpl {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Cached query: on a query cache hit, the owners and their pets are read from the second-level cache.
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<Owner> findByLastName(String lastName) {
+        Query query = this.em.createQuery("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.lastName LIKE :lastName");
+        query.setParameter("lastName", lastName + "%");
+        query.setHint("org.hibernate.cacheable", true);
+        query.setHint("org.hibernate.cacheRegion", "ownersByLastName");
+        List<Owner> owners = query.getResultList();
+        for (Owner owner : owners) {
+            owner.getPets();
+        }
+        return owners;
+    }
+
+    /**
+     * Loads the owner with <code>find()</code>, which goes through the second-level cache, then initializes its pets
+     * and their visits, the latter in one batch.
+     */
+    public Owner findById(int id) {
+        Owner owner = this.em.find(Owner.class, id);
+        if (owner != null) {
+            for (Pet pet : owner.getPets()) {
+                pet.getVisits();
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * @see JpaOwnerQueries#findByLastName(EntityManager, String, Pageable)
+     */
+    public Page<Owner> findByLastName(String lastName, Pageable pageable) {
+        return JpaOwnerQueries.findByLastName(this.em, lastName, pageable);
+    }
+
+    /**
+     * @see JpaOwnerQueries#findSummariesByLastName(EntityManager, String, String, Integer, int)
+     */
+    public List<OwnerSummary> findSummariesByLastName(String lastName, String afterLastName, Integer afterId, int maxResults) {
+        return JpaOwnerQueries.findSummariesByLastName(this.em, lastName, afterLastName, afterId, maxResults);
+    }
+
+}
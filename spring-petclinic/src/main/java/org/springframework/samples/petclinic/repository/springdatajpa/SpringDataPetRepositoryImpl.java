@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.repository.springdatajpa;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.util.SecondLevelCacheUtils;
+
+/**
+ * Custom implementations of the {@link SpringDataPetRepository} save and findById, picked up by Spring Data through the
+ * 'Impl' naming convention: a new pet evicts its owner's cached <code>pets</code> collection, which Hibernate does not
+ * update when only the pet is persisted, and a pet is returned with its lazy <code>visits</code> initialized.
+ */
+public class SpringDataPetRepositoryImpl {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public Pet findById(int id) {
+        Pet pet = this.em.find(Pet.class, id);
+        if (pet != null) {
+            pet.getVisits();
+        }
+        return pet;
+    }
+
+    public void save(Pet pet) {
+        if (pet.isNew()) {
+            this.em.persist(pet);
+            if (pet.getOwner() != null) {
+                SecondLevelCacheUtils.evictCollection(this.em, Owner.class.getName() + ".pets", pet.getOwner().getId());
+            }
+        } else {
+            this.em.merge(pet);
+        }
+    }
+
+}
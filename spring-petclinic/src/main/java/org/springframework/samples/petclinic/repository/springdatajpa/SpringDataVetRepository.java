@@ -15,6 +15,10 @@
  */
 package org.springframework.samples.petclinic.repository.springdatajpa;
 
+import java.util.Collection;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
 import org.springframework.samples.petclinic.model.Vet;
 import org.springframework.samples.petclinic.repository.VetRepository;
@@ -26,4 +30,11 @@ import org.springframework.samples.petclinic.repository.VetRepository;
  * @since 15.1.2013
  */
 public interface SpringDataVetRepository extends VetRepository, Repository<Vet, Integer> {
+
+    /**
+     * Fetches the lazy specialties with the vets, as the cached list of vets is read outside of any transaction.
+     */
+    @Override
+    @Query("SELECT DISTINCT vet FROM Vet vet left join fetch vet.specialties ORDER BY vet.lastName, vet.firstName")
+    Collection<Vet> findAll() throws DataAccessException;
 }
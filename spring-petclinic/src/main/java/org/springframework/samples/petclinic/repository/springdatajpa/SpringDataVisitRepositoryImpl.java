@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.repository.springdatajpa;
+
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.repository.jpa.JpaVisitInserts;
+import org.springframework.samples.petclinic.util.SecondLevelCacheUtils;
+
+/**
+ * Custom implementations of the {@link SpringDataVisitRepository} inserts, picked up by Spring Data through the 'Impl'
+ * naming convention. Both evict the cached <code>Pet.visits</code> collections, which Hibernate does not update when
+ * only the visit is persisted.
+ */
+public class SpringDataVisitRepositoryImpl {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private int importBatchSize = 500;
+
+    @Value("${visits.importBatchSize:500}")
+    public void setImportBatchSize(int importBatchSize) {
+        this.importBatchSize = importBatchSize;
+    }
+
+    public void save(Visit visit) {
+        if (visit.isNew()) {
+            this.em.persist(visit);
+            SecondLevelCacheUtils.evictCollection(this.em, Pet.class.getName() + ".visits", visit.getPet().getId());
+        } else {
+            this.em.merge(visit);
+        }
+    }
+
+    /**
+     * Persists the visits in groups of <code>importBatchSize</code>, see {@link JpaVisitInserts#saveVisits}.
+     */
+    public void saveVisits(Collection<Visit> visits) {
+        JpaVisitInserts.saveVisits(this.em, visits, this.importBatchSize);
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of {@link ClinicService#exportClinic}, one at a time, as they are read from the database.
+ */
+public interface ClinicExportHandler {
+
+    /**
+     * Names of the values of each row, in order.
+     */
+    String[] COLUMNS = {"ownerId", "firstName", "lastName", "address", "city", "telephone",
+            "petId", "petName", "birthDate", "petType", "visitId", "visitDate", "description"};
+
+    /**
+     * @param values one value per column: <code>Integer</code> ids, <code>String</code> texts and
+     *               <code>yyyy-MM-dd</code> dates, or <code>null</code> for an owner without pets or a pet without
+     *               visits; the array is reused for the next row and must not be kept
+     */
+    void exportRow(Object[] values) throws IOException;
+
+}
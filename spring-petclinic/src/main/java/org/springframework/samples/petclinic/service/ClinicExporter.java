@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads every owner, pet and visit with a single forward-only, read-only query, and hands the rows over to a {@link
+ * ClinicExportHandler} as the driver fetches them, in batches of the configured fetch size. Nothing is accumulated, so
+ * the memory used does not depend on the size of the tables. It works on the <code>dataSource</code> directly, whatever
+ * the data access profile.
+ * <p/>
+ * There is one row per visit, repeating the columns of its pet and owner; an owner without pets and a pet without
+ * visits get one row each, with <code>null</code> pet or visit columns. Rows are ordered by owner, pet and visit id.
+ */
+@Component
+public class ClinicExporter {
+
+    private static final String EXPORT_SQL =
+            "SELECT o.id, o.first_name, o.last_name, o.address, o.city, o.telephone, " +
+            "p.id, p.name, p.birth_date, t.name, v.id, v.visit_date, v.description " +
+            "FROM owners o LEFT JOIN pets p ON p.owner_id = o.id LEFT JOIN types t ON t.id = p.type_id " +
+            "LEFT JOIN visits v ON v.pet_id = p.id ORDER BY o.id, p.id, v.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+
+    @Autowired
+    public ClinicExporter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Number of rows the driver fetches from the database at a time. MySQL only streams with
+     * <code>Integer.MIN_VALUE</code>, or with <code>useCursorFetch=true</code> in the URL.
+     */
+    @Value("${export.fetchSize:500}")
+    public void setFetchSize(int fetchSize) {
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Pass all rows to the given handler; to be called within a (read-only) transaction for a consistent snapshot.
+     */
+    public void export(final ClinicExportHandler handler) throws IOException {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        final Object[] values = new Object[ClinicExportHandler.COLUMNS.length];
+        try {
+            this.jdbcTemplate.query(new PreparedStatementCreator() {
+                @Override
+                public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+                    return connection.prepareStatement(EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                }
+            }, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    for (int i = 0; i < values.length; i++) {
+                        Object value = rs.getObject(i + 1);
+                        values[i] = (value instanceof Date ? dateFormat.format((Date) value) : value);
+                    }
+                    try {
+                        handler.exportRow(values);
+                    } catch (IOException ex) {
+                        throw new HandlerIOException(ex);
+                    }
+                }
+            });
+        } catch (HandlerIOException ex) {
+            // typically the client going away: stop reading and report it as such
+            throw ex.getCause();
+        }
+    }
+
+
+    /**
+     * Carries an <code>IOException</code> of the handler through {@link JdbcTemplate}.
+     */
+    private static class HandlerIOException extends RuntimeException {
+
+        private HandlerIOException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+}
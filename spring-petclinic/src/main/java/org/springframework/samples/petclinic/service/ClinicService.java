@@ -15,14 +15,21 @@
  */
 package org.springframework.samples.petclinic.service;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.samples.petclinic.model.ClinicStatistics;
 import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
 import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.model.PetType;
 import org.springframework.samples.petclinic.model.Vet;
 import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.model.VisitSearchResult;
 
 
 /**
@@ -42,10 +49,41 @@ public interface ClinicService {
 
     public void saveVisit(Visit visit) throws DataAccessException;
 
+    public void saveVisits(Collection<Visit> visits) throws DataAccessException;
+
     public Collection<Vet> findVets() throws DataAccessException;
 
+    public void saveVet(Vet vet) throws DataAccessException;
+
     public void saveOwner(Owner owner) throws DataAccessException;
 
     Collection<Owner> findOwnerByLastName(String lastName) throws DataAccessException;
 
+    Page<Owner> findOwnerByLastName(String lastName, Pageable pageable) throws DataAccessException;
+
+    List<OwnerSummary> findOwnerSummariesByLastName(String lastName, String afterLastName, Integer afterId, int maxResults)
+            throws DataAccessException;
+
+    int countOwnersByLastName(String lastName) throws DataAccessException;
+
+    List<String> findOwnerLastNames(String prefix, int maxResults) throws DataAccessException;
+
+    /**
+     * Find the visits whose description contains any of the words of the query, ignoring case, best match first.
+     */
+    List<VisitSearchResult> findVisitsByDescription(String query, int maxResults) throws DataAccessException;
+
+    /**
+     * Visits per month, pets per type and busiest owners, read from counters maintained as visits, pets and owners are
+     * saved.
+     */
+    ClinicStatistics getStatistics() throws DataAccessException;
+
+    /**
+     * Stream every owner, pet and visit to the given handler, one row per visit, without loading them in memory.
+     *
+     * @throws IOException if the handler fails to write a row; the export is then abandoned
+     */
+    void exportClinic(ClinicExportHandler handler) throws DataAccessException, IOException;
+
 }
@@ -15,16 +15,26 @@
  */
 package org.springframework.samples.petclinic.service;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.samples.petclinic.model.ClinicStatistics;
 import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
 import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.model.PetType;
 import org.springframework.samples.petclinic.model.Vet;
 import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.model.VisitSearchResult;
 import org.springframework.samples.petclinic.repository.OwnerRepository;
 import org.springframework.samples.petclinic.repository.PetRepository;
 import org.springframework.samples.petclinic.repository.VetRepository;
@@ -34,7 +44,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Mostly used as a facade for all Petclinic controllers
- * Also a placeholder for @Transactional and @Cacheable annotations
+ * Also a placeholder for @Transactional annotations; the list of vets is cached by {@link VetsCache}, owners and
+ * pets by {@link OwnersCache}, searches matching no owner are answered by {@link OwnerLastNameIndex}, visit
+ * descriptions are searched with {@link VisitSearchIndex}, and the dashboard is served by {@link
+ * ClinicStatisticsCounters}
  *
  * @author Michael Isvy
  */
@@ -45,13 +58,28 @@ public class ClinicServiceImpl implements ClinicService {
     private VetRepository vetRepository;
     private OwnerRepository ownerRepository;
     private VisitRepository visitRepository;
+    private VetsCache vetsCache;
+    private OwnersCache ownersCache;
+    private OwnerLastNameIndex ownerLastNameIndex;
+    private ClinicExporter clinicExporter;
+    private VisitSearchIndex visitSearchIndex;
+    private ClinicStatisticsCounters statisticsCounters;
 
     @Autowired
-    public ClinicServiceImpl(PetRepository petRepository, VetRepository vetRepository, OwnerRepository ownerRepository, VisitRepository visitRepository) {
+    public ClinicServiceImpl(PetRepository petRepository, VetRepository vetRepository, OwnerRepository ownerRepository,
+                             VisitRepository visitRepository, VetsCache vetsCache, OwnersCache ownersCache,
+                             OwnerLastNameIndex ownerLastNameIndex, ClinicExporter clinicExporter,
+                             VisitSearchIndex visitSearchIndex, ClinicStatisticsCounters statisticsCounters) {
         this.petRepository = petRepository;
         this.vetRepository = vetRepository;
         this.ownerRepository = ownerRepository;
         this.visitRepository = visitRepository;
+        this.vetsCache = vetsCache;
+        this.ownersCache = ownersCache;
+        this.ownerLastNameIndex = ownerLastNameIndex;
+        this.clinicExporter = clinicExporter;
+        this.visitSearchIndex = visitSearchIndex;
+        this.statisticsCounters = statisticsCounters;
     }
 
     @Override
@@ -61,21 +89,99 @@ public class ClinicServiceImpl implements ClinicService {
     }
 
     @Override
-    @Transactional(readOnly = true)
     public Owner findOwnerById(int id) throws DataAccessException {
-        return ownerRepository.findById(id);
+        return ownersCache.getOwner(id);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Collection<Owner> findOwnerByLastName(String lastName) throws DataAccessException {
+        if (ownerLastNameIndex.isAvailable() && ownerLastNameIndex.countByLastName(lastName) == 0) {
+            return Collections.emptyList();
+        }
         return ownerRepository.findByLastName(lastName);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Owner> findOwnerByLastName(String lastName, Pageable pageable) throws DataAccessException {
+        if (ownerLastNameIndex.isAvailable()) {
+            int total = ownerLastNameIndex.countByLastName(lastName);
+            if (total <= pageable.getOffset()) {
+                return new PageImpl<Owner>(Collections.<Owner>emptyList(), pageable, total);
+            }
+        }
+        return ownerRepository.findByLastName(lastName, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<OwnerSummary> findOwnerSummariesByLastName(String lastName, String afterLastName, Integer afterId,
+                                                           int maxResults) throws DataAccessException {
+        if (ownerLastNameIndex.isAvailable()) {
+            int remaining = (afterLastName != null && afterId != null ?
+                    ownerLastNameIndex.countByLastName(lastName, afterLastName, afterId) :
+                    ownerLastNameIndex.countByLastName(lastName));
+            if (remaining == 0) {
+                return Collections.emptyList();
+            }
+        }
+        return ownerRepository.findSummariesByLastName(lastName, afterLastName, afterId, maxResults);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int countOwnersByLastName(String lastName) throws DataAccessException {
+        if (ownerLastNameIndex.isAvailable()) {
+            return ownerLastNameIndex.countByLastName(lastName);
+        }
+        return (int) ownerRepository.findByLastName(lastName, new PageRequest(0, 1)).getTotalElements();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> findOwnerLastNames(String prefix, int maxResults) throws DataAccessException {
+        if (ownerLastNameIndex.isAvailable()) {
+            return ownerLastNameIndex.findLastNames(prefix, maxResults);
+        }
+        // without the index, the distinct last names are taken from the first owners found
+        List<String> lastNames = new ArrayList<String>();
+        for (OwnerSummary summary : ownerRepository.findSummariesByLastName(prefix, null, null, maxResults * 4)) {
+            if (lastNames.size() == maxResults) {
+                break;
+            }
+            if (lastNames.isEmpty() || !lastNames.get(lastNames.size() - 1).equals(summary.getLastName())) {
+                lastNames.add(summary.getLastName());
+            }
+        }
+        return lastNames;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<VisitSearchResult> findVisitsByDescription(String query, int maxResults) throws DataAccessException {
+        return visitSearchIndex.search(query, maxResults);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ClinicStatistics getStatistics() throws DataAccessException {
+        return statisticsCounters.getStatistics();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportClinic(ClinicExportHandler handler) throws DataAccessException, IOException {
+        clinicExporter.export(handler);
+    }
+
     @Override
     @Transactional
     public void saveOwner(Owner owner) throws DataAccessException {
         ownerRepository.save(owner);
+        ownersCache.evict(owner.getId(), Collections.<Integer>emptyList());
+        ownerLastNameIndex.updateAfterCommit(owner.getId(), owner.getLastName());
+        statisticsCounters.ownerSavedAfterCommit(owner);
     }
 
 
@@ -83,26 +189,48 @@ public class ClinicServiceImpl implements ClinicService {
     @Transactional
     public void saveVisit(Visit visit) throws DataAccessException {
         visitRepository.save(visit);
+        ownersCache.evict(null, Collections.singleton(visit.getPet().getId()));
+        visitSearchIndex.updateAfterCommit(Collections.singleton(visit));
+        statisticsCounters.visitsSavedAfterCommit(Collections.singleton(visit));
+    }
+
+    @Override
+    @Transactional
+    public void saveVisits(Collection<Visit> visits) throws DataAccessException {
+        visitRepository.saveVisits(visits);
+        List<Integer> petIds = new ArrayList<Integer>(visits.size());
+        for (Visit visit : visits) {
+            petIds.add(visit.getPet().getId());
+        }
+        ownersCache.evict(null, petIds);
+        visitSearchIndex.updateAfterCommit(visits);
+        statisticsCounters.visitsSavedAfterCommit(visits);
     }
 
 
     @Override
-    @Transactional(readOnly = true)
     public Pet findPetById(int id) throws DataAccessException {
-        return petRepository.findById(id);
+        return ownersCache.getPet(id);
     }
 
     @Override
     @Transactional
     public void savePet(Pet pet) throws DataAccessException {
         petRepository.save(pet);
+        ownersCache.evict(pet.getOwner() != null ? pet.getOwner().getId() : null, Collections.singleton(pet.getId()));
+        statisticsCounters.petSavedAfterCommit(pet);
     }
 
     @Override
-    @Transactional(readOnly = true)
-    @Cacheable(value = "vets")
     public Collection<Vet> findVets() throws DataAccessException {
-        return vetRepository.findAll();
+        return vetsCache.getVets();
+    }
+
+    @Override
+    @Transactional
+    public void saveVet(Vet vet) throws DataAccessException {
+        vetRepository.save(vet);
+        vetsCache.invalidateAfterCommit();
     }
 
 
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.samples.petclinic.model.ClinicStatistics;
+import org.springframework.samples.petclinic.model.ClinicStatistics.OwnerActivity;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.util.ReadReplicaRoutingDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Pre-aggregated counters behind the {@link ClinicStatistics} dashboard: visits per month, pets per type and visits
+ * per owner, so that the dashboard never runs <code>GROUP BY</code> queries over the whole visit history.
+ * <p/>
+ * The counters are computed from the tables by a few aggregate queries on first use, or by the <code>rebuild</code> JMX
+ * operation, in a read-only transaction of their own on the primary database rather than on the replica the dashboard's
+ * transaction may be reading from. From then on {@link ClinicService#saveVisit}, {@link ClinicService#saveVisits},
+ * {@link ClinicService#savePet} and {@link ClinicService#saveOwner} add to them once their transaction has committed,
+ * in time proportional to the number of saved entities. To do so, the counters also keep the owner and type of every
+ * pet, and the name of every owner. The statistics are served from an immutable copy taken after the last change, so
+ * reading them does not depend on the size of the tables either.
+ * <p/>
+ * An update is dropped when the counters are computed again between the commit of its transaction and the update
+ * itself, since that computation may already have counted the change. Changes made directly in the database, or
+ * committed while the aggregate queries themselves are running, are only reflected after the next rebuild.
+ */
+@Component
+@ManagedResource("petclinic:type=ClinicStatistics")
+public class ClinicStatisticsCounters {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile int busiestOwnerCount = 10;
+
+    private boolean loaded;
+
+    private long visitCount;
+
+    private final Map<String, Integer> visitsPerMonth = new TreeMap<String, Integer>();
+
+    private final Map<String, Integer> petsPerType = new TreeMap<String, Integer>();
+
+    private final Map<Integer, Integer> petOwners = new HashMap<Integer, Integer>();
+
+    private final Map<Integer, String> petTypes = new HashMap<Integer, String>();
+
+    private final Map<Integer, OwnerCount> owners = new HashMap<Integer, OwnerCount>();
+
+    /**
+     * The owners with at least one visit, busiest first.
+     */
+    private final TreeSet<OwnerCount> ownersByVisits = new TreeSet<OwnerCount>();
+
+    private volatile ClinicStatistics statistics;
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+
+    @Autowired
+    public ClinicStatisticsCounters(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Number of owners listed as the busiest.
+     */
+    @Value("${statistics.busiestOwners:10}")
+    @ManagedAttribute
+    public void setBusiestOwnerCount(int busiestOwnerCount) {
+        this.busiestOwnerCount = busiestOwnerCount;
+        this.statistics = null;
+    }
+
+    @ManagedAttribute
+    public int getBusiestOwnerCount() {
+        return this.busiestOwnerCount;
+    }
+
+    /**
+     * Number of visits counted, or -1 if the counters have not been computed yet.
+     */
+    @ManagedAttribute
+    public synchronized long getVisitCount() {
+        return (this.loaded ? this.visitCount : -1);
+    }
+
+    /**
+     * Number of times the counters have been computed from the tables.
+     */
+    @ManagedAttribute
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /**
+     * Compute the counters from the tables again.
+     */
+    @ManagedOperation
+    public synchronized void rebuild() {
+        load();
+        this.statistics = null;
+    }
+
+    public ClinicStatistics getStatistics() {
+        ClinicStatistics current = this.statistics;
+        if (current == null) {
+            synchronized (this) {
+                current = this.statistics;
+                if (current == null) {
+                    if (!this.loaded) {
+                        load();
+                    }
+                    current = copy();
+                    this.statistics = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Count the given new visits once the current transaction has committed, or immediately when there is no
+     * transaction.
+     */
+    public void visitsSavedAfterCommit(Collection<Visit> visits) {
+        final List<Integer> petIds = new ArrayList<Integer>(visits.size());
+        final List<String> months = new ArrayList<String>(visits.size());
+        for (Visit visit : visits) {
+            petIds.add(visit.getPet() != null ? visit.getPet().getId() : null);
+            months.add(visit.getDate() != null ? visit.getDate().toString("yyyy-MM") : null);
+        }
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < petIds.size(); i++) {
+                    addVisit(petIds.get(i), months.get(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * Record the owner and type of the given pet once the current transaction has committed, or immediately when
+     * there is no transaction; a pet whose type changed moves to its new type.
+     */
+    public void petSavedAfterCommit(Pet pet) {
+        final int petId = pet.getId();
+        final Integer ownerId = (pet.getOwner() != null ? pet.getOwner().getId() : null);
+        final String type = (pet.getType() != null ? pet.getType().getName() : null);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                savePet(petId, ownerId, type);
+            }
+        });
+    }
+
+    /**
+     * Record the name of the given owner once the current transaction has committed, or immediately when there is no
+     * transaction.
+     */
+    public void ownerSavedAfterCommit(Owner owner) {
+        final int ownerId = owner.getId();
+        final String firstName = owner.getFirstName();
+        final String lastName = owner.getLastName();
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                saveOwner(ownerId, firstName, lastName);
+            }
+        });
+    }
+
+
+    private void afterCommit(final Runnable update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                private long loadsBeforeCommit = loadCount.get();
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    this.loadsBeforeCommit = loadCount.get();
+                }
+
+                @Override
+                public void afterCommit() {
+                    update(update, this.loadsBeforeCommit);
+                }
+            });
+        } else {
+            update(update, this.loadCount.get());
+        }
+    }
+
+    /**
+     * Apply the given update, unless the counters have been computed again since just before its transaction
+     * committed: that computation may have read the change already.
+     */
+    private synchronized void update(Runnable update, long loadsBeforeCommit) {
+        // not loaded yet, or loaded again meanwhile: the change is read with the rest
+        if (this.loaded && loadsBeforeCommit == this.loadCount.get()) {
+            update.run();
+            this.statistics = null;
+        }
+    }
+
+    private void addVisit(Integer petId, String month) {
+        this.visitCount++;
+        if (month != null) {
+            increment(this.visitsPerMonth, month, 1);
+        }
+        Integer ownerId = (petId != null ? this.petOwners.get(petId) : null);
+        if (ownerId != null) {
+            OwnerCount owner = getOwner(ownerId);
+            this.ownersByVisits.remove(owner);
+            owner.visitCount++;
+            this.ownersByVisits.add(owner);
+        }
+    }
+
+    private void savePet(int petId, Integer ownerId, String type) {
+        if (ownerId != null) {
+            this.petOwners.put(petId, ownerId);
+        }
+        if (type != null) {
+            String previousType = this.petTypes.put(petId, type);
+            if (!type.equals(previousType)) {
+                if (previousType != null) {
+                    increment(this.petsPerType, previousType, -1);
+                }
+                increment(this.petsPerType, type, 1);
+            }
+        }
+    }
+
+    private void saveOwner(int ownerId, String firstName, String lastName) {
+        OwnerCount owner = getOwner(ownerId);
+        owner.firstName = firstName;
+        owner.lastName = lastName;
+    }
+
+    private OwnerCount getOwner(int ownerId) {
+        OwnerCount owner = this.owners.get(ownerId);
+        if (owner == null) {
+            owner = new OwnerCount(ownerId);
+            this.owners.put(ownerId, owner);
+        }
+        return owner;
+    }
+
+    /**
+     * Must be called while holding the lock on these counters, so that updates committed meanwhile are applied
+     * afterwards.
+     */
+    private void load() {
+        this.visitCount = 0;
+        this.visitsPerMonth.clear();
+        this.petsPerType.clear();
+        this.petOwners.clear();
+        this.petTypes.clear();
+        this.owners.clear();
+        this.ownersByVisits.clear();
+        ReadReplicaRoutingDataSource.readFromPrimary(this.transactionTemplate, new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                readTables();
+                // changes committed from here on are not in the tables just read
+                loadCount.incrementAndGet();
+                return null;
+            }
+        });
+        this.loaded = true;
+    }
+
+    private void readTables() {
+        this.jdbcTemplate.query("SELECT id, first_name, last_name FROM owners", new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                saveOwner(rs.getInt(1), rs.getString(2), rs.getString(3));
+            }
+        });
+        this.jdbcTemplate.query("SELECT p.id, p.owner_id, t.name FROM pets p JOIN types t ON t.id = p.type_id",
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        savePet(rs.getInt(1), rs.getInt(2), rs.getString(3));
+                    }
+                });
+        this.jdbcTemplate.query("SELECT YEAR(visit_date), MONTH(visit_date), COUNT(*) FROM visits " +
+                "WHERE visit_date IS NOT NULL GROUP BY YEAR(visit_date), MONTH(visit_date)", new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                increment(visitsPerMonth, String.format("%04d-%02d", rs.getInt(1), rs.getInt(2)), rs.getInt(3));
+            }
+        });
+        this.jdbcTemplate.query("SELECT p.owner_id, COUNT(*) FROM visits v JOIN pets p ON p.id = v.pet_id " +
+                "GROUP BY p.owner_id", new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                OwnerCount owner = getOwner(rs.getInt(1));
+                owner.visitCount = rs.getInt(2);
+                ownersByVisits.add(owner);
+                visitCount += owner.visitCount;
+            }
+        });
+    }
+
+    private ClinicStatistics copy() {
+        List<OwnerActivity> busiestOwners = new ArrayList<OwnerActivity>();
+        Iterator<OwnerCount> iterator = this.ownersByVisits.iterator();
+        while (iterator.hasNext() && busiestOwners.size() < this.busiestOwnerCount) {
+            OwnerCount owner = iterator.next();
+            busiestOwners.add(new OwnerActivity(owner.id, owner.firstName, owner.lastName, owner.visitCount));
+        }
+        return new ClinicStatistics(this.visitCount, this.petTypes.size(),
+                new LinkedHashMap<String, Integer>(this.visitsPerMonth),
+                new LinkedHashMap<String, Integer>(this.petsPerType), busiestOwners);
+    }
+
+    private static void increment(Map<String, Integer> counts, String key, int delta) {
+        Integer count = counts.get(key);
+        int newCount = (count != null ? count : 0) + delta;
+        if (newCount > 0) {
+            counts.put(key, newCount);
+        } else {
+            counts.remove(key);
+        }
+    }
+
+
+    /**
+     * Visits of an owner, ordered by decreasing number of visits then by id. Must be taken out of {@link
+     * #ownersByVisits} while its count changes.
+     */
+    private static class OwnerCount implements Comparable<OwnerCount> {
+
+        private final int id;
+
+        private String firstName;
+
+        private String lastName;
+
+        private int visitCount;
+
+        private OwnerCount(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(OwnerCount other) {
+            if (this.visitCount != other.visitCount) {
+                return (this.visitCount > other.visitCount ? -1 : 1);
+            }
+            return (this.id < other.id ? -1 : (this.id == other.id ? 0 : 1));
+        }
+    }
+
+}
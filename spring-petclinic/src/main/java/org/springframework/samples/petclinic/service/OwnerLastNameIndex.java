@@ -0,0 +1,558 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.samples.petclinic.util.ReadReplicaRoutingDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Optional in-memory index of the last names of all owners, answering the prefix searches of the 'Find Owners' form
+ * (<code>last_name LIKE 'prefix%'</code>) without going to the database.
+ * <p/>
+ * The index holds two parallel arrays, sorted by last name then id like the owner search results, so counting the
+ * owners whose last name starts with a prefix, or listing the distinct matching last names, takes two binary
+ * searches.
+ * <p/>
+ * Matches must be those of the database collation, or a count of zero would hide owners the database finds. When the
+ * table is read, an existing last name is looked up with its case swapped: if the database finds it, its collation is
+ * taken to ignore case and accents, like the default <code>_ci</code> collations of MySQL, and the index folds both
+ * the last names and the prefixes that way; otherwise it compares them exactly, like the HSQLDB default collation. As
+ * long as there is no such last name to look up, the index is not {@link #isAvailable() available} and searches go
+ * to the database.
+ * <p/>
+ * The table is read on first use, in a transaction of its own on the primary database: the first search usually runs in
+ * a read-only transaction, which the "read-replicas" profile sends to a replica that may lag behind. The index is then
+ * kept up to date by {@link ClinicService#saveOwner} once its transaction has committed: each change copies the arrays,
+ * so lookups never lock. Callers check {@link #isAvailable()} first, which also keeps a transaction that saved owners
+ * from reading the index before they are in it. Owners changed directly in the database are detected by the
+ * <code>verify</code> JMX operation and picked up by <code>rebuild</code>.
+ */
+@Component
+@ManagedResource("petclinic:type=OwnerLastNameIndex")
+public class OwnerLastNameIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile boolean enabled = true;
+
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+
+    @Autowired
+    public OwnerLastNameIndex(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Whether owner searches use the index; when disabled, the index is dropped and every search goes to the
+     * database.
+     */
+    @Value("${owners.lastNameIndex:true}")
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            synchronized (this) {
+                this.snapshot = null;
+            }
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Number of owners in the index, or -1 if the table has not been read yet.
+     */
+    @ManagedAttribute
+    public int getSize() {
+        Snapshot current = this.snapshot;
+        return (current != null ? current.ids.length : -1);
+    }
+
+    /**
+     * Number of times the owners table has been read.
+     */
+    @ManagedAttribute
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /**
+     * Read the owners table again.
+     */
+    @ManagedOperation
+    public synchronized void rebuild() {
+        if (this.enabled) {
+            this.snapshot = load();
+        }
+    }
+
+    /**
+     * Compare the index with the owners table.
+     *
+     * @return a description of the differences, or a confirmation that there are none
+     */
+    @ManagedOperation
+    public String verify() {
+        Snapshot current = this.snapshot;
+        if (current == null) {
+            return "The index has not been loaded";
+        }
+        Snapshot table = read();
+        if (table.matching != current.matching) {
+            return "The index compares last names " + current.matching + " but the table " + table.matching +
+                    "; call rebuild to fix it";
+        }
+        int missing = 0;
+        int unexpected = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.ids.length || j < table.ids.length) {
+            int comparison;
+            if (i == current.ids.length) {
+                comparison = 1;
+            } else if (j == table.ids.length) {
+                comparison = -1;
+            } else {
+                comparison = compare(current.keys[i], current.ids[i], table.keys[j], table.ids[j]);
+            }
+            if (comparison < 0) {
+                unexpected++;
+                i++;
+            } else if (comparison > 0) {
+                missing++;
+                j++;
+            } else {
+                if (!current.lastNames[i].equals(table.lastNames[j])) {
+                    // same last name for the collation, but not as typed
+                    unexpected++;
+                    missing++;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (missing == 0 && unexpected == 0) {
+            return "The index matches the " + table.ids.length + " owners of the table";
+        }
+        return "The index differs from the table: " + missing + " owner(s) missing and " + unexpected +
+                " outdated or unknown; call rebuild to fix it";
+    }
+
+    /**
+     * @return the number of owners whose last name starts with the given prefix
+     */
+    public int countByLastName(String prefix) {
+        Snapshot current = getSnapshot();
+        return current.end(prefix) - current.start(prefix);
+    }
+
+    /**
+     * @return the number of owners whose last name starts with the given prefix and that come after the given owner in
+     *         the search order (by last name, then id)
+     */
+    public int countByLastName(String prefix, String afterLastName, int afterId) {
+        Snapshot current = getSnapshot();
+        int start = Math.max(current.start(prefix), current.after(afterLastName, afterId));
+        return Math.max(0, current.end(prefix) - start);
+    }
+
+    /**
+     * @return the distinct last names starting with the given prefix, in alphabetical order
+     */
+    public List<String> findLastNames(String prefix, int maxResults) {
+        Snapshot current = getSnapshot();
+        List<String> lastNames = new ArrayList<String>();
+        int end = current.end(prefix);
+        for (int i = current.start(prefix); i < end && lastNames.size() < maxResults; i++) {
+            if (i == 0 || !current.keys[i].equals(current.keys[i - 1])) {
+                lastNames.add(current.lastNames[i]);
+            }
+        }
+        return lastNames;
+    }
+
+    /**
+     * Whether lookups can be answered by the index: it must be enabled, know how the database compares last names, and
+     * the current transaction must not have saved owners the index does not know about yet. Reads the table on first
+     * use.
+     */
+    public boolean isAvailable() {
+        return (this.enabled && !TransactionSynchronizationManager.hasResource(this) &&
+                getSnapshot().matching != Matching.UNKNOWN);
+    }
+
+    /**
+     * Record the current last name of an owner once the current transaction has committed, or immediately when there
+     * is no transaction. Until then, the index is not {@link #isAvailable() available} to the transaction.
+     */
+    public void updateAfterCommit(final int id, final String lastName) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (!TransactionSynchronizationManager.hasResource(this)) {
+                TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    update(id, lastName);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(OwnerLastNameIndex.this);
+                }
+            });
+        } else {
+            update(id, lastName);
+        }
+    }
+
+
+    private synchronized void update(int id, String lastName) {
+        Snapshot current = this.snapshot;
+        if (current != null) {
+            // not loaded yet: the owner will be read with the others; not known how to compare last names yet: the
+            // table is read again, and may now have one to look up
+            this.snapshot = (current.matching != Matching.UNKNOWN ? current.with(id, lastName) : null);
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = this.snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = this.snapshot;
+                if (current == null) {
+                    current = load();
+                    if (this.enabled) {
+                        this.snapshot = current;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Must be called while holding the lock on this index, so that updates committed meanwhile are applied afterwards.
+     */
+    private Snapshot load() {
+        Snapshot loaded = read();
+        this.loadCount.incrementAndGet();
+        return loaded;
+    }
+
+    private Snapshot read() {
+        return ReadReplicaRoutingDataSource.readFromPrimary(this.transactionTemplate,
+                new TransactionCallback<Snapshot>() {
+                    @Override
+                    public Snapshot doInTransaction(TransactionStatus status) {
+                        return readTable();
+                    }
+                });
+    }
+
+    private Snapshot readTable() {
+        final List<String> rowLastNames = new ArrayList<String>();
+        final List<Integer> rowIds = new ArrayList<Integer>();
+        this.jdbcTemplate.query("SELECT id, last_name FROM owners", new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                String lastName = rs.getString("last_name");
+                rowLastNames.add(lastName != null ? lastName : "");
+                rowIds.add(rs.getInt("id"));
+            }
+        });
+        Matching matching = probeMatching(rowLastNames);
+        // sorted here rather than with ORDER BY, so that the order does not depend on the database collation
+        Entry[] sorted = new Entry[rowIds.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = new Entry(rowLastNames.get(i), matching.key(rowLastNames.get(i)), rowIds.get(i));
+        }
+        Arrays.sort(sorted);
+        String[] lastNames = new String[sorted.length];
+        String[] keys = new String[sorted.length];
+        int[] ids = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            lastNames[i] = sorted[i].lastName;
+            keys[i] = sorted[i].key;
+            ids[i] = sorted[i].id;
+        }
+        return new Snapshot(matching, lastNames, keys, ids);
+    }
+
+    /**
+     * Finds out how the database compares last names by looking up the first one whose case can be swapped: if the
+     * database finds more owners than have the swapped last name exactly, it ignores case.
+     */
+    private Matching probeMatching(List<String> lastNames) {
+        for (String lastName : lastNames) {
+            String swapped = swapCase(lastName);
+            if (!swapped.equals(lastName)) {
+                int exact = 0;
+                for (String other : lastNames) {
+                    if (other.equals(swapped)) {
+                        exact++;
+                    }
+                }
+                Integer found = this.jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM owners WHERE last_name = ?", Integer.class, swapped);
+                return (found > exact ? Matching.FOLDED : Matching.EXACT);
+            }
+        }
+        return Matching.UNKNOWN;
+    }
+
+    private static String swapCase(String value) {
+        StringBuilder swapped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            swapped.append(Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+        }
+        return swapped.toString();
+    }
+
+    private static int compare(String key1, int id1, String key2, int id2) {
+        int comparison = key1.compareTo(key2);
+        return (comparison != 0 ? comparison : (id1 < id2 ? -1 : (id1 == id2 ? 0 : 1)));
+    }
+
+
+    /**
+     * How the database compares last names, and so how the index compares them.
+     */
+    private enum Matching {
+
+        /**
+         * Exactly, like {@link String#compareTo}: the HSQLDB default collation, for instance.
+         */
+        EXACT,
+
+        /**
+         * Ignoring case and accents: the default <code>_ci</code> collations of MySQL, for instance.
+         */
+        FOLDED {
+            @Override
+            String key(String lastName) {
+                String decomposed = Normalizer.normalize(lastName, Normalizer.Form.NFD);
+                return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ENGLISH);
+            }
+        },
+
+        /**
+         * Not known: no last name could be looked up with its case swapped.
+         */
+        UNKNOWN;
+
+        /**
+         * @return the last name or prefix as compared by the index
+         */
+        String key(String lastName) {
+            return lastName;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+
+    private static class Entry implements Comparable<Entry> {
+
+        private final String lastName;
+
+        private final String key;
+
+        private final int id;
+
+        private Entry(String lastName, String key, int id) {
+            this.lastName = lastName;
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return compare(this.key, this.id, other.key, other.id);
+        }
+    }
+
+
+    /**
+     * Immutable last names and ids, sorted by the last names as compared by the index (their keys), then ids.
+     */
+    private static class Snapshot {
+
+        private final Matching matching;
+
+        private final String[] lastNames;
+
+        private final String[] keys;
+
+        private final int[] ids;
+
+        private Snapshot(Matching matching, String[] lastNames, String[] keys, int[] ids) {
+            this.matching = matching;
+            this.lastNames = lastNames;
+            this.keys = keys;
+            this.ids = ids;
+        }
+
+        /**
+         * @return the index of the first last name not lower than the prefix, which is the first match if any
+         */
+        private int start(String prefix) {
+            String key = this.matching.key(prefix);
+            int low = 0;
+            int high = this.keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.keys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index following the last match; matches are contiguous and come right after lower last names
+         */
+        private int end(String prefix) {
+            String key = this.matching.key(prefix);
+            int low = 0;
+            int high = this.keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                String midKey = this.keys[mid];
+                if (midKey.compareTo(key) < 0 || midKey.startsWith(key)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the first owner after the given one in the search order
+         */
+        private int after(String lastName, int id) {
+            String key = this.matching.key(lastName);
+            int low = 0;
+            int high = this.keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(this.keys[mid], this.ids[mid], key, id) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return a copy of this snapshot where the owner with the given id has the given last name
+         */
+        private Snapshot with(int id, String lastName) {
+            if (lastName == null) {
+                lastName = "";
+            }
+            int removed = -1;
+            for (int i = 0; i < this.ids.length; i++) {
+                if (this.ids[i] == id) {
+                    if (this.lastNames[i].equals(lastName)) {
+                        return this;
+                    }
+                    removed = i;
+                    break;
+                }
+            }
+            int length = this.ids.length - (removed >= 0 ? 1 : 0);
+            String[] remainingNames = new String[length];
+            String[] remainingKeys = new String[length];
+            int[] remainingIds = new int[length];
+            if (removed >= 0) {
+                System.arraycopy(this.lastNames, 0, remainingNames, 0, removed);
+                System.arraycopy(this.lastNames, removed + 1, remainingNames, removed, length - removed);
+                System.arraycopy(this.keys, 0, remainingKeys, 0, removed);
+                System.arraycopy(this.keys, removed + 1, remainingKeys, removed, length - removed);
+                System.arraycopy(this.ids, 0, remainingIds, 0, removed);
+                System.arraycopy(this.ids, removed + 1, remainingIds, removed, length - removed);
+            } else {
+                System.arraycopy(this.lastNames, 0, remainingNames, 0, length);
+                System.arraycopy(this.keys, 0, remainingKeys, 0, length);
+                System.arraycopy(this.ids, 0, remainingIds, 0, length);
+            }
+            int insertAt = new Snapshot(this.matching, remainingNames, remainingKeys, remainingIds).after(lastName, id);
+            String[] lastNames = new String[length + 1];
+            String[] keys = new String[length + 1];
+            int[] ids = new int[length + 1];
+            System.arraycopy(remainingNames, 0, lastNames, 0, insertAt);
+            System.arraycopy(remainingKeys, 0, keys, 0, insertAt);
+            System.arraycopy(remainingIds, 0, ids, 0, insertAt);
+            lastNames[insertAt] = lastName;
+            keys[insertAt] = this.matching.key(lastName);
+            ids[insertAt] = id;
+            System.arraycopy(remainingNames, insertAt, lastNames, insertAt + 1, length - insertAt);
+            System.arraycopy(remainingKeys, insertAt, keys, insertAt + 1, length - insertAt);
+            System.arraycopy(remainingIds, insertAt, ids, insertAt + 1, length - insertAt);
+            return new Snapshot(this.matching, lastNames, keys, ids);
+        }
+    }
+
+}
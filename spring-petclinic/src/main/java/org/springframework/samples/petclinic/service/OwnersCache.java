@@ -0,0 +1,349 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.repository.OwnerRepository;
+import org.springframework.samples.petclinic.repository.PetRepository;
+import org.springframework.samples.petclinic.util.ReadReplicaRoutingDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.SerializationUtils;
+
+/**
+ * Read-through cache of the owner aggregates (an owner, its pets and their visits) behind {@link
+ * ClinicService#findOwnerById} and {@link ClinicService#findPetById}, in front of whichever repositories the active
+ * profile provides.
+ * <p/>
+ * Aggregates are kept serialized, in a map bounded by a maximum number of owners that evicts the least recently used
+ * one. A pet is served from the aggregate of its owner, so a pet and its owner are never cached twice nor get out of
+ * step. Each lookup returns a fresh copy, and callers can keep modifying what they get, as the web forms do, without
+ * affecting the cache.
+ * <p/>
+ * Writes evict precisely the aggregates they change; the owner of a pet only known by id (a visit import, for
+ * instance) is found through the pets of the cached aggregates. Evictions happen right away and again once the
+ * transaction has completed, and an aggregate read before an eviction is never stored after it. Lookups made within a
+ * transaction bypass the cache, so that a transaction always sees its own changes and never publishes uncommitted
+ * ones.
+ * <p/>
+ * Loads always run in a transaction, joining the caller's if there is one, so that the lazy associations of the JPA
+ * profiles are initialized even with the cache disabled and for callers without a transaction of their own. The loads
+ * that fill the cache read from the primary database with the "read-replicas" profile: a lagging replica would
+ * otherwise hand back the state an eviction has just discarded, and the cache would keep it.
+ */
+@Component
+@ManagedResource("petclinic:type=OwnersCache")
+public class OwnersCache {
+
+    private final OwnerRepository ownerRepository;
+
+    private final PetRepository petRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Object monitor = new Object();
+
+    private final Map<Integer, CachedOwner> owners = new LinkedHashMap<Integer, CachedOwner>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CachedOwner> eldest) {
+            if (size() > maxOwners) {
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Owner id of each pet of the cached aggregates.
+     */
+    private final Map<Integer, Integer> ownerIdsByPetId = new HashMap<Integer, Integer>();
+
+    /**
+     * Incremented by each eviction; an aggregate is only stored if no eviction happened while it was read.
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private volatile int maxOwners = 10000;
+
+
+    @Autowired
+    public OwnersCache(OwnerRepository ownerRepository, PetRepository petRepository,
+                       PlatformTransactionManager transactionManager) {
+        this.ownerRepository = ownerRepository;
+        this.petRepository = petRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Maximum number of owner aggregates kept in memory; zero or less disables the cache.
+     */
+    @Value("${owners.cache.maxOwners:10000}")
+    @ManagedAttribute
+    public void setMaxOwners(int maxOwners) {
+        this.maxOwners = maxOwners;
+        if (maxOwners <= 0) {
+            clear();
+        }
+    }
+
+    @ManagedAttribute
+    public int getMaxOwners() {
+        return this.maxOwners;
+    }
+
+    @ManagedAttribute
+    public int getOwnerCount() {
+        synchronized (this.monitor) {
+            return this.owners.size();
+        }
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Discard all cached aggregates, for instance after changes made directly in the database.
+     */
+    @ManagedOperation
+    public void clear() {
+        synchronized (this.monitor) {
+            this.evictionCount.incrementAndGet();
+            this.owners.clear();
+            this.ownerIdsByPetId.clear();
+        }
+    }
+
+    /**
+     * @return a copy of the owner with the given id, its pets and their visits
+     */
+    public Owner getOwner(int id) {
+        if (!isEnabled()) {
+            return this.transactionTemplate.execute(ownerLoader(id));
+        }
+        CachedOwner cached;
+        synchronized (this.monitor) {
+            cached = this.owners.get(id);
+        }
+        if (cached != null) {
+            this.hitCount.incrementAndGet();
+            return cached.copy();
+        }
+        this.missCount.incrementAndGet();
+        long evictions = this.evictionCount.get();
+        Owner owner = ReadReplicaRoutingDataSource.readFromPrimary(this.transactionTemplate, ownerLoader(id));
+        if (owner != null) {
+            put(owner, evictions);
+        }
+        return owner;
+    }
+
+    /**
+     * @return a copy of the pet with the given id, its visits and its owner (with all of the owner's pets)
+     */
+    public Pet getPet(int id) {
+        if (!isEnabled()) {
+            return this.transactionTemplate.execute(petLoader(id));
+        }
+        CachedOwner cached = null;
+        synchronized (this.monitor) {
+            Integer ownerId = this.ownerIdsByPetId.get(id);
+            if (ownerId != null) {
+                cached = this.owners.get(ownerId);
+            }
+        }
+        if (cached != null) {
+            this.hitCount.incrementAndGet();
+            return getPet(cached.copy(), id);
+        }
+        this.missCount.incrementAndGet();
+        long evictions = this.evictionCount.get();
+        Pet pet = ReadReplicaRoutingDataSource.readFromPrimary(this.transactionTemplate, petWithOwnerLoader(id));
+        // an orphan pet is not part of any aggregate
+        if (pet != null && pet.getOwner() != null) {
+            put(pet.getOwner(), evictions);
+        }
+        return pet;
+    }
+
+    /**
+     * Evict the aggregates of the given owner and of the owners of the given pets, now and again once the current
+     * transaction has completed.
+     *
+     * @param ownerId the id of a changed owner, or <code>null</code>
+     * @param petIds  the ids of changed pets (including pets that got new visits); <code>null</code> ids are ignored
+     */
+    public void evict(final Integer ownerId, final Collection<Integer> petIds) {
+        doEvict(ownerId, petIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    doEvict(ownerId, petIds);
+                }
+            });
+        }
+    }
+
+
+    private TransactionCallback<Owner> ownerLoader(final int id) {
+        return new TransactionCallback<Owner>() {
+            @Override
+            public Owner doInTransaction(TransactionStatus status) {
+                return ownerRepository.findById(id);
+            }
+        };
+    }
+
+    private TransactionCallback<Pet> petLoader(final int id) {
+        return new TransactionCallback<Pet>() {
+            @Override
+            public Pet doInTransaction(TransactionStatus status) {
+                return petRepository.findById(id);
+            }
+        };
+    }
+
+    /**
+     * Loads a pet as part of the aggregate of its owner, unless it is an orphan.
+     */
+    private TransactionCallback<Pet> petWithOwnerLoader(final int id) {
+        return new TransactionCallback<Pet>() {
+            @Override
+            public Pet doInTransaction(TransactionStatus status) {
+                Pet pet = petRepository.findById(id);
+                if (pet == null || pet.getOwner() == null) {
+                    return pet;
+                }
+                return getPet(ownerRepository.findById(pet.getOwner().getId()), id);
+            }
+        };
+    }
+
+    private boolean isEnabled() {
+        return (this.maxOwners > 0 && !TransactionSynchronizationManager.isActualTransactionActive());
+    }
+
+    private void put(Owner owner, long evictions) {
+        List<Pet> ownerPets = owner.getPets();
+        Integer[] petIds = new Integer[ownerPets.size()];
+        for (int i = 0; i < petIds.length; i++) {
+            petIds[i] = ownerPets.get(i).getId();
+        }
+        CachedOwner loaded = new CachedOwner(SerializationUtils.serialize(owner), petIds);
+        synchronized (this.monitor) {
+            if (this.evictionCount.get() == evictions) {
+                this.owners.put(owner.getId(), loaded);
+                for (Integer petId : petIds) {
+                    this.ownerIdsByPetId.put(petId, owner.getId());
+                }
+            }
+        }
+    }
+
+    private static Pet getPet(Owner owner, int id) {
+        for (Pet pet : owner.getPets()) {
+            if (pet.getId() == id) {
+                return pet;
+            }
+        }
+        return null;
+    }
+
+    private void doEvict(Integer ownerId, Collection<Integer> petIds) {
+        synchronized (this.monitor) {
+            this.evictionCount.incrementAndGet();
+            if (ownerId != null) {
+                remove(ownerId);
+            }
+            for (Integer petId : petIds) {
+                Integer petOwnerId = (petId != null ? this.ownerIdsByPetId.get(petId) : null);
+                if (petOwnerId != null) {
+                    remove(petOwnerId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the monitor.
+     */
+    private void remove(Integer ownerId) {
+        CachedOwner owner = this.owners.remove(ownerId);
+        if (owner != null) {
+            unindex(ownerId, owner);
+        }
+    }
+
+    /**
+     * Must be called while holding the monitor.
+     */
+    private void unindex(Integer ownerId, CachedOwner owner) {
+        for (Integer petId : owner.petIds) {
+            if (ownerId.equals(this.ownerIdsByPetId.get(petId))) {
+                this.ownerIdsByPetId.remove(petId);
+            }
+        }
+    }
+
+
+    private static class CachedOwner {
+
+        private final byte[] graph;
+
+        private final Integer[] petIds;
+
+        private CachedOwner(byte[] graph, Integer[] petIds) {
+            this.graph = graph;
+            this.petIds = petIds;
+        }
+
+        private Owner copy() {
+            return (Owner) SerializationUtils.deserialize(this.graph);
+        }
+    }
+
+}
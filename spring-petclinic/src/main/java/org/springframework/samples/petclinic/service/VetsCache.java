@@ -0,0 +1,271 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.samples.petclinic.model.Vet;
+import org.springframework.samples.petclinic.repository.VetRepository;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Versioned in-memory copy of the list of vets served by {@link ClinicService#findVets()}.
+ * <p/>
+ * The list is kept until it is invalidated, which bumps a version number: {@link ClinicService#saveVet} does so once
+ * its transaction has committed, and the <code>invalidate</code> JMX operation covers changes made directly in the
+ * database. A loaded list is tagged with the version read before the query, so an invalidation that races with a load
+ * is never lost.
+ * <p/>
+ * With refresh-ahead (the default) an outdated list is reloaded in the background, and callers keep getting the
+ * previous list until the new one is ready: only the very first call waits for the database. Without it, the first
+ * caller after an invalidation reloads the list while the others wait.
+ */
+@Component
+@ManagedResource("petclinic:type=VetsCache")
+public class VetsCache implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(VetsCache.class);
+
+    private final VetRepository vetRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final ExecutorService refreshExecutor;
+
+    private volatile Snapshot snapshot;
+
+    private volatile boolean refreshAhead = true;
+
+    private volatile long refreshAfterMillis = 0;
+
+
+    @Autowired
+    public VetsCache(VetRepository vetRepository, PlatformTransactionManager transactionManager) {
+        this.vetRepository = vetRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("vets-cache-");
+        threadFactory.setDaemon(true);
+        this.refreshExecutor = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Whether an outdated list is reloaded in the background while the previous one is still served.
+     */
+    @Value("${vets.refreshAhead:true}")
+    @ManagedAttribute
+    public void setRefreshAhead(boolean refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    @ManagedAttribute
+    public boolean isRefreshAhead() {
+        return this.refreshAhead;
+    }
+
+    /**
+     * Number of seconds after which the list is also reloaded in the background even though it has not been
+     * invalidated, to pick up changes made directly in the database. Zero or less (the default) disables it.
+     */
+    @Value("${vets.refreshAfterSeconds:0}")
+    @ManagedAttribute
+    public void setRefreshAfterSeconds(long refreshAfterSeconds) {
+        this.refreshAfterMillis = refreshAfterSeconds * 1000;
+    }
+
+    @ManagedAttribute
+    public long getRefreshAfterSeconds() {
+        return this.refreshAfterMillis / 1000;
+    }
+
+    /**
+     * Incremented by each invalidation.
+     */
+    @ManagedAttribute
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    /**
+     * Number of times the list has been read from the database.
+     */
+    @ManagedAttribute
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /**
+     * Mark the cached list as outdated; it is reloaded on the next call to {@link #getVets()}, or right away in the
+     * background with refresh-ahead.
+     */
+    @ManagedOperation
+    public void invalidate() {
+        this.version.incrementAndGet();
+        if (this.refreshAhead && this.snapshot != null) {
+            refreshInBackground();
+        }
+    }
+
+    /**
+     * {@link #invalidate() Invalidate} the list once the current transaction has committed, so that the reload sees
+     * the committed change; invalidate it immediately when there is no transaction.
+     */
+    public void invalidateAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    invalidate();
+                }
+            });
+        } else {
+            invalidate();
+        }
+    }
+
+    /**
+     * @return all vets, ordered by last name then first name; the collection is shared and must not be modified
+     */
+    public Collection<Vet> getVets() {
+        return getSnapshot().getVets();
+    }
+
+    /**
+     * @return the list of vets {@link #getVets()} currently returns, with the version it was loaded at; callers caching
+     *         data derived from the list can key it by the returned instance, which is replaced on each load
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = this.snapshot;
+        if (current == null) {
+            return loadIfOutdated();
+        }
+        boolean outdated = (current.version != this.version.get());
+        boolean expired = (this.refreshAfterMillis > 0 &&
+                System.currentTimeMillis() - current.loadTime > this.refreshAfterMillis);
+        if (outdated && !this.refreshAhead) {
+            return loadIfOutdated();
+        }
+        if (outdated || expired) {
+            refreshInBackground();
+        }
+        return current;
+    }
+
+    @Override
+    public void destroy() {
+        this.refreshExecutor.shutdownNow();
+    }
+
+
+    private synchronized Snapshot loadIfOutdated() {
+        Snapshot current = this.snapshot;
+        if (current == null || current.version != this.version.get()) {
+            current = load();
+        }
+        return current;
+    }
+
+    private void refreshInBackground() {
+        if (this.refreshing.compareAndSet(false, true)) {
+            this.refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        synchronized (VetsCache.this) {
+                            load();
+                        }
+                    } catch (RuntimeException ex) {
+                        // keep serving the previous list, the next call tries again
+                        logger.warn("Could not refresh the list of vets", ex);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Must be called while holding the lock on this cache.
+     */
+    private Snapshot load() {
+        long loadedVersion = this.version.get();
+        Collection<Vet> vets = this.transactionTemplate.execute(new TransactionCallback<Collection<Vet>>() {
+            @Override
+            public Collection<Vet> doInTransaction(TransactionStatus status) {
+                return vetRepository.findAll();
+            }
+        });
+        this.loadCount.incrementAndGet();
+        Snapshot loaded = new Snapshot(loadedVersion, Collections.unmodifiableCollection(new ArrayList<Vet>(vets)));
+        this.snapshot = loaded;
+        return loaded;
+    }
+
+
+    /**
+     * An immutable list of vets and the cache version it was loaded at.
+     */
+    public static final class Snapshot {
+
+        private final long version;
+
+        private final long loadTime = System.currentTimeMillis();
+
+        private final Collection<Vet> vets;
+
+        private Snapshot(long version, Collection<Vet> vets) {
+            this.version = version;
+            this.vets = vets;
+        }
+
+        public long getVersion() {
+            return this.version;
+        }
+
+        public Collection<Vet> getVets() {
+            return this.vets;
+        }
+    }
+
+}
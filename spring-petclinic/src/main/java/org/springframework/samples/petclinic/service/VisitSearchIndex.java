@@ -0,0 +1,492 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.model.VisitSearchResult;
+import org.springframework.samples.petclinic.util.ReadReplicaRoutingDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory inverted index of the visit descriptions, answering full-text searches such as "rabies" or "spayed" over
+ * the whole visit history, which the database could only answer by scanning every description.
+ * <p/>
+ * Descriptions are split into lower-case words of letters and digits. For each word, the index lists the visits whose
+ * description contains it, with the number of occurrences. Visits are ranked with the BM25 formula, so rare words and
+ * short descriptions weigh more and a visit matching several words of the query comes first; only the best matches
+ * are then read from the database, with their pet and owner.
+ * <p/>
+ * The table is read on first use, from the primary database even within a read-only transaction. The index is then kept
+ * up to date by {@link ClinicService#saveVisit} and {@link ClinicService#saveVisits} once their transaction has
+ * committed; visits saved without getting an id back (JDBC batches) are found again among the visits of their pets.
+ * Searches share a read lock and updates take the write lock. Visits changed directly in the database are picked up by
+ * the <code>rebuild</code> JMX operation, which also reclaims the space of replaced descriptions.
+ */
+@Component
+@ManagedResource("petclinic:type=VisitSearchIndex")
+public class VisitSearchIndex {
+
+    /**
+     * BM25 parameters: how fast repeated occurrences of a word stop adding to the score, and how much the length of a
+     * description lowers it.
+     */
+    private static final float K1 = 1.2f;
+
+    private static final float B = 0.75f;
+
+    private static final int PET_IDS_PER_QUERY = 500;
+
+    private static final String RESULTS_SQL =
+            "SELECT v.id, v.visit_date, v.description, p.id, p.name, t.name, o.id, o.first_name, o.last_name " +
+            "FROM visits v JOIN pets p ON p.id = v.pet_id JOIN types t ON t.id = p.type_id " +
+            "JOIN owners o ON o.id = p.owner_id WHERE v.id IN (:ids)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile Index index;
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+
+    @Autowired
+    public VisitSearchIndex(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Number of visits in the index, or -1 if the table has not been read yet.
+     */
+    @ManagedAttribute
+    public int getSize() {
+        Index current = this.index;
+        if (current == null) {
+            return -1;
+        }
+        this.lock.readLock().lock();
+        try {
+            return current.documents.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct words in the index, or -1 if the table has not been read yet.
+     */
+    @ManagedAttribute
+    public int getWordCount() {
+        Index current = this.index;
+        if (current == null) {
+            return -1;
+        }
+        this.lock.readLock().lock();
+        try {
+            return current.postings.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of times the visits table has been read.
+     */
+    @ManagedAttribute
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /**
+     * Read the visits table again.
+     */
+    @ManagedOperation
+    public synchronized void rebuild() {
+        this.index = load();
+    }
+
+    /**
+     * @return the visits whose description contains any of the words of the query, best match first; visits saved by
+     *         a transaction that has not committed yet are not found
+     */
+    public List<VisitSearchResult> search(String query, int maxResults) {
+        List<String> words = new ArrayList<String>(new LinkedHashSet<String>(tokenize(query)));
+        if (words.isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        Index current = getIndex();
+        List<Hit> hits;
+        this.lock.readLock().lock();
+        try {
+            hits = current.search(words, maxResults);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return findResults(hits);
+    }
+
+    /**
+     * Index the descriptions of the given visits once the current transaction has committed, or immediately when
+     * there is no transaction.
+     */
+    public void updateAfterCommit(Collection<Visit> visits) {
+        final Map<Integer, String> descriptions = new LinkedHashMap<Integer, String>();
+        final Set<Integer> petIds = new LinkedHashSet<Integer>();
+        for (Visit visit : visits) {
+            if (visit.getId() != null) {
+                descriptions.put(visit.getId(), visit.getDescription());
+            } else if (visit.getPet() != null && visit.getPet().getId() != null) {
+                petIds.add(visit.getPet().getId());
+            }
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    update(descriptions, petIds);
+                }
+            });
+        } else {
+            update(descriptions, petIds);
+        }
+    }
+
+
+    private synchronized void update(Map<Integer, String> descriptions, Collection<Integer> petIds) {
+        Index current = this.index;
+        if (current == null) {
+            // not loaded yet: the visits will be read with the others
+            return;
+        }
+        final Map<Integer, String> visitsOfPets = new LinkedHashMap<Integer, String>();
+        List<Integer> ids = new ArrayList<Integer>(petIds);
+        for (int i = 0; i < ids.size(); i += PET_IDS_PER_QUERY) {
+            this.jdbcTemplate.query("SELECT id, description FROM visits WHERE pet_id IN (:petIds)",
+                    Collections.singletonMap("petIds", ids.subList(i, Math.min(i + PET_IDS_PER_QUERY, ids.size()))),
+                    new RowCallbackHandler() {
+                        @Override
+                        public void processRow(ResultSet rs) throws SQLException {
+                            visitsOfPets.put(rs.getInt(1), rs.getString(2));
+                        }
+                    });
+        }
+        this.lock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, String> entry : descriptions.entrySet()) {
+                current.put(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Integer, String> entry : visitsOfPets.entrySet()) {
+                if (!current.documents.containsKey(entry.getKey())) {
+                    current.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private Index getIndex() {
+        Index current = this.index;
+        if (current == null) {
+            synchronized (this) {
+                current = this.index;
+                if (current == null) {
+                    current = load();
+                    this.index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Must be called while holding the lock on this index, so that updates committed meanwhile are applied afterwards.
+     * The new index is not visible to searches before it is complete. The visits are read in a new transaction, so
+     * that a replica behind the caller's read-only transaction does not leave out the latest ones until the next
+     * rebuild.
+     */
+    private Index load() {
+        final Index loaded = new Index();
+        ReadReplicaRoutingDataSource.readFromPrimary(this.transactionTemplate, new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                jdbcTemplate.getJdbcOperations().query("SELECT id, description FROM visits", new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        loaded.put(rs.getInt(1), rs.getString(2));
+                    }
+                });
+                return null;
+            }
+        });
+        this.loadCount.incrementAndGet();
+        return loaded;
+    }
+
+    /**
+     * Read the visits of the given hits with their pet and owner, in the order of the hits; visits deleted since they
+     * were indexed are left out.
+     */
+    private List<VisitSearchResult> findResults(List<Hit> hits) {
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Integer> ids = new ArrayList<Integer>(hits.size());
+        for (Hit hit : hits) {
+            ids.add(hit.visitId);
+        }
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        final Map<Integer, VisitSearchResult> results = new HashMap<Integer, VisitSearchResult>();
+        this.jdbcTemplate.query(RESULTS_SQL, Collections.singletonMap("ids", ids), new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                VisitSearchResult result = new VisitSearchResult();
+                result.setVisitId(rs.getInt(1));
+                Date date = rs.getDate(2);
+                result.setDate(date != null ? dateFormat.format(date) : null);
+                result.setDescription(rs.getString(3));
+                result.setPetId(rs.getInt(4));
+                result.setPetName(rs.getString(5));
+                result.setPetType(rs.getString(6));
+                result.setOwnerId(rs.getInt(7));
+                result.setOwnerFirstName(rs.getString(8));
+                result.setOwnerLastName(rs.getString(9));
+                results.put(result.getVisitId(), result);
+            }
+        });
+        List<VisitSearchResult> ranked = new ArrayList<VisitSearchResult>(hits.size());
+        for (Hit hit : hits) {
+            VisitSearchResult result = results.get(hit.visitId);
+            if (result != null) {
+                result.setScore(hit.score);
+                ranked.add(result);
+            }
+        }
+        return ranked;
+    }
+
+    /**
+     * @return the lower-case words of letters and digits of the given text, in order and with repetitions
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<String>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = (i < text.length() && Character.isLetterOrDigit(text.charAt(i)));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+
+    /**
+     * Indexed descriptions, to be read under the read lock and changed under the write lock. Each description gets a
+     * document number in the order it was indexed; a replaced description keeps its number, marked as replaced, until
+     * the next rebuild.
+     */
+    private static class Index {
+
+        private final Map<String, Postings> postings = new HashMap<String, Postings>();
+
+        /**
+         * Current document number of each indexed visit id.
+         */
+        private final Map<Integer, Integer> documents = new HashMap<Integer, Integer>();
+
+        private int[] visitIds = new int[64];
+
+        private int[] lengths = new int[64];
+
+        private int documentCount;
+
+        private final BitSet replaced = new BitSet();
+
+        private long totalLength;
+
+        private void put(int visitId, String description) {
+            Integer previous = this.documents.get(visitId);
+            if (previous != null) {
+                this.replaced.set(previous);
+                this.totalLength -= this.lengths[previous];
+            }
+            int document = this.documentCount++;
+            if (document == this.visitIds.length) {
+                this.visitIds = Arrays.copyOf(this.visitIds, document * 2);
+                this.lengths = Arrays.copyOf(this.lengths, document * 2);
+            }
+            List<String> words = tokenize(description);
+            this.visitIds[document] = visitId;
+            this.lengths[document] = words.size();
+            this.totalLength += words.size();
+            this.documents.put(visitId, document);
+
+            Map<String, Integer> frequencies = new HashMap<String, Integer>();
+            for (String word : words) {
+                Integer frequency = frequencies.get(word);
+                frequencies.put(word, frequency != null ? frequency + 1 : 1);
+            }
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                Postings wordPostings = this.postings.get(entry.getKey());
+                if (wordPostings == null) {
+                    wordPostings = new Postings();
+                    this.postings.put(entry.getKey(), wordPostings);
+                }
+                wordPostings.add(document, entry.getValue());
+            }
+        }
+
+        private List<Hit> search(List<String> words, int maxResults) {
+            int size = this.documents.size();
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            float averageLength = Math.max(1f, (float) this.totalLength / size);
+            float[] scores = new float[this.documentCount];
+            List<Postings> matching = new ArrayList<Postings>(words.size());
+            for (String word : words) {
+                Postings wordPostings = this.postings.get(word);
+                if (wordPostings == null) {
+                    continue;
+                }
+                matching.add(wordPostings);
+                // replaced descriptions are still counted until the next rebuild
+                int frequency = Math.min(wordPostings.count, size);
+                float idf = (float) Math.log((size + 1) / (frequency + 0.5));
+                for (int i = 0; i < wordPostings.count; i++) {
+                    int document = wordPostings.documents[i];
+                    if (!this.replaced.get(document)) {
+                        float occurrences = wordPostings.frequencies[i];
+                        scores[document] += idf * occurrences * (K1 + 1) /
+                                (occurrences + K1 * (1 - B + B * this.lengths[document] / averageLength));
+                    }
+                }
+            }
+            // keep the best hits in a heap whose head is the worst of them
+            PriorityQueue<Hit> best = new PriorityQueue<Hit>(maxResults + 1);
+            for (Postings wordPostings : matching) {
+                for (int i = 0; i < wordPostings.count; i++) {
+                    int document = wordPostings.documents[i];
+                    if (scores[document] > 0) {
+                        best.add(new Hit(this.visitIds[document], scores[document]));
+                        scores[document] = 0;
+                        if (best.size() > maxResults) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+            List<Hit> hits = new ArrayList<Hit>(best);
+            Collections.sort(hits, Collections.reverseOrder());
+            return hits;
+        }
+    }
+
+
+    /**
+     * Documents containing a word, in increasing document number, with the number of occurrences in each.
+     */
+    private static class Postings {
+
+        private int[] documents = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int count;
+
+        private void add(int document, int frequency) {
+            if (this.count == this.documents.length) {
+                this.documents = Arrays.copyOf(this.documents, this.count * 2);
+                this.frequencies = Arrays.copyOf(this.frequencies, this.count * 2);
+            }
+            this.documents[this.count] = document;
+            this.frequencies[this.count] = frequency;
+            this.count++;
+        }
+    }
+
+
+    /**
+     * A matching visit, ordered by score then by id, so that the most recent of equally relevant visits comes first.
+     */
+    private static class Hit implements Comparable<Hit> {
+
+        private final int visitId;
+
+        private final float score;
+
+        private Hit(int visitId, float score) {
+            this.visitId = visitId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            int comparison = Float.compare(this.score, other.score);
+            return (comparison != 0 ? comparison : (this.visitId < other.visitId ? -1 :
+                    (this.visitId == other.visitId ? 0 : 1)));
+        }
+    }
+
+}
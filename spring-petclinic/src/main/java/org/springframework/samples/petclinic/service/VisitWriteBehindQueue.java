@@ -0,0 +1,485 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.util.ConcurrentHistogram;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optional write-behind of new visits with group commit, for the morning rush when many front desks save visits at
+ * the same time and each {@link ClinicService#saveVisit} would otherwise be a transaction and a commit of its own.
+ * <p/>
+ * When enabled, {@link #submit} puts the visit in a bounded queue and returns at once. A dedicated writer thread takes
+ * the first waiting visit, waits at most <code>maxDelayMillis</code> for others up to <code>maxBatchSize</code>, and
+ * saves them all with {@link ClinicService#saveVisits} in a single transaction. The future of each visit completes once
+ * that transaction has committed, or fails with its exception. When a group fails, its visits are saved again one by
+ * one, with the ids they were submitted with, so that one invalid visit does not fail the others. With the JDBC
+ * repositories, visits saved in a group do not get their id back.
+ * <p/>
+ * When disabled (the default), {@link #submit} saves the visit right away with {@link ClinicService#saveVisit}.
+ */
+@Component
+@ManagedResource("petclinic:type=VisitWriteBehindQueue")
+public class VisitWriteBehindQueue implements InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(VisitWriteBehindQueue.class);
+
+    private final ClinicService clinicService;
+
+    private boolean enabled;
+
+    private int queueCapacity = 10000;
+
+    private volatile int maxBatchSize = 100;
+
+    private volatile long maxDelayMillis = 5;
+
+    private volatile long offerTimeoutMillis = 1000;
+
+    private volatile long saveTimeoutMillis = 30000;
+
+    private long stopTimeoutMillis = 30000;
+
+    private BlockingQueue<PendingVisit> queue;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    private volatile ConcurrentHistogram batchSizes = new ConcurrentHistogram();
+
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+
+    @Autowired
+    public VisitWriteBehindQueue(ClinicService clinicService) {
+        this.clinicService = clinicService;
+    }
+
+    /**
+     * Whether visits are queued and committed in groups; only read at startup.
+     */
+    @Value("${visits.writeBehind.enabled:false}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Maximum number of visits waiting to be written; only read at startup.
+     */
+    @Value("${visits.writeBehind.queueCapacity:10000}")
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @ManagedAttribute
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * Maximum number of visits committed in one transaction.
+     */
+    @Value("${visits.writeBehind.maxBatchSize:100}")
+    @ManagedAttribute
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    @ManagedAttribute
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    /**
+     * Time the writer waits for more visits after the first one of a group, in milliseconds.
+     */
+    @Value("${visits.writeBehind.maxDelayMillis:5}")
+    @ManagedAttribute
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @ManagedAttribute
+    public long getMaxDelayMillis() {
+        return this.maxDelayMillis;
+    }
+
+    /**
+     * Time {@link #submit} waits for room in a full queue before rejecting the visit, in milliseconds.
+     */
+    @Value("${visits.writeBehind.offerTimeoutMillis:1000}")
+    @ManagedAttribute
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    @ManagedAttribute
+    public long getOfferTimeoutMillis() {
+        return this.offerTimeoutMillis;
+    }
+
+    /**
+     * Time {@link #save} waits for its visit to be committed, in milliseconds.
+     */
+    @Value("${visits.writeBehind.saveTimeoutMillis:30000}")
+    @ManagedAttribute
+    public void setSaveTimeoutMillis(long saveTimeoutMillis) {
+        this.saveTimeoutMillis = saveTimeoutMillis;
+    }
+
+    @ManagedAttribute
+    public long getSaveTimeoutMillis() {
+        return this.saveTimeoutMillis;
+    }
+
+    /**
+     * Time {@link #destroy} waits for the writer to save the queued visits, in milliseconds; the visits still queued
+     * then fail.
+     */
+    @Value("${visits.writeBehind.stopTimeoutMillis:30000}")
+    public void setStopTimeoutMillis(long stopTimeoutMillis) {
+        this.stopTimeoutMillis = stopTimeoutMillis;
+    }
+
+    /**
+     * @return the number of visits waiting to be written
+     */
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return (this.queue != null ? this.queue.size() : 0);
+    }
+
+    /**
+     * @return the largest number of visits found waiting since the last reset
+     */
+    @ManagedAttribute
+    public long getMaxQueueDepth() {
+        return this.maxQueueDepth.get();
+    }
+
+    /**
+     * @return the number of visits per committed group: count of groups, mean, p50, p90, p99 and max
+     */
+    @ManagedAttribute
+    public String getBatchSizeStatistics() {
+        ConcurrentHistogram histogram = this.batchSizes;
+        return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", histogram.getCount(),
+                histogram.getMean(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getMax());
+    }
+
+    /**
+     * @return the number of visits committed by the writer since the last reset
+     */
+    @ManagedAttribute
+    public long getCommittedCount() {
+        return this.batchSizes.getTotal();
+    }
+
+    /**
+     * @return the number of visits the writer failed to save, even on their own, or had not taken when it stopped
+     */
+    @ManagedAttribute
+    public long getFailedCount() {
+        return this.failedCount.get();
+    }
+
+    /**
+     * @return the number of visits rejected because the queue stayed full
+     */
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    @ManagedOperation
+    public void reset() {
+        this.batchSizes = new ConcurrentHistogram();
+        this.maxQueueDepth.set(0);
+        this.failedCount.set(0);
+        this.rejectedCount.set(0);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (this.enabled) {
+            this.queue = new ArrayBlockingQueue<PendingVisit>(this.queueCapacity);
+            this.running = true;
+            this.writer = new CustomizableThreadFactory("visit-writer-").newThread(new Runnable() {
+                @Override
+                public void run() {
+                    writeUntilStopped();
+                }
+            });
+            this.writer.start();
+        }
+    }
+
+    /**
+     * Stop taking visits, and wait for the writer to save those already queued; those it has not taken within
+     * <code>stopTimeoutMillis</code> fail with a {@link TaskRejectedException}.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (this.writer != null) {
+            this.running = false;
+            this.writer.join(this.stopTimeoutMillis);
+            List<PendingVisit> abandoned = new ArrayList<PendingVisit>();
+            this.queue.drainTo(abandoned);
+            if (!abandoned.isEmpty()) {
+                logger.warn("Visit writer stopped with {} visit(s) still queued", abandoned.size());
+            }
+            for (PendingVisit pending : abandoned) {
+                this.failedCount.incrementAndGet();
+                pending.fail(new TaskRejectedException("Visit writer stopped before the visit was saved"));
+            }
+        }
+    }
+
+    /**
+     * Save the given new visit, in a group with others when write-behind is enabled.
+     *
+     * @return a future that completes with the visit once it has been committed
+     * @throws TaskRejectedException if the queue stayed full for longer than <code>offerTimeoutMillis</code>, or is
+     *                               shutting down
+     */
+    public Future<Visit> submit(Visit visit) throws TaskRejectedException {
+        PendingVisit pending = new PendingVisit(visit);
+        if (!this.enabled) {
+            try {
+                this.clinicService.saveVisit(visit);
+                pending.succeed();
+            } catch (RuntimeException ex) {
+                pending.fail(ex);
+            }
+            return pending;
+        }
+        boolean queued = false;
+        if (this.running) {
+            try {
+                queued = this.queue.offer(pending, this.offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // the writer may have stopped after the check, and then never takes the visit: take it back unless it did
+        if (queued && !this.running && this.queue.remove(pending)) {
+            queued = false;
+        }
+        if (!queued) {
+            this.rejectedCount.incrementAndGet();
+            throw new TaskRejectedException("Visit queue full or stopped: " + getQueueDepth() + " visit(s) waiting");
+        }
+        recordQueueDepth(this.queue.size());
+        return pending;
+    }
+
+    /**
+     * Save the given new visit like {@link #submit}, and wait until it has been committed, for at most
+     * <code>saveTimeoutMillis</code>.
+     *
+     * @throws TaskRejectedException if the visit could not be queued, or was still queued when the writer stopped
+     * @throws IllegalStateException if the visit was not committed in time; it may still be committed later
+     */
+    public void save(Visit visit) throws TaskRejectedException {
+        try {
+            submit(visit).get(this.saveTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the visit to be saved", ex);
+        } catch (TimeoutException ex) {
+            throw new IllegalStateException("Visit not saved within " + this.saveTimeoutMillis + " ms", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Visit could not be saved", ex.getCause());
+        }
+    }
+
+
+    private void writeUntilStopped() {
+        List<PendingVisit> group = new ArrayList<PendingVisit>();
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                PendingVisit first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                int maxSize = this.maxBatchSize;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.maxDelayMillis);
+                while (group.size() < maxSize) {
+                    if (this.queue.drainTo(group, maxSize - group.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingVisit next = (remaining > 0 ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : null);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException ex) {
+                // keep going until the queue is empty: the callers of the queued visits are waiting for them
+                logger.warn("Visit writer interrupted; {} visit(s) still queued", this.queue.size());
+            }
+            if (!group.isEmpty()) {
+                write(group);
+                group.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingVisit> group) {
+        List<Visit> visits = new ArrayList<Visit>(group.size());
+        List<Integer> ids = new ArrayList<Integer>(group.size());
+        for (PendingVisit pending : group) {
+            visits.add(pending.visit);
+            ids.add(pending.visit.getId());
+        }
+        try {
+            this.clinicService.saveVisits(visits);
+            this.batchSizes.recordValue(group.size());
+            for (PendingVisit pending : group) {
+                pending.succeed();
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Saving a group of " + group.size() + " visits failed; saving them one by one", ex);
+            for (int i = 0; i < group.size(); i++) {
+                PendingVisit pending = group.get(i);
+                // the JPA repositories assign ids as they insert, and those rows were rolled back with the group: a
+                // visit keeping its id would be merged as a copy with another id instead of being inserted
+                pending.visit.setId(ids.get(i));
+                try {
+                    this.clinicService.saveVisit(pending.visit);
+                    this.batchSizes.recordValue(1);
+                    pending.succeed();
+                } catch (RuntimeException visitEx) {
+                    this.failedCount.incrementAndGet();
+                    pending.fail(visitEx);
+                }
+            }
+        }
+    }
+
+    private void recordQueueDepth(long depth) {
+        long max = this.maxQueueDepth.get();
+        while (depth > max && !this.maxQueueDepth.compareAndSet(max, depth)) {
+            max = this.maxQueueDepth.get();
+        }
+    }
+
+
+    /**
+     * The future of a queued visit, completed once by the writer with the visit or with the exception that prevented
+     * saving it. It cannot be cancelled: the visit may already be part of a group being written.
+     */
+    private static class PendingVisit implements Future<Visit> {
+
+        private final Visit visit;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile Throwable failure;
+
+        private PendingVisit(Visit visit) {
+            this.visit = visit;
+        }
+
+        private void succeed() {
+            this.done.countDown();
+        }
+
+        private synchronized void fail(Throwable ex) {
+            if (this.done.getCount() > 0) {
+                this.failure = ex;
+                this.done.countDown();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return (this.done.getCount() == 0);
+        }
+
+        @Override
+        public Visit get() throws InterruptedException, ExecutionException {
+            this.done.await();
+            return getVisit();
+        }
+
+        @Override
+        public Visit get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                TimeoutException {
+            if (!this.done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getVisit();
+        }
+
+        private Visit getVisit() throws ExecutionException {
+            if (this.failure != null) {
+                throw new ExecutionException(this.failure);
+            }
+            return this.visit;
+        }
+    }
+
+}
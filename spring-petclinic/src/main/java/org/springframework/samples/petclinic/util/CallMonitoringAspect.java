@@ -15,17 +15,29 @@
  */
 package org.springframework.samples.petclinic.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
-import org.springframework.util.StopWatch;
 
 /**
  * Simple aspect that monitors call count and call invocation time. It uses JMX annotations and therefore can be
  * monitored using any JMX console such as the jConsole
+ * <p/>
+ * Each monitored method gets its own {@link ConcurrentHistogram} of nanosecond latencies, so recording a call takes no
+ * lock and the tail latency (p90, p99, max) of every repository method can be read through {@link
+ * #getMethodStatistics()}.
  *
  * @author Rob Harrop
  * @author Juergen Hoeller
@@ -36,11 +48,10 @@ import org.springframework.util.StopWatch;
 @Aspect
 public class CallMonitoringAspect {
 
-    private boolean enabled = true;
-
-    private int callCount = 0;
+    private volatile boolean enabled = true;
 
-    private long accumulatedCallTime = 0;
+    private final ConcurrentMap<String, ConcurrentHistogram> histograms =
+            new ConcurrentHashMap<String, ConcurrentHistogram>();
 
 
     @ManagedAttribute
@@ -55,39 +66,91 @@ public class CallMonitoringAspect {
 
     @ManagedOperation
     public void reset() {
-        this.callCount = 0;
-        this.accumulatedCallTime = 0;
+        this.histograms.clear();
     }
 
     @ManagedAttribute
     public int getCallCount() {
-        return callCount;
+        long callCount = 0;
+        for (ConcurrentHistogram histogram : this.histograms.values()) {
+            callCount += histogram.getCount();
+        }
+        return (int) Math.min(callCount, Integer.MAX_VALUE);
     }
 
+    /**
+     * @return the average call time over all monitored methods, in milliseconds
+     */
     @ManagedAttribute
     public long getCallTime() {
-        return (this.callCount > 0 ? this.accumulatedCallTime / this.callCount : 0);
+        long callCount = 0;
+        long accumulatedCallTime = 0;
+        for (ConcurrentHistogram histogram : this.histograms.values()) {
+            callCount += histogram.getCount();
+            accumulatedCallTime += histogram.getTotal();
+        }
+        return (callCount > 0 ? TimeUnit.NANOSECONDS.toMillis(accumulatedCallTime / callCount) : 0);
+    }
+
+    /**
+     * @return one line per monitored method, sorted by method, with its call count and its p50, p90, p99 and max call
+     *         times in milliseconds
+     */
+    @ManagedAttribute
+    public String[] getMethodStatistics() {
+        List<String> statistics = new ArrayList<String>(this.histograms.size());
+        for (Map.Entry<String, ConcurrentHistogram> entry : this.histograms.entrySet()) {
+            ConcurrentHistogram histogram = entry.getValue();
+            statistics.add(String.format("%s count=%d p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                    entry.getKey(), histogram.getCount(),
+                    toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(90)),
+                    toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getMax())));
+        }
+        Collections.sort(statistics);
+        return statistics.toArray(new String[statistics.size()]);
+    }
+
+    /**
+     * @param method     a monitored method, as listed by {@link #getMethodStatistics()}
+     * @param percentile the percentile, between 0 and 100
+     * @return the call time of the given method at the given percentile, in milliseconds, or 0 if it was not called
+     */
+    @ManagedOperation
+    public double getCallTimeAtPercentile(String method, double percentile) {
+        ConcurrentHistogram histogram = this.histograms.get(method);
+        return (histogram != null ? toMillis(histogram.getValueAtPercentile(percentile)) : 0);
     }
 
 
     @Around("within(@org.springframework.stereotype.Repository *)")
     public Object invoke(ProceedingJoinPoint joinPoint) throws Throwable {
         if (this.enabled) {
-            StopWatch sw = new StopWatch(joinPoint.toShortString());
-
-            sw.start("invoke");
+            long start = System.nanoTime();
             try {
                 return joinPoint.proceed();
             } finally {
-                sw.stop();
-                synchronized (this) {
-                    this.callCount++;
-                    this.accumulatedCallTime += sw.getTotalTimeMillis();
-                }
+                histogramFor(joinPoint.getSignature()).recordValue(System.nanoTime() - start);
             }
         } else {
             return joinPoint.proceed();
         }
     }
 
+    private ConcurrentHistogram histogramFor(Signature signature) {
+        String method = signature.toShortString();
+        ConcurrentHistogram histogram = this.histograms.get(method);
+        if (histogram == null) {
+            ConcurrentHistogram created = new ConcurrentHistogram();
+            histogram = this.histograms.putIfAbsent(method, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
 }
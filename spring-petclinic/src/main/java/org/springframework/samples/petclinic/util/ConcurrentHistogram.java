@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative <code>long</code> values (typically latencies in nanoseconds), in the spirit of
+ * HdrHistogram: values below 128 are counted exactly, larger values fall into one of 64 linear sub-buckets of their
+ * power-of-two range, which bounds the relative error of any reported value to about 1.6%. Recording a value is a
+ * couple of atomic increments, so many threads can record concurrently without contending on a lock.
+ * <p/>
+ * The running total is kept in padded stripes selected by thread id, which stands in for
+ * <code>java.util.concurrent.atomic.LongAdder</code> on Java 6.
+ *
+ * @see CallMonitoringAspect
+ */
+public class ConcurrentHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this bound are counted in their own slot.
+     */
+    private static final int EXACT_LIMIT = SUB_BUCKET_COUNT << 1;
+
+    /**
+     * Exact slots, then 64 slots for each power of two from 2^7 up to 2^62.
+     */
+    private static final int SLOT_COUNT = EXACT_LIMIT + (62 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private static final int STRIPE_COUNT = 16;
+
+    /**
+     * Stripes are 8 longs (one cache line) apart so that threads updating neighbouring stripes do not false-share.
+     */
+    private static final int STRIPE_PADDING = 8;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SLOT_COUNT);
+
+    private final AtomicLongArray totals = new AtomicLongArray(STRIPE_COUNT * STRIPE_PADDING);
+
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Record a value; negative values are recorded as zero.
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(slotFor(value));
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPE_COUNT - 1));
+        this.totals.addAndGet(stripe * STRIPE_PADDING, value);
+        long currentMax = this.max.get();
+        while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+            currentMax = this.max.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        long count = 0;
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            count += this.counts.get(slot);
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of all recorded values
+     */
+    public long getTotal() {
+        long total = 0;
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            total += this.totals.get(stripe * STRIPE_PADDING);
+        }
+        return total;
+    }
+
+    /**
+     * @return the largest recorded value (exact), or 0 if none
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @return the arithmetic mean of the recorded values, or 0 if none
+     */
+    public double getMean() {
+        long count = getCount();
+        return (count > 0 ? (double) getTotal() / count : 0);
+    }
+
+    /**
+     * Return the value below or at which the given percentage of the recorded values fall, that is the highest value
+     * equivalent to the slot holding that rank. Values recorded while this method runs may or may not be taken into
+     * account.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the given percentile, or 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[SLOT_COUNT];
+        long count = 0;
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            snapshot[slot] = this.counts.get(slot);
+            count += snapshot[slot];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double clamped = Math.min(Math.max(percentile, 0), 100);
+        long rank = Math.max(1, (long) Math.ceil(clamped / 100 * count));
+        long seen = 0;
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            seen += snapshot[slot];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(slot), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clear all recorded values. Values recorded concurrently with a reset may be partially kept.
+     */
+    public void reset() {
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            this.counts.set(slot, 0);
+        }
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            this.totals.set(stripe * STRIPE_PADDING, 0);
+        }
+        this.max.set(0);
+    }
+
+    static int slotFor(long value) {
+        if (value < EXACT_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return EXACT_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestEquivalentValue(int slot) {
+        if (slot < EXACT_LIMIT) {
+            return slot;
+        }
+        int shift = (slot - EXACT_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long subBucket = (slot - EXACT_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
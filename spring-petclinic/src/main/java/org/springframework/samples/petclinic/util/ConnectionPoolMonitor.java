@@ -0,0 +1,287 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * DataSource wrapped around the connection pool that exposes, through JMX, the state of the pool (active, idle and
+ * waiting counts), how long connections take to be obtained, and the connections held for suspiciously long.
+ * <p/>
+ * Pool counts are read from the <code>active</code>, <code>idle</code>, <code>size</code> and <code>waitCount</code>
+ * properties of the target, as exposed by the tomcat-jdbc pool; they are reported as -1 for a DataSource without them
+ * (such as a JNDI one). Wait times are measured around {@link #getConnection()} and recorded in a {@link
+ * ConcurrentHistogram}, like the call times of {@link CallMonitoringAspect}.
+ * <p/>
+ * With a leak threshold, each connection handed out is tracked until it is closed, and {@link #getLeakSuspects()}
+ * lists the ones held longer than the threshold, with the stack that obtained them when borrow stack traces are on.
+ */
+@ManagedResource("petclinic:type=ConnectionPool")
+public class ConnectionPoolMonitor extends DelegatingDataSource {
+
+    private volatile ConcurrentHistogram waitTimes = new ConcurrentHistogram();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final Set<Borrow> borrowed = Collections.newSetFromMap(new ConcurrentHashMap<Borrow, Boolean>());
+
+    private volatile long leakThresholdMillis = 0;
+
+    private volatile boolean borrowStackTraces = false;
+
+
+    public ConnectionPoolMonitor(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    /**
+     * Number of seconds after which a connection that has not been closed is reported as a possible leak; zero or less
+     * disables the tracking of borrowed connections.
+     */
+    @ManagedAttribute
+    public void setLeakThresholdSeconds(long leakThresholdSeconds) {
+        this.leakThresholdMillis = TimeUnit.SECONDS.toMillis(leakThresholdSeconds);
+        if (leakThresholdSeconds <= 0) {
+            this.borrowed.clear();
+        }
+    }
+
+    @ManagedAttribute
+    public long getLeakThresholdSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(this.leakThresholdMillis);
+    }
+
+    /**
+     * Whether the stack of the code obtaining each connection is kept, to be shown with leak suspects; this costs a
+     * stack trace per borrowed connection.
+     */
+    @ManagedAttribute
+    public void setBorrowStackTraces(boolean borrowStackTraces) {
+        this.borrowStackTraces = borrowStackTraces;
+    }
+
+    @ManagedAttribute
+    public boolean isBorrowStackTraces() {
+        return this.borrowStackTraces;
+    }
+
+    /**
+     * @return the number of connections in use, or -1 if the pool does not tell
+     */
+    @ManagedAttribute
+    public int getActive() {
+        return getPoolCount("active");
+    }
+
+    /**
+     * @return the number of open connections not in use, or -1 if the pool does not tell
+     */
+    @ManagedAttribute
+    public int getIdle() {
+        return getPoolCount("idle");
+    }
+
+    /**
+     * @return the number of open connections, or -1 if the pool does not tell
+     */
+    @ManagedAttribute
+    public int getSize() {
+        return getPoolCount("size");
+    }
+
+    /**
+     * @return the number of threads currently waiting for a connection, or -1 if the pool does not tell
+     */
+    @ManagedAttribute
+    public int getWaitCount() {
+        return getPoolCount("waitCount");
+    }
+
+    @ManagedAttribute
+    public long getBorrowCount() {
+        return this.waitTimes.getCount();
+    }
+
+    /**
+     * @return the number of requests for a connection that failed, typically because the pool stayed exhausted for
+     *         longer than its maximum wait
+     */
+    @ManagedAttribute
+    public long getFailedCount() {
+        return this.failedCount.get();
+    }
+
+    /**
+     * @return the time taken to obtain a connection (including failed attempts): mean, p50, p90, p99 and max, in
+     *         milliseconds
+     */
+    @ManagedAttribute
+    public String getWaitTimeStatistics() {
+        ConcurrentHistogram histogram = this.waitTimes;
+        return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                histogram.getCount(), toMillis(histogram.getMean()),
+                toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(90)),
+                toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getMax()));
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the time taken to obtain a connection at the given percentile, in milliseconds
+     */
+    @ManagedOperation
+    public double getWaitTimeAtPercentile(double percentile) {
+        return toMillis(this.waitTimes.getValueAtPercentile(percentile));
+    }
+
+    /**
+     * @return the number of connections currently held for longer than the leak threshold
+     */
+    @ManagedAttribute
+    public int getLeakSuspectCount() {
+        return findLeakSuspects().size();
+    }
+
+    /**
+     * @return one line per connection held for longer than the leak threshold, longest held first, with the thread
+     *         that obtained it and, if borrow stack traces are on, where
+     */
+    @ManagedAttribute
+    public String[] getLeakSuspects() {
+        List<Borrow> suspects = findLeakSuspects();
+        long now = System.currentTimeMillis();
+        List<String> lines = new ArrayList<String>(suspects.size());
+        for (Borrow borrow : suspects) {
+            StringBuilder line = new StringBuilder(String.format("held for %ds by thread '%s'",
+                    TimeUnit.MILLISECONDS.toSeconds(now - borrow.time), borrow.threadName));
+            if (borrow.stackTrace != null) {
+                // skip this class and the proxy frames
+                for (int i = 2; i < borrow.stackTrace.length; i++) {
+                    line.append("\n\tat ").append(borrow.stackTrace[i]);
+                }
+            }
+            lines.add(line.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedOperation
+    public void reset() {
+        this.waitTimes = new ConcurrentHistogram();
+        this.failedCount.set(0);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = super.getConnection();
+        } catch (SQLException ex) {
+            this.failedCount.incrementAndGet();
+            throw ex;
+        } finally {
+            this.waitTimes.recordValue(System.nanoTime() - start);
+        }
+        return track(connection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(super.getConnection(username, password));
+    }
+
+
+    private int getPoolCount(String property) {
+        BeanWrapper pool = PropertyAccessorFactory.forBeanPropertyAccess(getTargetDataSource());
+        if (!pool.isReadableProperty(property)) {
+            return -1;
+        }
+        Object value = pool.getPropertyValue(property);
+        return (value instanceof Number ? ((Number) value).intValue() : -1);
+    }
+
+    private List<Borrow> findLeakSuspects() {
+        long threshold = this.leakThresholdMillis;
+        if (threshold <= 0) {
+            return Collections.emptyList();
+        }
+        long now = System.currentTimeMillis();
+        List<Borrow> suspects = new ArrayList<Borrow>();
+        for (Borrow borrow : this.borrowed) {
+            if (now - borrow.time > threshold) {
+                suspects.add(borrow);
+            }
+        }
+        Collections.sort(suspects);
+        return suspects;
+    }
+
+    private Connection track(Connection connection) {
+        if (this.leakThresholdMillis <= 0) {
+            return connection;
+        }
+        final Borrow borrow = new Borrow(this.borrowStackTraces ? new Throwable().getStackTrace() : null);
+        this.borrowed.add(borrow);
+        // stop tracking the connection once it is closed
+        return OnCloseConnectionProxy.create(connection, new Runnable() {
+            @Override
+            public void run() {
+                borrowed.remove(borrow);
+            }
+        });
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / 1e6;
+    }
+
+
+    private static class Borrow implements Comparable<Borrow> {
+
+        private final long time = System.currentTimeMillis();
+
+        private final String threadName = Thread.currentThread().getName();
+
+        private final StackTraceElement[] stackTrace;
+
+        private Borrow(StackTraceElement[] stackTrace) {
+            this.stackTrace = stackTrace;
+        }
+
+        @Override
+        public int compareTo(Borrow other) {
+            return (this.time < other.time ? -1 : (this.time == other.time ? 0 : 1));
+        }
+    }
+
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * Generates a synthetic PetClinic dataset of any size: owners, their pets, the pets' visits, and vets with their
+ * specialties. Rows are streamed into the database with batched JDBC inserts and a commit per batch, so memory use
+ * does not depend on the dataset size. The content is fully determined by the {@link #setSeed seed} and by the ids
+ * already in the database: new rows get explicit ids following the highest existing id of each table, which allows
+ * running the generator on top of <code>populateDB.sql</code>.
+ * <p/>
+ * Missing pet types and specialties are created with the ids and names of <code>populateDB.sql</code>.
+ * <p/>
+ * Can be used from tests, or from the command line (see {@link #main}). On MySQL, add
+ * <code>rewriteBatchedStatements=true</code> to the JDBC URL so that batches are sent as multi-row inserts.
+ */
+public class DatasetGenerator {
+
+    private static final String[] FIRST_NAMES = {"George", "Betty", "Eduardo", "Harold", "Peter", "Jean", "Jeff",
+            "Maria", "David", "Carlos", "James", "Helen", "Linda", "Sharon", "Rafael", "Henry"};
+
+    private static final String[] LAST_NAMES = {"Franklin", "Davis", "Rodriquez", "McTavish", "Coleman", "Black",
+            "Escobito", "Schroeder", "Estaban", "Carter", "Leary", "Douglas", "Ortega", "Stevens", "Jenkins", "Lopez"};
+
+    private static final String[] CITIES = {"Madison", "Sun Prairie", "McFarland", "Windsor", "Monona", "Waunakee"};
+
+    private static final String[] PET_NAMES = {"Leo", "Basil", "Rosy", "Jewel", "Iggy", "George", "Samantha", "Max",
+            "Lucky", "Mulligan", "Freddy", "Sly"};
+
+    private static final String[] VISIT_DESCRIPTIONS = {"rabies shot", "neutered", "spayed", "checkup", "dental care"};
+
+    private static final String[] PET_TYPES = {"cat", "dog", "lizard", "snake", "bird", "hamster"};
+
+    private static final String[] SPECIALTIES = {"radiology", "surgery", "dentistry"};
+
+    /**
+     * 2014-01-01; birth and visit dates fall within the ten years before.
+     */
+    private static final long LAST_DAY_MILLIS = 1388534400000L;
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final DataSource dataSource;
+
+    private long seed = 1;
+
+    private int owners = 1000;
+
+    private int maxPetsPerOwner = 2;
+
+    private int maxVisitsPerPet = 4;
+
+    private int vets = 0;
+
+    private int lastNameCount = 1000;
+
+    private int batchSize = 5000;
+
+    private int firstOwnerId;
+
+    private int ownerCount;
+
+    private int firstPetId;
+
+    private int petCount;
+
+    private int visitCount;
+
+    private int firstVetId;
+
+    private int vetCount;
+
+    private int vetSpecialtyCount;
+
+
+    public DatasetGenerator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Number of owners to generate (default 1000).
+     */
+    public void setOwners(int owners) {
+        this.owners = owners;
+    }
+
+    /**
+     * Each owner gets between 1 and this number of pets (default 2).
+     */
+    public void setMaxPetsPerOwner(int maxPetsPerOwner) {
+        this.maxPetsPerOwner = maxPetsPerOwner;
+    }
+
+    /**
+     * Each pet gets between 0 and this number of visits (default 4).
+     */
+    public void setMaxVisitsPerPet(int maxVisitsPerPet) {
+        this.maxVisitsPerPet = maxVisitsPerPet;
+    }
+
+    /**
+     * Number of vets to generate, each with 0 to 2 specialties (default 0).
+     */
+    public void setVets(int vets) {
+        this.vets = vets;
+    }
+
+    /**
+     * Number of distinct last names given to owners and vets (default 1000), see {@link #getLastName(int)}.
+     */
+    public void setLastNameCount(int lastNameCount) {
+        this.lastNameCount = lastNameCount;
+    }
+
+    /**
+     * Number of rows per JDBC batch and per transaction (default 5000).
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Return the last name with the given index, between 0 and {@link #setLastNameCount lastNameCount} (excluded).
+     * All generated last names have the same length for a given count, so that none of them is a prefix of another
+     * and a search by last name only matches owners carrying that exact name.
+     */
+    public String getLastName(int index) {
+        int variants = (this.lastNameCount + LAST_NAMES.length - 1) / LAST_NAMES.length;
+        int digits = String.valueOf(Math.max(variants - 1, 0)).length();
+        return LAST_NAMES[index % LAST_NAMES.length] + String.format("%0" + digits + "d", index / LAST_NAMES.length);
+    }
+
+    public int getFirstOwnerId() {
+        return this.firstOwnerId;
+    }
+
+    public int getOwnerCount() {
+        return this.ownerCount;
+    }
+
+    public int getFirstPetId() {
+        return this.firstPetId;
+    }
+
+    public int getPetCount() {
+        return this.petCount;
+    }
+
+    public int getVisitCount() {
+        return this.visitCount;
+    }
+
+    public int getFirstVetId() {
+        return this.firstVetId;
+    }
+
+    public int getVetCount() {
+        return this.vetCount;
+    }
+
+    public int getVetSpecialtyCount() {
+        return this.vetSpecialtyCount;
+    }
+
+    /**
+     * Generate the dataset. Generated ids and row counts are then available through the getters.
+     *
+     * @throws SQLException if an insert fails; batches committed before the failure are kept
+     */
+    public void generate() throws SQLException {
+        this.ownerCount = 0;
+        this.petCount = 0;
+        this.visitCount = 0;
+        this.vetCount = 0;
+        this.vetSpecialtyCount = 0;
+        Random random = new Random(this.seed);
+        // a connection of its own (not bound to a Spring transaction), committed batch by batch
+        Connection connection = this.dataSource.getConnection();
+        // restored before the connection goes back to its pool, which would otherwise hand it out in manual commit mode
+        boolean autoCommit = connection.getAutoCommit();
+        boolean generated = false;
+        try {
+            connection.setAutoCommit(false);
+            List<Integer> typeIds = ensureReferenceData(connection, "types", PET_TYPES);
+            List<Integer> specialtyIds = ensureReferenceData(connection, "specialties", SPECIALTIES);
+            generateOwners(connection, random, typeIds);
+            generateVets(connection, random, specialtyIds);
+            generated = true;
+        } finally {
+            try {
+                if (!generated) {
+                    // switching auto-commit back on would commit the rows of the failed batch
+                    connection.rollback();
+                }
+                connection.setAutoCommit(autoCommit);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    private void generateOwners(Connection connection, Random random, List<Integer> typeIds) throws SQLException {
+        this.firstOwnerId = nextId(connection, "owners");
+        this.firstPetId = nextId(connection, "pets");
+        int visitId = nextId(connection, "visits");
+        PreparedStatement insertOwner = connection.prepareStatement(
+                "INSERT INTO owners (id, first_name, last_name, address, city, telephone) VALUES (?, ?, ?, ?, ?, ?)");
+        PreparedStatement insertPet = connection.prepareStatement(
+                "INSERT INTO pets (id, name, birth_date, type_id, owner_id) VALUES (?, ?, ?, ?, ?)");
+        PreparedStatement insertVisit = connection.prepareStatement(
+                "INSERT INTO visits (id, pet_id, visit_date, description) VALUES (?, ?, ?, ?)");
+        try {
+            int petId = this.firstPetId;
+            int pendingRows = 0;
+            for (int ownerId = this.firstOwnerId; ownerId < this.firstOwnerId + this.owners; ownerId++) {
+                insertOwner.setInt(1, ownerId);
+                insertOwner.setString(2, pick(random, FIRST_NAMES));
+                insertOwner.setString(3, getLastName(random.nextInt(this.lastNameCount)));
+                insertOwner.setString(4, (1 + random.nextInt(9999)) + " Main St.");
+                insertOwner.setString(5, pick(random, CITIES));
+                insertOwner.setString(6, String.format("608555%04d", random.nextInt(10000)));
+                insertOwner.addBatch();
+                pendingRows++;
+
+                int pets = 1 + random.nextInt(Math.max(this.maxPetsPerOwner, 1));
+                for (int p = 0; p < pets; p++, petId++) {
+                    insertPet.setInt(1, petId);
+                    insertPet.setString(2, pick(random, PET_NAMES));
+                    insertPet.setDate(3, randomDate(random));
+                    insertPet.setInt(4, typeIds.get(random.nextInt(typeIds.size())));
+                    insertPet.setInt(5, ownerId);
+                    insertPet.addBatch();
+                    pendingRows++;
+
+                    int visits = random.nextInt(this.maxVisitsPerPet + 1);
+                    for (int v = 0; v < visits; v++, visitId++) {
+                        insertVisit.setInt(1, visitId);
+                        insertVisit.setInt(2, petId);
+                        insertVisit.setDate(3, randomDate(random));
+                        insertVisit.setString(4, pick(random, VISIT_DESCRIPTIONS));
+                        insertVisit.addBatch();
+                        pendingRows++;
+                        this.visitCount++;
+                    }
+                    this.petCount++;
+                }
+                this.ownerCount++;
+
+                if (pendingRows >= this.batchSize) {
+                    // parents first, to satisfy the foreign keys
+                    executeBatches(connection, insertOwner, insertPet, insertVisit);
+                    pendingRows = 0;
+                }
+            }
+            executeBatches(connection, insertOwner, insertPet, insertVisit);
+        } finally {
+            insertOwner.close();
+            insertPet.close();
+            insertVisit.close();
+        }
+    }
+
+    private void generateVets(Connection connection, Random random, List<Integer> specialtyIds) throws SQLException {
+        this.firstVetId = nextId(connection, "vets");
+        PreparedStatement insertVet = connection.prepareStatement(
+                "INSERT INTO vets (id, first_name, last_name) VALUES (?, ?, ?)");
+        PreparedStatement insertVetSpecialty = connection.prepareStatement(
+                "INSERT INTO vet_specialties (vet_id, specialty_id) VALUES (?, ?)");
+        try {
+            int pendingRows = 0;
+            for (int vetId = this.firstVetId; vetId < this.firstVetId + this.vets; vetId++) {
+                insertVet.setInt(1, vetId);
+                insertVet.setString(2, pick(random, FIRST_NAMES));
+                insertVet.setString(3, getLastName(random.nextInt(this.lastNameCount)));
+                insertVet.addBatch();
+                pendingRows++;
+
+                // distinct specialties: a random starting point, then the following ones
+                int specialties = random.nextInt(Math.min(2, specialtyIds.size()) + 1);
+                int first = random.nextInt(specialtyIds.size());
+                for (int s = 0; s < specialties; s++) {
+                    insertVetSpecialty.setInt(1, vetId);
+                    insertVetSpecialty.setInt(2, specialtyIds.get((first + s) % specialtyIds.size()));
+                    insertVetSpecialty.addBatch();
+                    pendingRows++;
+                    this.vetSpecialtyCount++;
+                }
+                this.vetCount++;
+
+                if (pendingRows >= this.batchSize) {
+                    executeBatches(connection, insertVet, insertVetSpecialty);
+                    pendingRows = 0;
+                }
+            }
+            executeBatches(connection, insertVet, insertVetSpecialty);
+        } finally {
+            insertVet.close();
+            insertVetSpecialty.close();
+        }
+    }
+
+    private static void executeBatches(Connection connection, PreparedStatement... statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            statement.executeBatch();
+        }
+        connection.commit();
+    }
+
+    /**
+     * Return the ids of the given reference table, after inserting the given names if the table is empty.
+     */
+    private static List<Integer> ensureReferenceData(Connection connection, String table, String[] names)
+            throws SQLException {
+        List<Integer> ids = new ArrayList<Integer>();
+        Statement select = connection.createStatement();
+        try {
+            ResultSet rs = select.executeQuery("SELECT id FROM " + table + " ORDER BY id");
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        } finally {
+            select.close();
+        }
+        if (ids.isEmpty()) {
+            PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table + " (id, name) VALUES (?, ?)");
+            try {
+                for (int i = 0; i < names.length; i++) {
+                    insert.setInt(1, i + 1);
+                    insert.setString(2, names[i]);
+                    insert.addBatch();
+                    ids.add(i + 1);
+                }
+                executeBatches(connection, insert);
+            } finally {
+                insert.close();
+            }
+        }
+        return ids;
+    }
+
+    private static int nextId(Connection connection, String table) throws SQLException {
+        Statement select = connection.createStatement();
+        try {
+            ResultSet rs = select.executeQuery("SELECT MAX(id) FROM " + table);
+            rs.next();
+            return rs.getInt(1) + 1;
+        } finally {
+            select.close();
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static Date randomDate(Random random) {
+        return new Date(LAST_DAY_MILLIS - random.nextInt(3650) * DAY_MILLIS);
+    }
+
+
+    /**
+     * Command line entry point. Arguments have the form <code>--name=value</code>:
+     * <ul>
+     * <li><code>url</code>, <code>username</code>, <code>password</code>, <code>driver</code>: the target database
+     * (defaults to the HSQLDB driver, user 'sa' and an empty password)</li>
+     * <li><code>schema</code>: optional script location run first, e.g. <code>classpath:db/mysql/initDB.sql</code></li>
+     * <li><code>owners</code>, <code>maxPetsPerOwner</code>, <code>maxVisitsPerPet</code>, <code>vets</code>,
+     * <code>lastNameCount</code>, <code>seed</code>, <code>batchSize</code>: see the corresponding setters</li>
+     * </ul>
+     * For instance:
+     * <pre>
+     * java -cp ... org.springframework.samples.petclinic.util.DatasetGenerator \
+     *     --url=jdbc:hsqldb:file:/tmp/petclinic --schema=classpath:db/hsqldb/initDB.sql --owners=1000000
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        String username = "sa";
+        String password = "";
+        String driver = "org.hsqldb.jdbcDriver";
+        String schema = null;
+        List<String[]> settings = new ArrayList<String[]>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            if (name.equals("url")) {
+                url = value;
+            } else if (name.equals("username")) {
+                username = value;
+            } else if (name.equals("password")) {
+                password = value;
+            } else if (name.equals("driver")) {
+                driver = value;
+            } else if (name.equals("schema")) {
+                schema = value;
+            } else {
+                settings.add(new String[]{name, value});
+            }
+        }
+        if (url == null) {
+            throw new IllegalArgumentException("Missing --url=<jdbc url>");
+        }
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, username, password);
+        dataSource.setDriverClassName(driver);
+        if (schema != null) {
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+            populator.addScript(new DefaultResourceLoader().getResource(schema));
+            DatabasePopulatorUtils.execute(populator, dataSource);
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(dataSource);
+        for (String[] setting : settings) {
+            generator.apply(setting[0], setting[1]);
+        }
+        long start = System.currentTimeMillis();
+        generator.generate();
+        System.out.println(String.format("Generated %d owners, %d pets, %d visits, %d vets and %d vet specialties in %d ms",
+                generator.getOwnerCount(), generator.getPetCount(), generator.getVisitCount(), generator.getVetCount(),
+                generator.getVetSpecialtyCount(), System.currentTimeMillis() - start));
+    }
+
+    private void apply(String name, String value) {
+        if (name.equals("seed")) {
+            setSeed(Long.parseLong(value));
+        } else if (name.equals("owners")) {
+            setOwners(Integer.parseInt(value));
+        } else if (name.equals("maxPetsPerOwner")) {
+            setMaxPetsPerOwner(Integer.parseInt(value));
+        } else if (name.equals("maxVisitsPerPet")) {
+            setMaxVisitsPerPet(Integer.parseInt(value));
+        } else if (name.equals("vets")) {
+            setVets(Integer.parseInt(value));
+        } else if (name.equals("lastNameCount")) {
+            setLastNameCount(Integer.parseInt(value));
+        } else if (name.equals("batchSize")) {
+            setBatchSize(Integer.parseInt(value));
+        } else {
+            throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 package org.springframework.samples.petclinic.util;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.springframework.orm.ObjectRetrievalFailureException;
 import org.springframework.samples.petclinic.model.BaseEntity;
@@ -52,4 +53,24 @@ public abstract class EntityUtils {
         throw new ObjectRetrievalFailureException(entityClass, entityId);
     }
 
+    /**
+     * Look up the entity of the given class with the given id in the given id-indexed map, without scanning it.
+     *
+     * @param entitiesById the entities to search, keyed by id
+     * @param entityClass  the entity class to look up
+     * @param entityId     the entity id to look up
+     * @return the found entity
+     * @throws ObjectRetrievalFailureException
+     *          if the entity was not found
+     * @see ReferenceDataCache
+     */
+    public static <T extends BaseEntity> T getById(Map<Integer, T> entitiesById, Class<T> entityClass, int entityId)
+            throws ObjectRetrievalFailureException {
+        T entity = entitiesById.get(entityId);
+        if (entity == null || !entityClass.isInstance(entity)) {
+            throw new ObjectRetrievalFailureException(entityClass, entityId);
+        }
+        return entity;
+    }
+
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+/**
+ * Connection proxy that runs a callback the first time the connection is closed, and passes every call on to the
+ * target connection. Used by the DataSources of this package that keep track of the connections they hand out.
+ */
+final class OnCloseConnectionProxy implements InvocationHandler {
+
+    private final Connection target;
+
+    private final Runnable onClose;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private OnCloseConnectionProxy(Connection target, Runnable onClose) {
+        this.target = target;
+        this.onClose = onClose;
+    }
+
+    /**
+     * @return a {@link ConnectionProxy} for the target connection that runs <code>onClose</code> before the target is
+     *         closed, once however many times it is closed
+     */
+    static Connection create(Connection target, Runnable onClose) {
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[] {ConnectionProxy.class}, new OnCloseConnectionProxy(target, onClose));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.equals("getTargetConnection")) {
+            return this.target;
+        } else if (name.equals("equals")) {
+            return (proxy == args[0]);
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (name.equals("close") && this.closed.compareAndSet(false, true)) {
+            this.onClose.run();
+        }
+        try {
+            return method.invoke(this.target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * DataSource that hands out connections to read replicas for read-only transactions, and to the primary database for
+ * everything else (read-write transactions, and statements run outside of a transaction).
+ * <p/>
+ * The read-only flag of a transaction is only known once the transaction has begun, so this DataSource must be used
+ * behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which defers fetching the
+ * connection until the first statement is run.
+ * <p/>
+ * A replica is chosen in turn ({@link Selection#ROUND_ROBIN}), or as the one with the fewest connections currently
+ * handed out by this DataSource ({@link Selection#LEAST_LOADED}). A replica that fails to provide a connection is
+ * skipped for that transaction, which then reads from the primary.
+ * <p/>
+ * Since replicas may lag behind the primary, a user who has just saved something could read the previous state back.
+ * With a pin duration, each committed read-write transaction pins the HTTP session that ran it (or, outside of a web
+ * request, the current thread) to the primary for that duration. Reads whose results outlive the session, such as
+ * cache refills, are run with {@link #readFromPrimary} instead.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractDataSource {
+
+    /**
+     * How a replica is chosen for a read-only transaction.
+     */
+    public enum Selection {
+        ROUND_ROBIN, LEAST_LOADED
+    }
+
+
+    private static final String PINNED_UNTIL_ATTRIBUTE = ReadReplicaRoutingDataSource.class.getName() + ".PINNED_UNTIL";
+
+    /**
+     * Bound to the current thread while {@link #readFromPrimary} runs.
+     */
+    private static final Object primaryReadsKey = new Object();
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * Pin of the current thread, used when no web request is bound to it.
+     */
+    private final ThreadLocal<Long> threadPinnedUntil = new ThreadLocal<Long>();
+
+    /**
+     * Bound to a read-write transaction once it has registered the pin to apply after its commit.
+     */
+    private final Object pinRegistrationKey = new Object();
+
+    private Selection selection = Selection.ROUND_ROBIN;
+
+    private long pinToPrimaryMillis = 0;
+
+
+    public ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = new ArrayList<Replica>(replicas.size());
+        for (DataSource replica : replicas) {
+            this.replicas.add(new Replica(replica));
+        }
+    }
+
+    public void setSelection(Selection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * Number of milliseconds a session keeps reading from the primary after one of its read-write transactions has
+     * committed; zero or less (the default) sends all read-only transactions to the replicas.
+     */
+    public void setPinToPrimaryMillis(long pinToPrimaryMillis) {
+        this.pinToPrimaryMillis = pinToPrimaryMillis;
+    }
+
+    /**
+     * Runs the given action with the transaction template, sending its statements to the primary even if the
+     * transaction is read-only, and without pinning the session afterwards. Does nothing special unless the transaction
+     * template's DataSource is a ReadReplicaRoutingDataSource.
+     */
+    public static <T> T readFromPrimary(TransactionTemplate transactionTemplate, TransactionCallback<T> action) {
+        if (TransactionSynchronizationManager.hasResource(primaryReadsKey)) {
+            return transactionTemplate.execute(action);
+        }
+        TransactionSynchronizationManager.bindResource(primaryReadsKey, Boolean.TRUE);
+        try {
+            return transactionTemplate.execute(action);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(primaryReadsKey);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return this.primary.getConnection();
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            pinAfterCommit();
+            return this.primary.getConnection();
+        }
+        if (this.replicas.isEmpty() || isPinnedToPrimary() ||
+                TransactionSynchronizationManager.hasResource(primaryReadsKey)) {
+            return this.primary.getConnection();
+        }
+        Replica replica = chooseReplica();
+        try {
+            return replica.getConnection();
+        } catch (SQLException ex) {
+            logger.warn("Could not get a connection from a read replica, reading from the primary instead", ex);
+            return this.primary.getConnection();
+        }
+    }
+
+    /**
+     * Replicas are accessed with the credentials of their own pools, so connections for explicit credentials always
+     * come from the primary, whether or not the current transaction is read-only.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (TransactionSynchronizationManager.isActualTransactionActive() &&
+                !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            pinAfterCommit();
+        }
+        return this.primary.getConnection(username, password);
+    }
+
+
+    private Replica chooseReplica() {
+        if (this.selection == Selection.LEAST_LOADED) {
+            Replica chosen = null;
+            // ties go to the replica following the last one chosen, so that idle replicas still share the load
+            int start = this.nextReplica.getAndIncrement();
+            for (int i = 0; i < this.replicas.size(); i++) {
+                Replica replica = this.replicas.get(Math.abs((start + i) % this.replicas.size()));
+                if (chosen == null || replica.inUse.get() < chosen.inUse.get()) {
+                    chosen = replica;
+                }
+            }
+            return chosen;
+        }
+        return this.replicas.get(Math.abs(this.nextReplica.getAndIncrement() % this.replicas.size()));
+    }
+
+    private boolean isPinnedToPrimary() {
+        if (this.pinToPrimaryMillis <= 0) {
+            return false;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Long pinnedUntil = (attributes != null ?
+                (Long) attributes.getAttribute(PINNED_UNTIL_ATTRIBUTE, RequestAttributes.SCOPE_SESSION) :
+                this.threadPinnedUntil.get());
+        return (pinnedUntil != null && pinnedUntil > System.currentTimeMillis());
+    }
+
+    /**
+     * Once the current read-write transaction has committed, pin the session (or thread) that ran it to the primary.
+     */
+    private void pinAfterCommit() {
+        if (this.pinToPrimaryMillis <= 0 || !TransactionSynchronizationManager.isSynchronizationActive() ||
+                TransactionSynchronizationManager.hasResource(this.pinRegistrationKey)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this.pinRegistrationKey, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                Long pinnedUntil = System.currentTimeMillis() + pinToPrimaryMillis;
+                RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+                if (attributes != null) {
+                    attributes.setAttribute(PINNED_UNTIL_ATTRIBUTE, pinnedUntil, RequestAttributes.SCOPE_SESSION);
+                } else {
+                    threadPinnedUntil.set(pinnedUntil);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(pinRegistrationKey);
+            }
+        });
+    }
+
+
+    /**
+     * A replica and the number of its connections currently handed out.
+     */
+    private static class Replica {
+
+        private final DataSource dataSource;
+
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        private Connection getConnection() throws SQLException {
+            Connection connection = this.dataSource.getConnection();
+            this.inUse.incrementAndGet();
+            return OnCloseConnectionProxy.create(connection, new Runnable() {
+                @Override
+                public void run() {
+                    inUse.decrementAndGet();
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.ParameterizedBeanPropertyRowMapper;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.orm.ObjectRetrievalFailureException;
+import org.springframework.samples.petclinic.model.NamedEntity;
+import org.springframework.samples.petclinic.model.PetType;
+import org.springframework.samples.petclinic.model.Specialty;
+
+/**
+ * In-memory cache of the reference data that hardly ever changes: {@link PetType PetTypes} and {@link Specialty
+ * Specialties}, indexed both by id and by name. Both tables are read together on first use and the result is kept as
+ * an immutable snapshot, so lookups are lock-free. The snapshot is reloaded once its time-to-live has elapsed, or on
+ * the next lookup after {@link #invalidate()} has been called (for instance from a JMX console). A lookup by an id the
+ * snapshot does not know, such as a pet type added to the database since, also reloads it once before failing.
+ * <p/>
+ * The cached instances are shared between callers and must not be modified.
+ *
+ * @see EntityUtils#getById(Map, Class, int)
+ */
+@ManagedResource("petclinic:type=ReferenceDataCache")
+public class ReferenceDataCache {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private long timeToLiveMillis = 0;
+
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+
+    public ReferenceDataCache(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Number of seconds after which the reference data is read again from the database. Zero or less (the default)
+     * keeps it until {@link #invalidate()} is called.
+     */
+    @ManagedAttribute
+    public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+        this.timeToLiveMillis = timeToLiveSeconds * 1000;
+    }
+
+    @ManagedAttribute
+    public long getTimeToLiveSeconds() {
+        return this.timeToLiveMillis / 1000;
+    }
+
+    /**
+     * Number of times the reference data has been read from the database.
+     */
+    @ManagedAttribute
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /**
+     * Discard the cached reference data; it is read again on the next lookup.
+     */
+    @ManagedOperation
+    public void invalidate() {
+        this.snapshot = null;
+    }
+
+    /**
+     * @return all pet types, ordered by name
+     */
+    public Collection<PetType> getPetTypes() {
+        return getSnapshot().petTypesById.values();
+    }
+
+    /**
+     * @throws ObjectRetrievalFailureException if there is no pet type with the given id
+     */
+    public PetType getPetType(int id) throws ObjectRetrievalFailureException {
+        Snapshot current = getSnapshot();
+        if (!current.petTypesById.containsKey(id)) {
+            current = reload(current);
+        }
+        return EntityUtils.getById(current.petTypesById, PetType.class, id);
+    }
+
+    /**
+     * @return the pet type with the given name, or <code>null</code> if none
+     */
+    public PetType getPetTypeByName(String name) {
+        return getSnapshot().petTypesByName.get(name);
+    }
+
+    /**
+     * @return all specialties, ordered by name
+     */
+    public Collection<Specialty> getSpecialties() {
+        return getSnapshot().specialtiesById.values();
+    }
+
+    /**
+     * @throws ObjectRetrievalFailureException if there is no specialty with the given id
+     */
+    public Specialty getSpecialty(int id) throws ObjectRetrievalFailureException {
+        Snapshot current = getSnapshot();
+        if (!current.specialtiesById.containsKey(id)) {
+            current = reload(current);
+        }
+        return EntityUtils.getById(current.specialtiesById, Specialty.class, id);
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = this.snapshot;
+        if (current == null || current.isExpired(this.timeToLiveMillis)) {
+            synchronized (this) {
+                current = this.snapshot;
+                if (current == null || current.isExpired(this.timeToLiveMillis)) {
+                    current = load();
+                    this.snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replace the given outdated snapshot, unless another thread already did.
+     */
+    private synchronized Snapshot reload(Snapshot outdated) {
+        Snapshot current = this.snapshot;
+        if (current == null || current == outdated) {
+            current = load();
+            this.snapshot = current;
+        }
+        return current;
+    }
+
+    private Snapshot load() {
+        List<PetType> petTypes = this.jdbcTemplate.query(
+                "SELECT id, name FROM types ORDER BY name",
+                ParameterizedBeanPropertyRowMapper.newInstance(PetType.class));
+        List<Specialty> specialties = this.jdbcTemplate.query(
+                "SELECT id, name FROM specialties ORDER BY name",
+                ParameterizedBeanPropertyRowMapper.newInstance(Specialty.class));
+        this.loadCount.incrementAndGet();
+        return new Snapshot(petTypes, specialties);
+    }
+
+
+    /**
+     * Immutable view of the reference data as read at a given time.
+     */
+    private static class Snapshot {
+
+        private final long loadedAt = System.currentTimeMillis();
+
+        private final Map<Integer, PetType> petTypesById;
+
+        private final Map<String, PetType> petTypesByName;
+
+        private final Map<Integer, Specialty> specialtiesById;
+
+        Snapshot(List<PetType> petTypes, List<Specialty> specialties) {
+            this.petTypesById = indexById(petTypes);
+            this.petTypesByName = indexByName(petTypes);
+            this.specialtiesById = indexById(specialties);
+        }
+
+        boolean isExpired(long timeToLiveMillis) {
+            return timeToLiveMillis > 0 && System.currentTimeMillis() - this.loadedAt >= timeToLiveMillis;
+        }
+
+        private static <T extends NamedEntity> Map<Integer, T> indexById(List<T> entities) {
+            Map<Integer, T> index = new LinkedHashMap<Integer, T>(entities.size() * 2);
+            for (T entity : entities) {
+                index.put(entity.getId(), entity);
+            }
+            return Collections.unmodifiableMap(index);
+        }
+
+        private static <T extends NamedEntity> Map<String, T> indexByName(List<T> entities) {
+            Map<String, T> index = new HashMap<String, T>(entities.size() * 2);
+            for (T entity : entities) {
+                index.put(entity.getName(), entity);
+            }
+            return Collections.unmodifiableMap(index);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Creates one connection pool per read replica URL, for {@link ReadReplicaRoutingDataSource}. Each pool is obtained
+ * from a factory of prototype pools (typically a child of the primary pool definition, so that replicas share its
+ * settings) and then pointed at its URL through its <code>url</code> property. As the container does not destroy
+ * prototypes, the pools are closed with this factory.
+ */
+public class ReplicaDataSourcesFactoryBean implements FactoryBean<List<DataSource>>, InitializingBean, DisposableBean {
+
+    private String[] urls = new String[0];
+
+    private ObjectFactory<DataSource> poolFactory;
+
+    private List<DataSource> dataSources;
+
+
+    /**
+     * JDBC URLs of the replicas; none sends all reads to the primary.
+     */
+    public void setUrls(String[] urls) {
+        this.urls = urls;
+    }
+
+    public void setPoolFactory(ObjectFactory<DataSource> poolFactory) {
+        this.poolFactory = poolFactory;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        List<DataSource> dataSources = new ArrayList<DataSource>(this.urls.length);
+        for (String url : this.urls) {
+            DataSource dataSource = this.poolFactory.getObject();
+            PropertyAccessorFactory.forBeanPropertyAccess(dataSource).setPropertyValue("url", url.trim());
+            dataSources.add(dataSource);
+        }
+        this.dataSources = Collections.unmodifiableList(dataSources);
+    }
+
+    @Override
+    public List<DataSource> getObject() {
+        return this.dataSources;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return List.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+
+    @Override
+    public void destroy() {
+        for (DataSource dataSource : this.dataSources) {
+            Method close = ReflectionUtils.findMethod(dataSource.getClass(), "close");
+            if (close != null) {
+                ReflectionUtils.invokeMethod(close, dataSource);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Exposes the hit, miss and put counts of the Hibernate second-level and query caches through JMX, overall and per
+ * region, so that region sizes can be tuned; the maximum number of entries of a region can also be changed at runtime.
+ * <p/>
+ * The regions live in the singleton Ehcache <code>CacheManager</code> configured by <code>cache/ehcache.xml</code>
+ * (see <code>SingletonEhCacheRegionFactory</code> in business-config.xml). Sizes given through {@link
+ * #setMaxEntriesLocalHeap} override the ones of that file when the bean is initialized.
+ */
+@ManagedResource("petclinic:type=SecondLevelCache")
+public class SecondLevelCacheMonitor implements InitializingBean {
+
+    private final SessionFactory sessionFactory;
+
+    private Map<String, Long> maxEntriesLocalHeap = Collections.emptyMap();
+
+
+    public SecondLevelCacheMonitor(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory();
+    }
+
+    /**
+     * Maximum number of entries of each region, keyed by region name (0 means unlimited).
+     */
+    public void setMaxEntriesLocalHeap(Map<String, Long> maxEntriesLocalHeap) {
+        this.maxEntriesLocalHeap = maxEntriesLocalHeap;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (Map.Entry<String, Long> entry : this.maxEntriesLocalHeap.entrySet()) {
+            setRegionMaxEntries(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isStatisticsEnabled() {
+        return getStatistics().isStatisticsEnabled();
+    }
+
+    @ManagedAttribute
+    public void setStatisticsEnabled(boolean enabled) {
+        getStatistics().setStatisticsEnabled(enabled);
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return getStatistics().getSecondLevelCacheHitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return getStatistics().getSecondLevelCacheMissCount();
+    }
+
+    @ManagedAttribute
+    public long getPutCount() {
+        return getStatistics().getSecondLevelCachePutCount();
+    }
+
+    /**
+     * @return the ratio of entity and collection lookups served by the second-level cache, between 0 and 1
+     */
+    @ManagedAttribute
+    public double getHitRatio() {
+        return ratio(getHitCount(), getMissCount());
+    }
+
+    @ManagedAttribute
+    public long getQueryCacheHitCount() {
+        return getStatistics().getQueryCacheHitCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryCacheMissCount() {
+        return getStatistics().getQueryCacheMissCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryCachePutCount() {
+        return getStatistics().getQueryCachePutCount();
+    }
+
+    /**
+     * @return one line per region, sorted by region name, with its hit and miss counts, hit ratio, number of entries
+     *         and maximum number of entries
+     */
+    @ManagedAttribute
+    public String[] getRegionStatistics() {
+        String[] regionNames = getStatistics().getSecondLevelCacheRegionNames();
+        Arrays.sort(regionNames);
+        List<String> statistics = new ArrayList<String>(regionNames.length);
+        for (String regionName : regionNames) {
+            SecondLevelCacheStatistics region = getStatistics().getSecondLevelCacheStatistics(regionName);
+            if (region != null) {
+                statistics.add(String.format("%s hits=%d misses=%d hitRatio=%.2f puts=%d entries=%d maxEntries=%d",
+                        regionName, region.getHitCount(), region.getMissCount(),
+                        ratio(region.getHitCount(), region.getMissCount()), region.getPutCount(),
+                        region.getElementCountInMemory(), getRegionMaxEntries(regionName)));
+            }
+        }
+        return statistics.toArray(new String[statistics.size()]);
+    }
+
+    /**
+     * @param regionName a region, as listed by {@link #getRegionStatistics()}
+     * @return the maximum number of entries of the region (0 means unlimited), or -1 if there is no such region
+     */
+    @ManagedOperation
+    public long getRegionMaxEntries(String regionName) {
+        Ehcache cache = getCache(regionName);
+        return (cache != null ? cache.getCacheConfiguration().getMaxEntriesLocalHeap() : -1);
+    }
+
+    /**
+     * Change the maximum number of entries of a region; the least recently used entries are evicted if it shrinks.
+     * Regions that do not exist (for instance when the second-level cache is disabled) are ignored.
+     */
+    @ManagedOperation
+    public void setRegionMaxEntries(String regionName, long maxEntries) {
+        Ehcache cache = getCache(regionName);
+        if (cache != null) {
+            cache.getCacheConfiguration().setMaxEntriesLocalHeap(maxEntries);
+        }
+    }
+
+    @ManagedOperation
+    public void clearStatistics() {
+        getStatistics().clear();
+    }
+
+    /**
+     * Empty all entity, collection and query regions.
+     */
+    @ManagedOperation
+    public void evictAll() {
+        this.sessionFactory.getCache().evictEntityRegions();
+        this.sessionFactory.getCache().evictCollectionRegions();
+        this.sessionFactory.getCache().evictQueryRegions();
+        this.sessionFactory.getCache().evictDefaultQueryRegion();
+    }
+
+
+    private Statistics getStatistics() {
+        return this.sessionFactory.getStatistics();
+    }
+
+    private static Ehcache getCache(String regionName) {
+        CacheManager cacheManager = CacheManager.getCacheManager(CacheManager.DEFAULT_NAME);
+        return (cacheManager != null ? cacheManager.getEhcache(regionName) : null);
+    }
+
+    private static double ratio(long hits, long misses) {
+        long lookups = hits + misses;
+        return (lookups > 0 ? (double) hits / lookups : 0);
+    }
+
+}
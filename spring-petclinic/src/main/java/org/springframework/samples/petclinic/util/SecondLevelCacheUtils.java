@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Utility methods for keeping the Hibernate second-level cache consistent with changes Hibernate cannot see by itself.
+ * <p/>
+ * Hibernate only refreshes a cached collection when the collection itself is modified through its owning entity. Adding
+ * a {@link org.springframework.samples.petclinic.model.Pet} or a {@link org.springframework.samples.petclinic.model.Visit}
+ * by persisting the child alone (the 'mappedBy' side) leaves the cached <code>Owner.pets</code> or <code>Pet.visits</code>
+ * collection stale, so the repositories evict it explicitly.
+ */
+public abstract class SecondLevelCacheUtils {
+
+    /**
+     * Evict the cached collection <code>role</code> of the given owners, now and again once the current transaction
+     * has completed: a concurrent reader may cache the old collection in between, and a rolled back transaction may
+     * have cached rows that no longer exist.
+     *
+     * @param em       the entity manager of the current transaction
+     * @param role     the collection role, such as <code>org.springframework.samples.petclinic.model.Owner.pets</code>
+     * @param ownerIds the ids of the entities owning the collection
+     */
+    public static void evictCollection(EntityManager em, final String role,
+                                       final Collection<? extends Serializable> ownerIds) {
+        final Cache cache = em.unwrap(Session.class).getSessionFactory().getCache();
+        for (Serializable ownerId : ownerIds) {
+            cache.evictCollection(role, ownerId);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    for (Serializable ownerId : ownerIds) {
+                        cache.evictCollection(role, ownerId);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Evict the cached collection <code>role</code> of a single owner; a <code>null</code> id is ignored.
+     *
+     * @see #evictCollection(EntityManager, String, Collection)
+     */
+    public static void evictCollection(EntityManager em, String role, Serializable ownerId) {
+        if (ownerId != null) {
+            evictCollection(em, role, Collections.singleton(ownerId));
+        }
+    }
+
+}
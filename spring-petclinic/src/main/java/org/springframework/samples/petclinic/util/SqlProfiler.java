@@ -0,0 +1,515 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Records every SQL statement run through the connections it {@link #profile profiles}: its SQL, the number of
+ * parameters bound, the number of rows read or updated, and the time spent executing it and reading its rows.
+ * <p/>
+ * Statements are added up in the {@link RequestProfile} bound to the current thread between {@link #startRequest} and
+ * {@link #endRequest}, such as the one of an HTTP request, and the slowest ones are kept across requests to be listed
+ * by {@link #getSlowestStatements()}. Statements run by other threads, such as the reads of the "async" profile or the
+ * visit writer, are only kept among the slowest ones.
+ */
+@ManagedResource("petclinic:type=SqlProfiler")
+public class SqlProfiler {
+
+    private final ThreadLocal<RequestProfile> currentRequest = new ThreadLocal<RequestProfile>();
+
+    private volatile int slowestStatementCount = 20;
+
+    private final PriorityQueue<Execution> slowest = new PriorityQueue<Execution>();
+
+    private volatile long slowestThresholdNanos = -1;
+
+    private volatile ConcurrentHistogram statementTimes = new ConcurrentHistogram();
+
+    private volatile ConcurrentHistogram statementsPerRequest = new ConcurrentHistogram();
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+
+    /**
+     * Number of the slowest statements kept to be listed.
+     */
+    @ManagedAttribute
+    public void setSlowestStatementCount(int slowestStatementCount) {
+        synchronized (this.slowest) {
+            this.slowestStatementCount = slowestStatementCount;
+            while (this.slowest.size() > Math.max(0, slowestStatementCount)) {
+                this.slowest.poll();
+            }
+            updateThreshold();
+        }
+    }
+
+    @ManagedAttribute
+    public int getSlowestStatementCount() {
+        return this.slowestStatementCount;
+    }
+
+    /**
+     * @return the time taken by each statement: count, mean, p50, p90, p99 and max, in milliseconds
+     */
+    @ManagedAttribute
+    public String getStatementTimeStatistics() {
+        ConcurrentHistogram histogram = this.statementTimes;
+        return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                histogram.getCount(), toMillis(histogram.getMean()),
+                toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(90)),
+                toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getMax()));
+    }
+
+    /**
+     * @return the number of statements per profiled request: count of requests, mean, p50, p90, p99 and max
+     */
+    @ManagedAttribute
+    public String getStatementsPerRequestStatistics() {
+        ConcurrentHistogram histogram = this.statementsPerRequest;
+        return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", histogram.getCount(),
+                histogram.getMean(), histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getMax());
+    }
+
+    /**
+     * @return the number of requests profiled since startup
+     */
+    @ManagedAttribute
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    /**
+     * @return one line per slowest statement, slowest first: time, rows, bound parameters, request and SQL
+     */
+    @ManagedAttribute
+    public String[] getSlowestStatementDescriptions() {
+        List<Execution> executions = getSlowestStatements();
+        List<String> lines = new ArrayList<String>(executions.size());
+        for (Execution execution : executions) {
+            lines.add(String.format("%.3fms rows=%d binds=%d [%s] %s", execution.getElapsedMillis(),
+                    execution.getRowCount(), execution.getBindCount(), execution.getRequest(), execution.getSql()));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedOperation
+    public void reset() {
+        synchronized (this.slowest) {
+            this.slowest.clear();
+            updateThreshold();
+        }
+        this.statementTimes = new ConcurrentHistogram();
+        this.statementsPerRequest = new ConcurrentHistogram();
+    }
+
+    /**
+     * @return the slowest statements since startup or the last reset, slowest first
+     */
+    public List<Execution> getSlowestStatements() {
+        List<Execution> executions;
+        synchronized (this.slowest) {
+            executions = new ArrayList<Execution>(this.slowest);
+        }
+        Collections.sort(executions, Collections.reverseOrder());
+        return executions;
+    }
+
+    /**
+     * Add up the statements run by the current thread in a new profile, until {@link #endRequest}.
+     *
+     * @param description what the thread is doing, shown with the slowest statements (e.g. "GET /owners/6")
+     */
+    public RequestProfile startRequest(String description) {
+        RequestProfile profile = new RequestProfile(description);
+        this.currentRequest.set(profile);
+        return profile;
+    }
+
+    public void endRequest(RequestProfile profile) {
+        if (this.currentRequest.get() == profile) {
+            this.currentRequest.remove();
+        }
+        this.requestCount.incrementAndGet();
+        this.statementsPerRequest.recordValue(profile.getStatementCount());
+    }
+
+    /**
+     * @return the profile of the current thread, or <code>null</code> if none has been started
+     */
+    public RequestProfile getCurrentRequest() {
+        return this.currentRequest.get();
+    }
+
+    /**
+     * @return a connection recording the statements run through the given one
+     */
+    public Connection profile(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[] {ConnectionProxy.class}, new ConnectionInvocationHandler(connection));
+    }
+
+
+    private void record(String sql, int bindCount, long rowCount, long elapsedNanos) {
+        this.statementTimes.recordValue(elapsedNanos);
+        RequestProfile profile = this.currentRequest.get();
+        if (profile != null) {
+            profile.add(elapsedNanos, rowCount);
+        }
+        if (elapsedNanos <= this.slowestThresholdNanos) {
+            return;
+        }
+        Execution execution = new Execution(sql, bindCount, rowCount, elapsedNanos,
+                (profile != null ? profile.getDescription() : Thread.currentThread().getName()));
+        synchronized (this.slowest) {
+            if (this.slowestStatementCount <= 0) {
+                return;
+            }
+            this.slowest.add(execution);
+            while (this.slowest.size() > this.slowestStatementCount) {
+                this.slowest.poll();
+            }
+            updateThreshold();
+        }
+    }
+
+    private void updateThreshold() {
+        // only statements slower than the fastest kept one need the lock, once the list is full
+        this.slowestThresholdNanos = (this.slowest.size() < this.slowestStatementCount ? -1 :
+                (this.slowest.isEmpty() ? Long.MAX_VALUE : this.slowest.peek().elapsedNanos));
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        }
+    }
+
+
+    /**
+     * Statements run by a thread between {@link SqlProfiler#startRequest} and {@link SqlProfiler#endRequest}; only
+     * updated by that thread.
+     */
+    public static class RequestProfile {
+
+        private final String description;
+
+        private int statementCount;
+
+        private long elapsedNanos;
+
+        private long rowCount;
+
+        private RequestProfile(String description) {
+            this.description = description;
+        }
+
+        private void add(long elapsedNanos, long rowCount) {
+            this.statementCount++;
+            this.elapsedNanos += elapsedNanos;
+            this.rowCount += rowCount;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        public int getStatementCount() {
+            return this.statementCount;
+        }
+
+        public double getElapsedMillis() {
+            return toMillis(this.elapsedNanos);
+        }
+
+        public long getRowCount() {
+            return this.rowCount;
+        }
+    }
+
+
+    /**
+     * One run of a statement, ordered by the time it took.
+     */
+    public static class Execution implements Comparable<Execution> {
+
+        private final String sql;
+
+        private final int bindCount;
+
+        private final long rowCount;
+
+        private final long elapsedNanos;
+
+        private final String request;
+
+        private Execution(String sql, int bindCount, long rowCount, long elapsedNanos, String request) {
+            this.sql = sql;
+            this.bindCount = bindCount;
+            this.rowCount = rowCount;
+            this.elapsedNanos = elapsedNanos;
+            this.request = request;
+        }
+
+        public String getSql() {
+            return this.sql;
+        }
+
+        public int getBindCount() {
+            return this.bindCount;
+        }
+
+        public long getRowCount() {
+            return this.rowCount;
+        }
+
+        public double getElapsedMillis() {
+            return toMillis(this.elapsedNanos);
+        }
+
+        /**
+         * @return the description of the request that ran the statement, or the name of the thread outside requests
+         */
+        public String getRequest() {
+            return this.request;
+        }
+
+        @Override
+        public int compareTo(Execution other) {
+            return (this.elapsedNanos < other.elapsedNanos ? -1 : (this.elapsedNanos == other.elapsedNanos ? 0 : 1));
+        }
+    }
+
+
+    /**
+     * Hands out recording statements, and passes every other call on to the target connection.
+     */
+    private class ConnectionInvocationHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        private ConnectionInvocationHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getTargetConnection")) {
+                return this.target;
+            } else if (name.equals("equals")) {
+                return (proxy == args[0]);
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            Object result = SqlProfiler.invoke(this.target, method, args);
+            if (result instanceof Statement) {
+                String sql = (name.startsWith("prepare") ? (String) args[0] : null);
+                Class<?> type = (result instanceof CallableStatement ? CallableStatement.class :
+                        (result instanceof PreparedStatement ? PreparedStatement.class : Statement.class));
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type},
+                        new StatementInvocationHandler((Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+
+    /**
+     * Times the executions of a statement, and counts its bound parameters and the rows it reads or updates. The run
+     * of a query is recorded once its result set or the statement is closed, or the statement is run again.
+     */
+    private class StatementInvocationHandler implements InvocationHandler {
+
+        private final Statement target;
+
+        private final String preparedSql;
+
+        private final Set<Object> boundParameters = new HashSet<Object>();
+
+        private int batchedBindCount;
+
+        private String batchedSql;
+
+        // run of a query whose rows are still being read
+        private String pendingSql;
+
+        private int pendingBindCount;
+
+        private long pendingRowCount;
+
+        private long pendingNanos;
+
+        private StatementInvocationHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return (proxy == args[0]);
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.startsWith("set") && args != null && args.length >= 2) {
+                // parameter setters take the index or name of the parameter first, statement settings one argument
+                this.boundParameters.add(args[0]);
+            } else if (name.equals("clearParameters")) {
+                this.boundParameters.clear();
+            } else if (name.equals("addBatch")) {
+                if (this.batchedSql == null) {
+                    this.batchedSql = (args != null && args.length == 1 ? (String) args[0] : this.preparedSql);
+                }
+                this.batchedBindCount += this.boundParameters.size();
+            } else if (name.equals("clearBatch")) {
+                this.batchedSql = null;
+                this.batchedBindCount = 0;
+            } else if (name.equals("close")) {
+                recordPending();
+            } else if (name.startsWith("execute")) {
+                return execute(method, args);
+            } else if (name.equals("getResultSet")) {
+                return profile((ResultSet) SqlProfiler.invoke(this.target, method, args));
+            }
+            return SqlProfiler.invoke(this.target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            recordPending();
+            String name = method.getName();
+            boolean batch = name.equals("executeBatch");
+            String sql = (batch ? this.batchedSql : (args != null && args.length > 0 ? (String) args[0] :
+                    this.preparedSql));
+            int bindCount = (batch ? this.batchedBindCount : this.boundParameters.size());
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = SqlProfiler.invoke(this.target, method, args);
+            } catch (Throwable ex) {
+                record(sql, bindCount, 0, System.nanoTime() - start);
+                throw ex;
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            if (batch) {
+                this.batchedSql = null;
+                this.batchedBindCount = 0;
+            }
+            if (result instanceof ResultSet) {
+                startPending(sql, bindCount, elapsedNanos);
+                return profile((ResultSet) result);
+            } else if (result instanceof Boolean && (Boolean) result) {
+                // the result set of execute() is obtained with getResultSet()
+                startPending(sql, bindCount, elapsedNanos);
+            } else {
+                record(sql, bindCount, updateCount(result), elapsedNanos);
+            }
+            return result;
+        }
+
+        private long updateCount(Object result) throws SQLException {
+            if (result instanceof Number) {
+                return ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                long rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            } else if (result instanceof long[]) {
+                long rows = 0;
+                for (long count : (long[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            }
+            return Math.max(this.target.getUpdateCount(), 0);
+        }
+
+        private void startPending(String sql, int bindCount, long elapsedNanos) {
+            this.pendingSql = sql;
+            this.pendingBindCount = bindCount;
+            this.pendingRowCount = 0;
+            this.pendingNanos = elapsedNanos;
+        }
+
+        private void recordPending() {
+            if (this.pendingSql != null) {
+                record(this.pendingSql, this.pendingBindCount, this.pendingRowCount, this.pendingNanos);
+                this.pendingSql = null;
+            }
+        }
+
+        private ResultSet profile(final ResultSet resultSet) {
+            if (resultSet == null) {
+                return null;
+            }
+            return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ResultSet.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            String name = method.getName();
+                            if (name.equals("equals")) {
+                                return (proxy == args[0]);
+                            } else if (name.equals("hashCode")) {
+                                return System.identityHashCode(proxy);
+                            } else if (name.equals("next")) {
+                                long start = System.nanoTime();
+                                Object hasRow = SqlProfiler.invoke(resultSet, method, args);
+                                pendingNanos += System.nanoTime() - start;
+                                if ((Boolean) hasRow) {
+                                    pendingRowCount++;
+                                }
+                                return hasRow;
+                            } else if (name.equals("close")) {
+                                recordPending();
+                            }
+                            return SqlProfiler.invoke(resultSet, method, args);
+                        }
+                    });
+        }
+    }
+
+}
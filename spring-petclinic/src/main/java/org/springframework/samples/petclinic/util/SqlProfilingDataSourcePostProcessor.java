@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Makes the connections of the application DataSource record their statements in a {@link SqlProfiler}, whichever
+ * data access profile ("jdbc", "jpa" or "spring-data-jpa") and DataSource definition are active.
+ * <p/>
+ * The DataSource is proxied by subclassing, so that it keeps its type and its JMX attributes (e.g. those of {@link
+ * ConnectionPoolMonitor}), and only the connections it hands out are wrapped.
+ */
+public class SqlProfilingDataSourcePostProcessor implements BeanPostProcessor {
+
+    private String dataSourceBeanName = "dataSource";
+
+    private SqlProfiler profiler;
+
+
+    /**
+     * Name of the DataSource bean used by the repositories.
+     */
+    public void setDataSourceBeanName(String dataSourceBeanName) {
+        this.dataSourceBeanName = dataSourceBeanName;
+    }
+
+    public void setProfiler(SqlProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource) || !beanName.equals(this.dataSourceBeanName)) {
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new MethodInterceptor() {
+            @Override
+            public Object invoke(MethodInvocation invocation) throws Throwable {
+                Object result = invocation.proceed();
+                if (result instanceof Connection && invocation.getMethod().getName().equals("getConnection")) {
+                    return profiler.profile((Connection) result);
+                }
+                return result;
+            }
+        });
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.InitBinder;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * Asynchronous variants of the read-only pages: the owner details, the owner search, the list of vets and the visits of
+ * a pet. Each request is handed over to the <code>readExecutor</code>, a bounded thread pool, and the servlet thread
+ * is released while the database is queried; the view is then rendered on an async dispatch.
+ * <p/>
+ * The pages themselves are still built by {@link OwnerController}, {@link VetController} and {@link
+ * VisitController}. This class is only defined, together with {@link AsyncReadHandlerMapping}, by the "async" profile
+ * of <code>mvc-core-config.xml</code>; it is deliberately not a <code>@Controller</code>, so that the regular handler
+ * mapping keeps ignoring it. When the pool and its queue are full, or a read takes longer than the configured timeout,
+ * the request is answered with <code>503 Service Unavailable</code> instead of being queued further.
+ */
+public class AsyncReadController {
+
+    private final OwnerController ownerController;
+
+    private final VetController vetController;
+
+    private final VisitController visitController;
+
+    private final TaskExecutor readExecutor;
+
+    private long timeoutMillis = 10000;
+
+
+    @Autowired
+    public AsyncReadController(OwnerController ownerController, VetController vetController,
+                               VisitController visitController, @Qualifier("readExecutor") TaskExecutor readExecutor) {
+        this.ownerController = ownerController;
+        this.vetController = vetController;
+        this.visitController = visitController;
+        this.readExecutor = readExecutor;
+    }
+
+    /**
+     * Number of milliseconds after which a request still waiting for its read is answered with a 503.
+     */
+    @Value("${web.async.timeoutMillis:10000}")
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @InitBinder
+    public void setAllowedFields(WebDataBinder dataBinder) {
+        dataBinder.setDisallowedFields("id");
+    }
+
+    @RequestMapping(value = "/owners", method = RequestMethod.GET)
+    public DeferredResult<String> processFindForm(final Owner owner, final BindingResult result,
+                                                  @RequestParam(value = "afterLastName", required = false) final String afterLastName,
+                                                  @RequestParam(value = "afterId", required = false) final Integer afterId,
+                                                  final Map<String, Object> model) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return ownerController.processFindForm(owner, result, afterLastName, afterId, model);
+            }
+        });
+    }
+
+    // only numeric ids, so that '/owners/new', '/owners/find' and '/owners/lastNames' still reach OwnerController
+
+    @RequestMapping("/owners/{ownerId:\\d+}")
+    public DeferredResult<ModelAndView> showOwner(@PathVariable("ownerId") final int ownerId) {
+        return submit(new Callable<ModelAndView>() {
+            @Override
+            public ModelAndView call() {
+                return ownerController.showOwner(ownerId);
+            }
+        });
+    }
+
+    @RequestMapping("/vets")
+    public DeferredResult<String> showVetList(final Map<String, Object> model) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return vetController.showVetList(model);
+            }
+        });
+    }
+
+    @RequestMapping(value = "/owners/*/pets/{petId}/visits", method = RequestMethod.GET)
+    public DeferredResult<ModelAndView> showVisits(@PathVariable("petId") final int petId) {
+        return submit(new Callable<ModelAndView>() {
+            @Override
+            public ModelAndView call() {
+                return visitController.showVisits(petId);
+            }
+        });
+    }
+
+    @ExceptionHandler({TaskRejectedException.class, TimeoutException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void handleOverload() {
+        // the pool is saturated: let the client retry rather than keep it waiting
+    }
+
+
+    /**
+     * Run the given read on the read executor, with the attributes of the current request bound to its thread so that
+     * request and session scoped state, such as a session pinned to the primary database, is still visible; a full
+     * executor is reported by throwing {@link TaskRejectedException} before the request has been switched to async
+     * mode.
+     */
+    private <T> DeferredResult<T> submit(final Callable<T> read) {
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        final DeferredResult<T> deferredResult = new DeferredResult<T>(this.timeoutMillis);
+        deferredResult.onTimeout(new Runnable() {
+            @Override
+            public void run() {
+                deferredResult.setErrorResult(new TimeoutException("No result after " + timeoutMillis + " ms"));
+            }
+        });
+        this.readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                RequestContextHolder.setRequestAttributes(requestAttributes);
+                try {
+                    deferredResult.setResult(read.call());
+                } catch (Exception ex) {
+                    // rethrown on the async dispatch, and resolved like any other handler exception
+                    deferredResult.setErrorResult(ex);
+                } finally {
+                    RequestContextHolder.resetRequestAttributes();
+                }
+            }
+        });
+        return deferredResult;
+    }
+
+}
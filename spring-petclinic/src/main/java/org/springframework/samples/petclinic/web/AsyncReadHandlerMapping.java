@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * Maps the request mappings of {@link AsyncReadController}, and only those. Ordered before the handler mapping of
+ * <code>&lt;mvc:annotation-driven/&gt;</code> in the "async" profile, it takes the read-only pages over from the
+ * regular controllers without both sets of mappings having to be registered in the same (and then ambiguous) mapping.
+ * <p/>
+ * Suffix patterns are not matched, so that <code>/vets.json</code> and the other pre-rendered lists are left to
+ * {@link VetController}.
+ */
+public class AsyncReadHandlerMapping extends RequestMappingHandlerMapping {
+
+    public AsyncReadHandlerMapping() {
+        setUseSuffixPatternMatch(false);
+        setOrder(-1);
+    }
+
+    @Override
+    protected boolean isHandler(Class<?> beanType) {
+        return AsyncReadController.class.isAssignableFrom(beanType);
+    }
+
+}
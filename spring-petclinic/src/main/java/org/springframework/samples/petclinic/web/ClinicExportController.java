@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.samples.petclinic.service.ClinicExportHandler;
+import org.springframework.samples.petclinic.service.ClinicService;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Full export of the owners, their pets and the visits of the pets, for nightly dumps by other systems: the
+ * counterpart of {@link VisitImportController}.
+ * <p/>
+ * <p>Rows are written to the response as {@link ClinicService#exportClinic} reads them from the database, through a
+ * fixed-size buffer, so neither the result set nor the response body is held in memory. The columns are those of
+ * {@link ClinicExportHandler#COLUMNS}, in the same order:
+ * <ul>
+ * <li><code>export/clinic.csv</code>: a header line, then one comma-separated line per row; values containing a comma,
+ * a double quote or a line break are double-quoted</li>
+ * <li><code>export/clinic.json</code>: an array with one object per row</li>
+ * </ul>
+ */
+@Controller
+public class ClinicExportController {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ClinicService clinicService;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+
+    @Autowired
+    public ClinicExportController(ClinicService clinicService) {
+        this.clinicService = clinicService;
+    }
+
+    @RequestMapping(value = "/export/clinic.csv", method = RequestMethod.GET)
+    public void exportCsv(HttpServletResponse response) throws IOException {
+        prepare(response, "text/csv", "clinic.csv");
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"),
+                BUFFER_SIZE);
+        writeCsvLine(writer, ClinicExportHandler.COLUMNS);
+        this.clinicService.exportClinic(new ClinicExportHandler() {
+            @Override
+            public void exportRow(Object[] values) throws IOException {
+                writeCsvLine(writer, values);
+            }
+        });
+        writer.flush();
+    }
+
+    @RequestMapping(value = "/export/clinic.json", method = RequestMethod.GET)
+    public void exportJson(HttpServletResponse response) throws IOException {
+        prepare(response, "application/json", "clinic.json");
+        final JsonGenerator generator = this.jsonFactory.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        generator.writeStartArray();
+        this.clinicService.exportClinic(new ClinicExportHandler() {
+            @Override
+            public void exportRow(Object[] values) throws IOException {
+                generator.writeStartObject();
+                for (int i = 0; i < values.length; i++) {
+                    generator.writeFieldName(COLUMNS[i]);
+                    if (values[i] instanceof Number) {
+                        generator.writeNumber(((Number) values[i]).longValue());
+                    } else if (values[i] != null) {
+                        generator.writeString(values[i].toString());
+                    } else {
+                        generator.writeNull();
+                    }
+                }
+                generator.writeEndObject();
+            }
+        });
+        generator.writeEndArray();
+        generator.close();
+    }
+
+
+    private static void prepare(HttpServletResponse response, String contentType, String fileName) {
+        response.setContentType(contentType);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        response.setBufferSize(BUFFER_SIZE);
+    }
+
+    static void writeCsvLine(Writer writer, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                String value = values[i].toString();
+                if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 ||
+                        value.indexOf('\r') >= 0) {
+                    writer.write('"');
+                    writer.write(value.replace("\"", "\"\""));
+                    writer.write('"');
+                } else {
+                    writer.write(value);
+                }
+            }
+        }
+        writer.write("\r\n");
+    }
+
+}
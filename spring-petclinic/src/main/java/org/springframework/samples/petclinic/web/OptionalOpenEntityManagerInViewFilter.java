@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewFilter;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+/**
+ * {@link OpenEntityManagerInViewFilter} that steps aside when the root application context has no entity manager
+ * factory, so that the same web.xml works with the "jdbc" profile as with the "jpa" and "spring-data-jpa" ones.
+ * <p/>
+ * With JPA, the entity manager stays open until the view has been rendered: lazy associations that a repository did
+ * not initialize, such as the visits of the pets of an owner list, can still be read by the view (with one query per
+ * batch of pets), instead of failing with a <code>LazyInitializationException</code>.
+ */
+public class OptionalOpenEntityManagerInViewFilter extends OpenEntityManagerInViewFilter {
+
+    private volatile Boolean jpa;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        Boolean active = this.jpa;
+        if (active == null) {
+            WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(
+                    getServletContext());
+            String beanName = getEntityManagerFactoryBeanName();
+            active = context.containsBean(beanName != null ? beanName : DEFAULT_ENTITY_MANAGER_FACTORY_BEAN_NAME);
+            this.jpa = active;
+        }
+        return !active;
+    }
+
+}
@@ -15,13 +15,14 @@
  */
 package org.springframework.samples.petclinic.web;
 
-import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
 import org.springframework.samples.petclinic.service.ClinicService;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -31,6 +32,8 @@ import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.SessionAttributes;
 import org.springframework.web.bind.support.SessionStatus;
 import org.springframework.web.servlet.ModelAndView;
@@ -45,6 +48,16 @@ import org.springframework.web.servlet.ModelAndView;
 @SessionAttributes(types = Owner.class)
 public class OwnerController {
 
+    /**
+     * Number of owners rendered on each page of the owners list.
+     */
+    private static final int OWNERS_PAGE_SIZE = 20;
+
+    /**
+     * Maximum number of last names suggested while typing in the 'Find Owners' form.
+     */
+    private static final int LAST_NAME_SUGGESTIONS = 10;
+
     private final ClinicService clinicService;
 
 
@@ -83,31 +96,46 @@ public class OwnerController {
     }
 
     @RequestMapping(value = "/owners", method = RequestMethod.GET)
-    public String processFindForm(Owner owner, BindingResult result, Map<String, Object> model) {
+    public String processFindForm(Owner owner, BindingResult result,
+                                  @RequestParam(value = "afterLastName", required = false) String afterLastName,
+                                  @RequestParam(value = "afterId", required = false) Integer afterId,
+                                  Map<String, Object> model) {
 
         // allow parameterless GET request for /owners to return all records
         if (owner.getLastName() == null) {
             owner.setLastName(""); // empty string signifies broadest possible search
         }
 
-        // find owners by last name
-        Collection<Owner> results = this.clinicService.findOwnerByLastName(owner.getLastName());
-        if (results.size() < 1) {
+        // find one page of owner summaries by last name, fetching one more row to know whether a next page exists
+        boolean firstPage = afterLastName == null || afterId == null;
+        List<OwnerSummary> results = this.clinicService.findOwnerSummariesByLastName(owner.getLastName(),
+                afterLastName, afterId, OWNERS_PAGE_SIZE + 1);
+        if (results.size() < 1 && firstPage) {
             // no owners found
             result.rejectValue("lastName", "notFound", "not found");
             return "owners/findOwners";
         }
-        if (results.size() > 1) {
+        if (results.size() > 1 || !firstPage) {
             // multiple owners found
+            if (results.size() > OWNERS_PAGE_SIZE) {
+                results = results.subList(0, OWNERS_PAGE_SIZE);
+                model.put("nextOwner", results.get(OWNERS_PAGE_SIZE - 1));
+            }
             model.put("selections", results);
+            model.put("firstPage", firstPage);
             return "owners/ownersList";
         } else {
             // 1 owner found
-            owner = results.iterator().next();
-            return "redirect:/owners/" + owner.getId();
+            return "redirect:/owners/" + results.get(0).getId();
         }
     }
 
+    @RequestMapping(value = "/owners/lastNames", method = RequestMethod.GET)
+    @ResponseBody
+    public List<String> suggestLastNames(@RequestParam(value = "prefix", defaultValue = "") String prefix) {
+        return this.clinicService.findOwnerLastNames(prefix, LAST_NAME_SUGGESTIONS);
+    }
+
     @RequestMapping(value = "/owners/{ownerId}/edit", method = RequestMethod.GET)
     public String initUpdateOwnerForm(@PathVariable("ownerId") int ownerId, Model model) {
         Owner owner = this.clinicService.findOwnerById(ownerId);
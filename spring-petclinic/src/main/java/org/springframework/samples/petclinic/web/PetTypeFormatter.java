@@ -17,13 +17,12 @@ package org.springframework.samples.petclinic.web;
 
 
 import java.text.ParseException;
-import java.util.Collection;
 import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.Formatter;
 import org.springframework.samples.petclinic.model.PetType;
-import org.springframework.samples.petclinic.service.ClinicService;
+import org.springframework.samples.petclinic.util.ReferenceDataCache;
 
 /**
  * Instructs Spring MVC on how to parse and print elements of type 'PetType'. Starting from Spring 3.0, Formatters have
@@ -32,6 +31,8 @@ import org.springframework.samples.petclinic.service.ClinicService;
  * - A nice blog entry from Gordon Dickens: http://gordondickens.com/wordpress/2010/09/30/using-spring-3-0-custom-type-converter/
  * <p/>
  * Also see how the bean 'conversionService' has been declared inside /WEB-INF/mvc-core-config.xml
+ * <p/>
+ * Pet types are resolved by name through the {@link ReferenceDataCache}, so binding a form does not hit the database.
  *
  * @author Mark Fisher
  * @author Juergen Hoeller
@@ -39,12 +40,12 @@ import org.springframework.samples.petclinic.service.ClinicService;
  */
 public class PetTypeFormatter implements Formatter<PetType> {
 
-    private final ClinicService clinicService;
+    private final ReferenceDataCache referenceDataCache;
 
 
     @Autowired
-    public PetTypeFormatter(ClinicService clinicService) {
-        this.clinicService = clinicService;
+    public PetTypeFormatter(ReferenceDataCache referenceDataCache) {
+        this.referenceDataCache = referenceDataCache;
     }
 
     @Override
@@ -54,13 +55,11 @@ public class PetTypeFormatter implements Formatter<PetType> {
 
     @Override
     public PetType parse(String text, Locale locale) throws ParseException {
-        Collection<PetType> findPetTypes = this.clinicService.findPetTypes();
-        for (PetType type : findPetTypes) {
-            if (type.getName().equals(text)) {
-                return type;
-            }
+        PetType type = this.referenceDataCache.getPetTypeByName(text);
+        if (type == null) {
+            throw new ParseException("type not found: " + text, 0);
         }
-        throw new ParseException("type not found: " + text, 0);
+        return type;
     }
 
 }
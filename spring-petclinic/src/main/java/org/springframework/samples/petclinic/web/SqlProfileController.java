@@ -0,0 +1,50 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.samples.petclinic.util.SqlProfiler;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Debug page listing the slowest SQL statements recorded by the {@link SqlProfiler}, with the "sql-profiler" profile.
+ */
+@Controller
+@Profile("sql-profiler")
+public class SqlProfileController {
+
+    private final SqlProfiler profiler;
+
+
+    @Autowired
+    public SqlProfileController(SqlProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @RequestMapping(value = "/debug/sql", method = RequestMethod.GET)
+    public String showSlowestStatements(Map<String, Object> model) {
+        model.put("statements", this.profiler.getSlowestStatements());
+        model.put("statementTimes", this.profiler.getStatementTimeStatistics());
+        model.put("statementsPerRequest", this.profiler.getStatementsPerRequestStatistics());
+        return "debug/sqlStatements";
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.samples.petclinic.util.SqlProfiler;
+import org.springframework.samples.petclinic.util.SqlProfiler.RequestProfile;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Profiles the SQL statements of each request with the {@link SqlProfiler} of the root application context, and
+ * reports their number and total time in milliseconds as <code>X-SQL-Count</code> and <code>X-SQL-Time</code> response
+ * headers. Steps aside when the "sql-profiler" profile is not active.
+ * <p/>
+ * The headers are added just before the response is committed, so statements run after the first bytes of a large
+ * page have been sent are not counted in them (they are among the slowest statements, though). The reads of the
+ * "async" profile run on other threads and are not counted either.
+ */
+public class SqlProfilingFilter extends OncePerRequestFilter {
+
+    public static final String COUNT_HEADER = "X-SQL-Count";
+
+    public static final String TIME_HEADER = "X-SQL-Time";
+
+    private volatile SqlProfiler profiler;
+
+    private volatile boolean profilerLookedUp;
+
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!this.profilerLookedUp) {
+            WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(
+                    getServletContext());
+            String[] names = context.getBeanNamesForType(SqlProfiler.class);
+            this.profiler = (names.length > 0 ? context.getBean(names[0], SqlProfiler.class) : null);
+            this.profilerLookedUp = true;
+        }
+        return (this.profiler == null);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String description = request.getMethod() + " " + request.getRequestURI() +
+                (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+        RequestProfile profile = this.profiler.startRequest(description);
+        ProfileHeadersResponse profiledResponse = new ProfileHeadersResponse(response, profile);
+        try {
+            filterChain.doFilter(request, profiledResponse);
+        } finally {
+            this.profiler.endRequest(profile);
+        }
+        if (!isAsyncStarted(request)) {
+            profiledResponse.addProfileHeaders();
+        }
+    }
+
+
+    /**
+     * Adds the profile headers before the response gets committed.
+     */
+    private static class ProfileHeadersResponse extends HttpServletResponseWrapper {
+
+        private final RequestProfile profile;
+
+        private boolean headersAdded;
+
+        private ProfileHeadersResponse(HttpServletResponse response, RequestProfile profile) {
+            super(response);
+            this.profile = profile;
+        }
+
+        private void addProfileHeaders() {
+            if (!this.headersAdded && !isCommitted()) {
+                this.headersAdded = true;
+                setHeader(COUNT_HEADER, Integer.toString(this.profile.getStatementCount()));
+                setHeader(TIME_HEADER, String.format(Locale.ENGLISH, "%.3f", this.profile.getElapsedMillis()));
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addProfileHeaders();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addProfileHeaders();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addProfileHeaders();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addProfileHeaders();
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addProfileHeaders();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addProfileHeaders();
+            super.sendError(sc, msg);
+        }
+    }
+
+}
@@ -18,9 +18,16 @@ package org.springframework.samples.petclinic.web;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.samples.petclinic.model.Vets;
 import org.springframework.samples.petclinic.service.ClinicService;
+import org.springframework.samples.petclinic.web.VetsPayloadCache.Format;
+import org.springframework.samples.petclinic.web.VetsPayloadCache.Payload;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 /**
@@ -34,10 +41,13 @@ public class VetController {
 
     private final ClinicService clinicService;
 
+    private final VetsPayloadCache vetsPayloadCache;
+
 
     @Autowired
-    public VetController(ClinicService clinicService) {
+    public VetController(ClinicService clinicService, VetsPayloadCache vetsPayloadCache) {
         this.clinicService = clinicService;
+        this.vetsPayloadCache = vetsPayloadCache;
     }
 
     @RequestMapping("/vets")
@@ -50,5 +60,55 @@ public class VetController {
         return "vets/vetList";
     }
 
+    // The JSON, XML and Atom lists are written as pre-rendered bytes rather than through a view,
+    // and are not sent again to clients that already hold the current version
+
+    @RequestMapping("/vets.json")
+    public ResponseEntity<byte[]> showVetListJson(@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return render(Format.JSON, ifNoneMatch);
+    }
+
+    @RequestMapping("/vets.xml")
+    public ResponseEntity<byte[]> showVetListXml(@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return render(Format.XML, ifNoneMatch);
+    }
+
+    @RequestMapping("/vets.atom")
+    public ResponseEntity<byte[]> showVetListAtom(@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return render(Format.ATOM, ifNoneMatch);
+    }
+
+
+    private ResponseEntity<byte[]> render(Format format, String ifNoneMatch) {
+        Payload payload = this.vetsPayloadCache.getPayload(format);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(payload.getEtag());
+        if (matches(ifNoneMatch, payload.getEtag())) {
+            return new ResponseEntity<byte[]>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        headers.setContentType(payload.getContentType());
+        headers.setContentLength(payload.getBody().length);
+        return new ResponseEntity<byte[]>(payload.getBody(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Whether an If-None-Match header lists the given ETag; weak validators compare equal to their strong
+     * counterpart, as required for GET requests.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (!StringUtils.hasText(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
 }
@@ -16,6 +16,7 @@
 package org.springframework.samples.petclinic.web;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -40,17 +41,26 @@ public class VetsAtomView extends AbstractAtomFeedView {
 
     @Override
     protected void buildFeedMetadata(Map<String, Object> model, Feed feed, HttpServletRequest request) {
-        feed.setId("tag:springsource.org");
-        feed.setTitle("Veterinarians");
-        //feed.setUpdated(date);
+        buildMetadata(feed);
     }
 
     @Override
     protected List<Entry> buildFeedEntries(Map<String, Object> model,
                                            HttpServletRequest request, HttpServletResponse response) throws Exception {
-
         Vets vets = (Vets) model.get("vets");
-        List<Vet> vetList = vets.getVetList();
+        return buildEntries(vets.getVetList());
+    }
+
+    /**
+     * Also used by {@link VetsPayloadCache}, which renders the feed once per list of vets.
+     */
+    static void buildMetadata(Feed feed) {
+        feed.setId("tag:springsource.org");
+        feed.setTitle("Veterinarians");
+        //feed.setUpdated(date);
+    }
+
+    static List<Entry> buildEntries(Collection<Vet> vetList) {
         List<Entry> entries = new ArrayList<Entry>(vetList.size());
 
         for (Vet vet : vetList) {
@@ -66,9 +76,7 @@ public class VetsAtomView extends AbstractAtomFeedView {
 
             entries.add(entry);
         }
-        response.setContentType("blabla");
         return entries;
-
     }
 
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.stream.StreamResult;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.oxm.Marshaller;
+import org.springframework.samples.petclinic.model.Vet;
+import org.springframework.samples.petclinic.model.Vets;
+import org.springframework.samples.petclinic.service.VetsCache;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.syndication.feed.atom.Feed;
+import com.sun.syndication.io.FeedException;
+import com.sun.syndication.io.WireFeedOutput;
+
+/**
+ * Serialized JSON, XML and Atom representations of the list of vets, rendered at most once per list loaded by {@link
+ * VetsCache} and served with a strong ETag computed from the bytes.
+ * <p/>
+ * Representations are rendered lazily, on the first request for each format after the list has been reloaded. The
+ * bytes are kept for the {@link VetsCache.Snapshot} they were rendered from, so a reload of the list (after a vet has
+ * been saved) is enough to drop them.
+ */
+@Component
+public class VetsPayloadCache {
+
+    /**
+     * The representations of the list of vets that can be pre-rendered.
+     */
+    public enum Format {
+
+        JSON(MediaType.APPLICATION_JSON),
+        XML(MediaType.APPLICATION_XML),
+        ATOM(MediaType.APPLICATION_ATOM_XML);
+
+        private final MediaType contentType;
+
+        Format(MediaType contentType) {
+            this.contentType = contentType;
+        }
+
+        public MediaType getContentType() {
+            return this.contentType;
+        }
+    }
+
+
+    private final VetsCache vetsCache;
+
+    private final Marshaller marshaller;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Payloads payloads;
+
+
+    @Autowired
+    public VetsPayloadCache(VetsCache vetsCache, Marshaller marshaller) {
+        this.vetsCache = vetsCache;
+        this.marshaller = marshaller;
+    }
+
+    /**
+     * @return the current list of vets in the given format, rendering it if needed
+     */
+    public Payload getPayload(Format format) {
+        VetsCache.Snapshot snapshot = this.vetsCache.getSnapshot();
+        Payloads current = this.payloads;
+        if (current == null || current.snapshot != snapshot) {
+            // concurrent requests may each create an instance for a new list: only one of them is kept
+            current = new Payloads(snapshot);
+            this.payloads = current;
+        }
+        Payload payload = current.byFormat.get(format);
+        if (payload == null) {
+            payload = new Payload(format.getContentType(), render(format, snapshot.getVets()));
+            Payload existing = current.byFormat.putIfAbsent(format, payload);
+            if (existing != null) {
+                payload = existing;
+            }
+        }
+        return payload;
+    }
+
+
+    private byte[] render(Format format, Collection<Vet> vetList) {
+        // same 'Vets' wrapper as the one exposed to the JSP and marshalled by the former MarshallingView
+        Vets vets = new Vets();
+        vets.getVetList().addAll(vetList);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            switch (format) {
+                case JSON:
+                    this.objectMapper.writeValue(bytes, vets);
+                    break;
+                case XML:
+                    this.marshaller.marshal(vets, new StreamResult(bytes));
+                    break;
+                case ATOM:
+                    Feed feed = new Feed("atom_1.0");
+                    feed.setEncoding("UTF-8");
+                    VetsAtomView.buildMetadata(feed);
+                    feed.setEntries(VetsAtomView.buildEntries(vetList));
+                    Writer writer = new OutputStreamWriter(bytes, feed.getEncoding());
+                    new WireFeedOutput().output(feed, writer);
+                    writer.flush();
+                    break;
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not render the list of vets as " + format, ex);
+        } catch (FeedException ex) {
+            throw new IllegalStateException("Could not render the list of vets as " + format, ex);
+        }
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * A rendered representation and its ETag.
+     */
+    public static final class Payload {
+
+        private final MediaType contentType;
+
+        private final byte[] body;
+
+        private final String etag;
+
+        private Payload(MediaType contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+            this.etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        }
+
+        public MediaType getContentType() {
+            return this.contentType;
+        }
+
+        /**
+         * @return the rendered bytes; shared, and must not be modified
+         */
+        public byte[] getBody() {
+            return this.body;
+        }
+
+        /**
+         * @return the strong, quoted ETag of the body
+         */
+        public String getEtag() {
+            return this.etag;
+        }
+    }
+
+
+    private static class Payloads {
+
+        private final VetsCache.Snapshot snapshot;
+
+        private final ConcurrentMap<Format, Payload> byFormat = new ConcurrentHashMap<Format, Payload>(4);
+
+        private Payloads(VetsCache.Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+}
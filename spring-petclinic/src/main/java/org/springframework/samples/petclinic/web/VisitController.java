@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.web;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.validation.Valid;
@@ -22,7 +23,9 @@ import javax.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.model.VisitSearchResult;
 import org.springframework.samples.petclinic.service.ClinicService;
+import org.springframework.samples.petclinic.service.VisitWriteBehindQueue;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.WebDataBinder;
@@ -30,6 +33,8 @@ import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.SessionAttributes;
 import org.springframework.web.bind.support.SessionStatus;
 import org.springframework.web.servlet.ModelAndView;
@@ -44,12 +49,17 @@ import org.springframework.web.servlet.ModelAndView;
 @SessionAttributes("visit")
 public class VisitController {
 
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private final ClinicService clinicService;
 
+    private final VisitWriteBehindQueue visitWriteBehindQueue;
+
 
     @Autowired
-    public VisitController(ClinicService clinicService) {
+    public VisitController(ClinicService clinicService, VisitWriteBehindQueue visitWriteBehindQueue) {
         this.clinicService = clinicService;
+        this.visitWriteBehindQueue = visitWriteBehindQueue;
     }
 
     @InitBinder
@@ -71,7 +81,7 @@ public class VisitController {
         if (result.hasErrors()) {
             return "pets/createOrUpdateVisitForm";
         } else {
-            this.clinicService.saveVisit(visit);
+            this.visitWriteBehindQueue.save(visit);
             status.setComplete();
             return "redirect:/owners/{ownerId}";
         }
@@ -84,4 +94,11 @@ public class VisitController {
         return mav;
     }
 
+    @RequestMapping(value = "/visits/search", method = RequestMethod.GET)
+    @ResponseBody
+    public List<VisitSearchResult> searchVisits(@RequestParam("q") String query,
+                                                @RequestParam(value = "max", defaultValue = "20") int maxResults) {
+        return this.clinicService.findVisitsByDescription(query, Math.min(maxResults, MAX_SEARCH_RESULTS));
+    }
+
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.service.ClinicService;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Bulk import of visits for existing pets, used by clinic integrations instead of posting one visit form at a time.
+ * <p/>
+ * <p>The request body is read incrementally and handed to {@link ClinicService#saveVisits} in chunks of {@link
+ * #CHUNK_SIZE} visits, so the number of visits held in memory does not depend on the size of the upload. Each chunk is
+ * committed on its own: when the import fails half way, the response reports how many visits were already imported.
+ * <p/>
+ * <p>Two formats are accepted, both with dates as <code>yyyy-MM-dd</code>:
+ * <ul>
+ * <li><code>text/csv</code>: one <code>petId,date,description</code> line per visit, with an optional header line; the
+ * description may be double-quoted but must fit on a single line</li>
+ * <li><code>application/json</code>: an array of <code>{"petId": 7, "date": "2013-01-01", "description": "..."}</code>
+ * objects</li>
+ * </ul>
+ */
+@Controller
+public class VisitImportController {
+
+    /**
+     * Number of visits saved per call to {@link ClinicService#saveVisits}, and therefore per transaction.
+     */
+    static final int CHUNK_SIZE = 1000;
+
+    private static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat.date();
+
+    private final ClinicService clinicService;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+
+    @Autowired
+    public VisitImportController(ClinicService clinicService) {
+        this.clinicService = clinicService;
+    }
+
+    @RequestMapping(value = "/visits/import", method = RequestMethod.POST, consumes = "text/csv")
+    public ResponseEntity<Map<String, Object>> importCsv(HttpServletRequest request) throws IOException {
+        List<Visit> chunk = new ArrayList<Visit>(CHUNK_SIZE);
+        int imported = 0;
+        int lineNumber = 0;
+        BufferedReader reader = request.getReader();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!StringUtils.hasText(line) || (lineNumber == 1 && line.trim().regionMatches(true, 0, "petId", 0, 5))) {
+                    continue;
+                }
+                chunk.add(parseCsvLine(line, lineNumber));
+                if (chunk.size() == CHUNK_SIZE) {
+                    imported += save(chunk);
+                }
+            }
+            imported += save(chunk);
+        } catch (IllegalArgumentException ex) {
+            return badRequest(imported, ex.getMessage());
+        } catch (DataIntegrityViolationException ex) {
+            return badRequest(imported, "Visits rejected by the database (unknown pet?) before line " + lineNumber);
+        }
+        return ok(imported);
+    }
+
+    @RequestMapping(value = "/visits/import", method = RequestMethod.POST, consumes = "application/json")
+    public ResponseEntity<Map<String, Object>> importJson(HttpServletRequest request) throws IOException {
+        List<Visit> chunk = new ArrayList<Visit>(CHUNK_SIZE);
+        int imported = 0;
+        InputStream body = request.getInputStream();
+        JsonParser parser = this.jsonFactory.createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected an array of visits");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                chunk.add(parseJsonVisit(parser));
+                if (chunk.size() == CHUNK_SIZE) {
+                    imported += save(chunk);
+                }
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("Expected a visit object at " + parser.getCurrentLocation());
+            }
+            imported += save(chunk);
+        } catch (JsonParseException ex) {
+            return badRequest(imported, ex.getOriginalMessage() + " at " + ex.getLocation());
+        } catch (IllegalArgumentException ex) {
+            return badRequest(imported, ex.getMessage());
+        } catch (DataIntegrityViolationException ex) {
+            return badRequest(imported, "Visits rejected by the database (unknown pet?) before " +
+                    parser.getCurrentLocation());
+        } finally {
+            parser.close();
+        }
+        return ok(imported);
+    }
+
+
+    private int save(List<Visit> chunk) {
+        int size = chunk.size();
+        if (size > 0) {
+            this.clinicService.saveVisits(chunk);
+            chunk.clear();
+        }
+        return size;
+    }
+
+    /**
+     * Parses a <code>petId,date,description</code> line; everything after the second comma is the description.
+     */
+    static Visit parseCsvLine(String line, int lineNumber) {
+        String[] fields = line.split(",", 3);
+        if (fields.length < 3) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": expected petId,date,description");
+        }
+        String description = fields[2].trim();
+        if (description.length() >= 2 && description.charAt(0) == '"' && description.charAt(description.length() - 1) == '"') {
+            description = description.substring(1, description.length() - 1).replace("\"\"", "\"");
+        }
+        try {
+            return createVisit(fields[0].trim(), fields[1].trim(), description);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private Visit parseJsonVisit(JsonParser parser) throws IOException {
+        String petId = null;
+        String date = null;
+        String description = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("petId".equals(field)) {
+                petId = parser.getText();
+            } else if ("date".equals(field)) {
+                date = parser.getText();
+            } else if ("description".equals(field)) {
+                description = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        try {
+            return createVisit(petId, date, description);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(ex.getMessage() + " at " + parser.getCurrentLocation(), ex);
+        }
+    }
+
+    private static Visit createVisit(String petId, String date, String description) {
+        if (!StringUtils.hasText(petId) || !StringUtils.hasText(date) || !StringUtils.hasText(description)) {
+            throw new IllegalArgumentException("petId, date and description are required");
+        }
+        Pet pet = new Pet();
+        try {
+            pet.setId(Integer.valueOf(petId));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid petId '" + petId + "'");
+        }
+        DateTime visitDate;
+        try {
+            visitDate = DATE_FORMAT.parseDateTime(date);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid date '" + date + "', expected yyyy-MM-dd");
+        }
+        Visit visit = new Visit();
+        visit.setPet(pet);
+        visit.setDate(visitDate);
+        visit.setDescription(description);
+        return visit;
+    }
+
+    private static ResponseEntity<Map<String, Object>> ok(int imported) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("imported", imported);
+        return new ResponseEntity<Map<String, Object>>(body, HttpStatus.OK);
+    }
+
+    private static ResponseEntity<Map<String, Object>> badRequest(int imported, String error) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("imported", imported);
+        body.put("error", error);
+        return new ResponseEntity<Map<String, Object>>(body, HttpStatus.BAD_REQUEST);
+    }
+
+}
@@ -0,0 +1,58 @@
+<!DOCTYPE html>
+<!--
+    Copyright 2002-2013 the original author or authors.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+-->
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+
+<html lang="en">
+
+<jsp:include page="../fragments/headTag.jsp"/>
+
+<body>
+<div class="container">
+    <jsp:include page="../fragments/bodyHeader.jsp"/>
+
+    <h2>Slowest SQL Statements</h2>
+
+    <p>Statement times: <c:out value="${statementTimes}"/></p>
+    <p>Statements per request: <c:out value="${statementsPerRequest}"/></p>
+
+    <table class="table table-striped">
+        <thead>
+        <tr>
+            <th>Time (ms)</th>
+            <th>Rows</th>
+            <th>Binds</th>
+            <th>Request</th>
+            <th>SQL</th>
+        </tr>
+        </thead>
+        <c:forEach var="statement" items="${statements}">
+            <tr>
+                <td><fmt:formatNumber value="${statement.elapsedMillis}" minFractionDigits="3" maxFractionDigits="3"/></td>
+                <td><c:out value="${statement.rowCount}"/></td>
+                <td><c:out value="${statement.bindCount}"/></td>
+                <td><c:out value="${statement.request}"/></td>
+                <td><code><c:out value="${statement.sql}"/></code></td>
+            </tr>
+        </c:forEach>
+    </table>
+
+    <jsp:include page="../fragments/footer.jsp"/>
+</div>
+</body>
+
+</html>
@@ -45,12 +45,31 @@
         <datatables:column title="City" property="city"/>
         <datatables:column title="Telephone" property="telephone"/>
         <datatables:column title="Pets" cssStyle="width: 100px;">
-            <c:forEach var="pet" items="${owner.pets}">
-                <c:out value="${pet.name}"/>
+            <c:forEach var="petName" items="${owner.petNames}">
+                <c:out value="${petName}"/>
             </c:forEach>
         </datatables:column>
         <datatables:export type="pdf" cssClass="btn btn-small" />
     </datatables:table>
+
+    <c:if test="${not firstPage or not empty nextOwner}">
+        <ul class="pager">
+            <c:if test="${not firstPage}">
+                <spring:url value="/owners.html" var="firstUrl">
+                    <spring:param name="lastName" value="${param.lastName}"/>
+                </spring:url>
+                <li class="previous"><a href="${fn:escapeXml(firstUrl)}">&larr; First</a></li>
+            </c:if>
+            <c:if test="${not empty nextOwner}">
+                <spring:url value="/owners.html" var="nextUrl">
+                    <spring:param name="lastName" value="${param.lastName}"/>
+                    <spring:param name="afterLastName" value="${nextOwner.lastName}"/>
+                    <spring:param name="afterId" value="${nextOwner.id}"/>
+                </spring:url>
+                <li class="next"><a href="${fn:escapeXml(nextUrl)}">Next &rarr;</a></li>
+            </c:if>
+        </ul>
+    </c:if>
     
     <jsp:include page="../fragments/footer.jsp"/>
 
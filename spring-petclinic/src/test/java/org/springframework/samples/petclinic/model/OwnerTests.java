@@ -16,7 +16,13 @@
 package org.springframework.samples.petclinic.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
 
 import org.junit.Test;
 import org.springframework.transaction.annotation.Transactional;
@@ -41,4 +47,59 @@ public class OwnerTests {
         assertEquals(fido, owner.getPet("fido"));
     }
 
+    @Test
+    public void petsSortedByNameUntilOneIsAdded() {
+        Owner owner = new Owner();
+        owner.addPet(createPet("leo"));
+        owner.addPet(createPet("Basil"));
+        List<Pet> pets = owner.getPets();
+        assertEquals("Basil", pets.get(0).getName());
+        assertEquals("leo", pets.get(1).getName());
+        assertSame(pets, owner.getPets());
+
+        owner.addPet(createPet("Jewel"));
+        assertNotSame(pets, owner.getPets());
+        assertEquals("Jewel", owner.getPets().get(1).getName());
+    }
+
+    @Test
+    public void visitsMostRecentFirst() {
+        Pet pet = createPet("Basil");
+        Visit older = new Visit();
+        older.setDate(new DateTime(2013, 1, 1, 0, 0));
+        Visit newer = new Visit();
+        newer.setDate(new DateTime(2013, 3, 1, 0, 0));
+        pet.addVisit(older);
+        pet.addVisit(newer);
+        assertSame(newer, pet.getVisits().get(0));
+        assertSame(older, pet.getVisits().get(1));
+    }
+
+    @Test
+    public void sortedAgainWhenTheSortKeyChanges() {
+        Owner owner = new Owner();
+        Pet leo = createPet("leo");
+        owner.addPet(leo);
+        owner.addPet(createPet("Basil"));
+        assertSame(leo, owner.getPets().get(1));
+        leo.setName("Aldo");
+        assertSame(leo, owner.getPets().get(0));
+
+        Visit first = new Visit();
+        first.setDate(new DateTime(2013, 1, 1, 0, 0));
+        Visit second = new Visit();
+        second.setDate(new DateTime(2013, 3, 1, 0, 0));
+        leo.addVisit(first);
+        leo.addVisit(second);
+        assertSame(second, leo.getVisits().get(0));
+        first.setDate(new DateTime(2013, 5, 1, 0, 0));
+        assertSame(first, leo.getVisits().get(0));
+    }
+
+    private static Pet createPet(String name) {
+        Pet pet = new Pet();
+        pet.setName(name);
+        return pet;
+    }
+
 }
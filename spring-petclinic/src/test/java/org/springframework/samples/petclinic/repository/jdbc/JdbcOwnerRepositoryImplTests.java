@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.repository.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.util.ReferenceDataCache;
+import org.springframework.samples.petclinic.util.SampleDatabase;
+
+/**
+ * Checks the number of statements issued by {@link JdbcOwnerRepositoryImpl#findByLastName} with and without batch
+ * loading of pets and visits.
+ */
+public class JdbcOwnerRepositoryImplTests {
+
+    @Rule
+    public SampleDatabase database = new SampleDatabase();
+
+    private StatementCountingDataSource dataSource;
+
+    private JdbcOwnerRepositoryImpl ownerRepository;
+
+    @Before
+    public void setUp() {
+        this.dataSource = new StatementCountingDataSource(this.database.getDataSource());
+        // pet types come from the reference data cache, whose queries are not counted
+        ReferenceDataCache referenceDataCache = new ReferenceDataCache(this.database.getDataSource());
+        this.ownerRepository = new JdbcOwnerRepositoryImpl(this.dataSource,
+                new NamedParameterJdbcTemplate(this.dataSource), new JdbcVisitRepositoryImpl(this.dataSource),
+                referenceDataCache);
+    }
+
+    @Test
+    public void findByLastNameWithBatchLoading() {
+        this.ownerRepository.setBatchLoading(true);
+        Collection<Owner> owners = this.ownerRepository.findByLastName("");
+        // owners, pets, visits
+        assertEquals(3, this.dataSource.getStatementCount());
+        assertOwnersFullyLoaded(owners);
+    }
+
+    @Test
+    public void findByLastNameWithBatchLoadingInSmallChunks() {
+        this.ownerRepository.setBatchLoading(true);
+        this.ownerRepository.setBatchSize(4);
+        Collection<Owner> owners = this.ownerRepository.findByLastName("");
+        // owners (in id order), then one pets query for each of the 3 chunks of owners (1-4, 5-8 and 9-10, with 5, 5
+        // and 3 pets), then visits for each chunk of at most 4 of those pets
+        assertEquals(1 + 3 + (2 + 2 + 1), this.dataSource.getStatementCount());
+        assertOwnersFullyLoaded(owners);
+    }
+
+    @Test
+    public void findByLastNameWithoutBatchLoading() {
+        this.ownerRepository.setBatchLoading(false);
+        Collection<Owner> owners = this.ownerRepository.findByLastName("");
+        // owners, then pets for each of the 10 owners, then visits for each of the 13 pets
+        assertEquals(1 + 10 + 13, this.dataSource.getStatementCount());
+        assertOwnersFullyLoaded(owners);
+    }
+
+    private void assertOwnersFullyLoaded(Collection<Owner> owners) {
+        assertEquals(10, owners.size());
+        int pets = 0;
+        int visits = 0;
+        for (Owner owner : owners) {
+            for (Pet pet : owner.getPets()) {
+                assertTrue(pet.getType() != null);
+                pets++;
+                visits += pet.getVisits().size();
+            }
+        }
+        assertEquals(13, pets);
+        assertEquals(4, visits);
+    }
+
+
+    /**
+     * {@link DataSource} decorator counting the statements prepared or created on its connections.
+     */
+    private static class StatementCountingDataSource extends DelegatingDataSource {
+
+        private final AtomicInteger statementCount = new AtomicInteger();
+
+        public StatementCountingDataSource(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        public int getStatementCount() {
+            return this.statementCount.get();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            final Connection target = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            String name = method.getName();
+                            if (name.equals("prepareStatement") || name.equals("createStatement") ||
+                                    name.equals("prepareCall")) {
+                                statementCount.incrementAndGet();
+                            }
+                            try {
+                                return method.invoke(target, args);
+                            } catch (InvocationTargetException ex) {
+                                throw ex.getTargetException();
+                            }
+                        }
+                    });
+        }
+    }
+
+}
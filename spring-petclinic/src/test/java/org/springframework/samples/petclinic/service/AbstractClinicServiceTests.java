@@ -17,19 +17,29 @@ package org.springframework.samples.petclinic.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.joda.time.DateTime;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.samples.petclinic.model.ClinicStatistics;
 import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
 import org.springframework.samples.petclinic.model.Pet;
 import org.springframework.samples.petclinic.model.PetType;
+import org.springframework.samples.petclinic.model.Specialty;
 import org.springframework.samples.petclinic.model.Vet;
 import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.model.VisitSearchResult;
 import org.springframework.samples.petclinic.util.EntityUtils;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.transaction.annotation.Transactional;
@@ -67,6 +77,116 @@ public abstract class AbstractClinicServiceTests {
         assertEquals(0, owners.size());
     }
 
+    @Test
+    @Transactional
+    public void findOwnersPage() {
+        Page<Owner> page = this.clinicService.findOwnerByLastName("", new PageRequest(0, 4));
+        assertEquals(10, page.getTotalElements());
+        assertEquals(3, page.getTotalPages());
+        assertEquals(4, page.getContent().size());
+        assertEquals("Black", page.getContent().get(0).getLastName());
+        assertEquals(2, page.getContent().get(2).getId().intValue());
+        assertEquals(4, page.getContent().get(3).getId().intValue());
+        assertEquals(1, page.getContent().get(0).getPets().size());
+
+        page = this.clinicService.findOwnerByLastName("", new PageRequest(2, 4));
+        assertEquals(2, page.getContent().size());
+        assertEquals("Rodriquez", page.getContent().get(0).getLastName());
+        assertEquals("Schroeder", page.getContent().get(1).getLastName());
+
+        page = this.clinicService.findOwnerByLastName("Davis", new PageRequest(1, 4));
+        assertEquals(2, page.getTotalElements());
+        assertEquals(0, page.getContent().size());
+    }
+
+    @Test
+    @Transactional
+    public void findOwnerSummaries() {
+        List<OwnerSummary> summaries = this.clinicService.findOwnerSummariesByLastName("", null, null, 4);
+        assertEquals(4, summaries.size());
+        assertEquals("Black", summaries.get(0).getLastName());
+        assertEquals("Coleman", summaries.get(1).getLastName());
+        assertEquals(2, summaries.get(1).getPetNames().size());
+        assertEquals("Max", summaries.get(1).getPetNames().get(0));
+        assertEquals("Samantha", summaries.get(1).getPetNames().get(1));
+        assertEquals(2, summaries.get(2).getId().intValue());
+
+        // resume right after the first Davis: the second Davis must not be skipped
+        summaries = this.clinicService.findOwnerSummariesByLastName("", "Davis", 2, 4);
+        assertEquals(4, summaries.size());
+        assertEquals(4, summaries.get(0).getId().intValue());
+        assertEquals("Escobito", summaries.get(1).getLastName());
+        assertEquals("Franklin", summaries.get(3).getLastName());
+
+        summaries = this.clinicService.findOwnerSummariesByLastName("Davis", "Davis", 4, 4);
+        assertEquals(0, summaries.size());
+    }
+
+    @Test
+    @Transactional
+    public void countOwnersAndSuggestLastNames() {
+        assertEquals(2, this.clinicService.countOwnersByLastName("Davis"));
+        assertEquals(10, this.clinicService.countOwnersByLastName(""));
+        List<String> lastNames = this.clinicService.findOwnerLastNames("E", 10);
+        assertEquals(2, lastNames.size());
+        assertEquals("Escobito", lastNames.get(0));
+        assertEquals("Estaban", lastNames.get(1));
+    }
+
+    @Test
+    public void findVisitsByDescription() {
+        List<VisitSearchResult> results = this.clinicService.findVisitsByDescription("Spayed", 10);
+        assertEquals(1, results.size());
+        VisitSearchResult result = results.get(0);
+        assertEquals(4, result.getVisitId().intValue());
+        assertEquals("2013-01-04", result.getDate());
+        assertEquals("Samantha", result.getPetName());
+        assertEquals("cat", result.getPetType());
+        assertEquals("Coleman", result.getOwnerLastName());
+        assertTrue(result.getScore() > 0);
+        assertTrue(this.clinicService.findVisitsByDescription("worms", 10).isEmpty());
+    }
+
+    @Test
+    public void getStatistics() {
+        ClinicStatistics statistics = this.clinicService.getStatistics();
+        assertTrue(statistics.getVisitCount() >= 4);
+        assertTrue(statistics.getPetCount() >= 13);
+        assertTrue(statistics.getVisitsPerMonth().get("2013-01") >= 4);
+        assertTrue(statistics.getPetsPerType().get("cat") >= 4);
+        assertEquals("Coleman", statistics.getBusiestOwners().get(0).getLastName());
+    }
+
+    @Test
+    public void exportClinic() throws Exception {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        this.clinicService.exportClinic(new ClinicExportHandler() {
+            @Override
+            public void exportRow(Object[] values) throws IOException {
+                rows.add(values.clone());
+            }
+        });
+        Object[] first = rows.get(0);
+        assertEquals(ClinicExportHandler.COLUMNS.length, first.length);
+        assertEquals(1, ((Number) first[0]).intValue());
+        assertEquals("Franklin", first[2]);
+        assertEquals("Leo", first[7]);
+        assertEquals("2010-09-07", first[8]);
+        assertEquals("cat", first[9]);
+        assertNull(first[10]);
+
+        // Samantha (pet 7) has at least two visits, exported in id order
+        List<Object[]> samantha = new ArrayList<Object[]>();
+        for (Object[] row : rows) {
+            if (row[6] != null && ((Number) row[6]).intValue() == 7) {
+                samantha.add(row);
+            }
+        }
+        assertTrue(samantha.size() >= 2);
+        assertEquals("2013-01-01", samantha.get(0)[11]);
+        assertEquals("spayed", samantha.get(1)[12]);
+    }
+
     @Test
     public void findSingleOwner() {
         Owner owner1 = this.clinicService.findOwnerById(1);
@@ -77,6 +197,23 @@ public abstract class AbstractClinicServiceTests {
         assertEquals(owner1.getPets().size(), 1);
     }
 
+    @Test
+    public void findOwnerAndPetReturnCopies() {
+        Owner owner = this.clinicService.findOwnerById(6);
+        int petCount = owner.getPets().size();
+        owner.setFirstName("Changed");
+        owner.addPet(new Pet());
+        owner = this.clinicService.findOwnerById(6);
+        assertEquals("Jean", owner.getFirstName());
+        assertEquals(petCount, owner.getPets().size());
+
+        Pet pet = this.clinicService.findPetById(7);
+        assertEquals("Samantha", pet.getName());
+        assertEquals(6, pet.getOwner().getId().intValue());
+        pet.setName("Changed");
+        assertEquals("Samantha", this.clinicService.findPetById(7).getName());
+    }
+
     @Test
     @Transactional
     public void insertOwner() {
@@ -159,6 +296,20 @@ public abstract class AbstractClinicServiceTests {
 	    assertEquals(old + "X", pet7.getName());
 	}
 
+	@Test
+	@Transactional
+	public void insertVet() {
+	    Specialty surgery = new Specialty();
+	    surgery.setId(2);
+	    surgery.setName("surgery");
+	    Vet vet = new Vet();
+	    vet.setFirstName("Sam");
+	    vet.setLastName("Schultz");
+	    vet.addSpecialty(surgery);
+	    this.clinicService.saveVet(vet);
+	    assertNotNull("Vet Id should have been generated", vet.getId());
+	}
+
 	@Test
 	public void findVets() {
 	    Collection<Vet> vets = this.clinicService.findVets();
@@ -190,5 +341,22 @@ public abstract class AbstractClinicServiceTests {
 	    assertNotNull("Visit Id should have been generated", visit.getId());
 	}
 
+	@Test
+	@Transactional
+	public void insertVisits() {
+	    int found = this.clinicService.findPetById(7).getVisits().size();
+	    List<Visit> visits = new ArrayList<Visit>();
+	    for (int i = 0; i < 3; i++) {
+	        Pet pet = new Pet();
+	        pet.setId(7);
+	        Visit visit = new Visit();
+	        visit.setPet(pet);
+	        visit.setDescription("imported " + i);
+	        visits.add(visit);
+	    }
+	    this.clinicService.saveVisits(visits);
+	    assertEquals(found + 3, this.clinicService.findPetById(7).getVisits().size());
+	}
+
 
 }
@@ -15,7 +15,27 @@
  */
 package org.springframework.samples.petclinic.service;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.util.SecondLevelCacheMonitor;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -34,4 +54,105 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 @ActiveProfiles("jpa")
 public class ClinicServiceJpaTests extends AbstractClinicServiceTests {
 
+    @Autowired
+    private SecondLevelCacheMonitor secondLevelCacheMonitor;
+
+    @Autowired
+    private OwnersCache ownersCache;
+
+    @Autowired
+    private DataSource dataSource;
+
+    // not @Transactional: each call runs in its own transaction, so the second one can only be served by the cache
+    @Test
+    public void findOwnerFromSecondLevelCache() {
+        this.clinicService.findOwnerById(1);
+        // otherwise the owner would be served by the service layer without reaching Hibernate
+        this.ownersCache.clear();
+        long hits = this.secondLevelCacheMonitor.getHitCount();
+        Owner owner = this.clinicService.findOwnerById(1);
+        assertTrue(this.secondLevelCacheMonitor.getHitCount() > hits);
+        // pets are initialized before the transaction ends
+        assertEquals(1, owner.getPets().size());
+    }
+
+    // not @Transactional either: with the owners cache disabled, the lazy pets and visits must still be loaded in a
+    // transaction of the service layer
+    @Test
+    public void findOwnerAndPetWithoutOwnersCache() {
+        int maxOwners = this.ownersCache.getMaxOwners();
+        this.ownersCache.setMaxOwners(0);
+        try {
+            Owner owner = this.clinicService.findOwnerById(6);
+            assertEquals(2, owner.getPets().size());
+            for (Pet pet : owner.getPets()) {
+                assertFalse(pet.getVisits().isEmpty());
+            }
+            Pet pet = this.clinicService.findPetById(7);
+            assertEquals("Coleman", pet.getOwner().getLastName());
+            assertFalse(pet.getVisits().isEmpty());
+            assertEquals(0, this.ownersCache.getOwnerCount());
+        } finally {
+            this.ownersCache.setMaxOwners(maxOwners);
+        }
+    }
+
+    // not @Transactional: the group and the visits saved one by one after it commit or roll back on the writer thread
+    @Test
+    public void writeBehindSavesTheValidVisitsOfAFailedGroupOnce() throws Exception {
+        VisitWriteBehindQueue queue = new VisitWriteBehindQueue(this.clinicService);
+        queue.setEnabled(true);
+        queue.setMaxBatchSize(3);
+        queue.setMaxDelayMillis(1000);
+        queue.afterPropertiesSet();
+        Future<Visit> first;
+        Future<Visit> invalid;
+        Future<Visit> last;
+        try {
+            first = queue.submit(newVisit(1, "write-behind group"));
+            // no such pet: the insert fails once the first visit of the group already has its id
+            invalid = queue.submit(newVisit(999, "write-behind group"));
+            last = queue.submit(newVisit(1, "write-behind group"));
+        } finally {
+            queue.destroy();
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(this.dataSource);
+        for (Visit visit : new Visit[]{first.get(5, TimeUnit.SECONDS), last.get(5, TimeUnit.SECONDS)}) {
+            assertEquals("write-behind group", jdbcTemplate.queryForObject(
+                    "SELECT description FROM visits WHERE id = ?", String.class, visit.getId()));
+        }
+        try {
+            invalid.get(5, TimeUnit.SECONDS);
+            fail("DataIntegrityViolationException expected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof DataIntegrityViolationException);
+        }
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM visits WHERE description = 'write-behind group'", Integer.class).intValue());
+        assertEquals(1, queue.getFailedCount());
+    }
+
+    @Test
+    public void findOwnersFromQueryCache() {
+        this.clinicService.findOwnerByLastName("Davis");
+        long hits = this.secondLevelCacheMonitor.getQueryCacheHitCount();
+        Collection<Owner> owners = this.clinicService.findOwnerByLastName("Davis");
+        assertTrue(this.secondLevelCacheMonitor.getQueryCacheHitCount() > hits);
+        assertEquals(2, owners.size());
+        for (Owner owner : owners) {
+            assertTrue(owner.getPets().size() > 0);
+        }
+    }
+
+
+    private static Visit newVisit(int petId, String description) {
+        Pet pet = new Pet();
+        pet.setId(petId);
+        Visit visit = new Visit();
+        visit.setPet(pet);
+        visit.setDescription(description);
+        return visit;
+    }
+
 }
\ No newline at end of file
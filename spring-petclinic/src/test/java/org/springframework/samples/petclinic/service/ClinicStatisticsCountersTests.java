@@ -0,0 +1,189 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.samples.petclinic.model.ClinicStatistics;
+import org.springframework.samples.petclinic.model.ClinicStatistics.OwnerActivity;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.PetType;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.util.SampleDatabase;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests for {@link ClinicStatisticsCounters}.
+ */
+public class ClinicStatisticsCountersTests {
+
+    @Rule
+    public SampleDatabase database = new SampleDatabase();
+
+    private ClinicStatisticsCounters counters;
+
+    @Before
+    public void setUp() {
+        this.counters = new ClinicStatisticsCounters(this.database.getDataSource(),
+                new DataSourceTransactionManager(this.database.getDataSource()));
+        this.counters.setBusiestOwnerCount(2);
+    }
+
+    @Test
+    public void computesCountersFromTheTables() {
+        assertEquals(-1, this.counters.getVisitCount());
+        ClinicStatistics statistics = this.counters.getStatistics();
+        assertEquals(4, statistics.getVisitCount());
+        assertEquals(13, statistics.getPetCount());
+        assertEquals(Collections.singletonMap("2013-01", 4), statistics.getVisitsPerMonth());
+        assertEquals(Arrays.asList("bird", "cat", "dog", "hamster", "lizard", "snake"),
+                Arrays.asList(statistics.getPetsPerType().keySet().toArray()));
+        assertEquals(4, statistics.getPetsPerType().get("cat").intValue());
+        assertEquals(1, statistics.getBusiestOwners().size());
+        OwnerActivity coleman = statistics.getBusiestOwners().get(0);
+        assertEquals(6, coleman.getOwnerId());
+        assertEquals("Coleman", coleman.getLastName());
+        assertEquals(4, coleman.getVisitCount());
+
+        assertSame(statistics, this.counters.getStatistics());
+        assertEquals(1, this.counters.getLoadCount());
+    }
+
+    @Test
+    public void addsSavedVisitsOnceCommitted() {
+        ClinicStatistics before = this.counters.getStatistics();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            this.counters.visitsSavedAfterCommit(Arrays.asList(newVisit(1, "2013-02-10"), newVisit(2, "2013-02-11"),
+                    newVisit(2, "2013-01-31")));
+            assertSame(before, this.counters.getStatistics());
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        ClinicStatistics after = this.counters.getStatistics();
+        assertNotSame(before, after);
+        assertEquals(7, after.getVisitCount());
+        assertEquals(5, after.getVisitsPerMonth().get("2013-01").intValue());
+        assertEquals(2, after.getVisitsPerMonth().get("2013-02").intValue());
+        List<OwnerActivity> busiest = after.getBusiestOwners();
+        assertEquals(2, busiest.size());
+        assertEquals("Coleman", busiest.get(0).getLastName());
+        assertEquals(2, busiest.get(1).getOwnerId());
+        assertEquals(2, busiest.get(1).getVisitCount());
+        assertEquals(1, this.counters.getLoadCount());
+    }
+
+    @Test
+    public void dropsVisitsAlreadyReadByALaterLoad() {
+        this.counters.getStatistics();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            this.counters.visitsSavedAfterCommit(Collections.singleton(newVisit(1, "2013-02-10")));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.beforeCommit(false);
+            }
+            new JdbcTemplate(this.database.getDataSource()).update(
+                    "INSERT INTO visits (pet_id, visit_date, description) VALUES (1, '2013-02-10', 'rabies shot')");
+            // computed again after the commit, but before the after-commit callback runs
+            this.counters.rebuild();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        ClinicStatistics statistics = this.counters.getStatistics();
+        assertEquals(5, statistics.getVisitCount());
+        assertEquals(1, statistics.getVisitsPerMonth().get("2013-02").intValue());
+        assertEquals(2, this.counters.getLoadCount());
+    }
+
+    @Test
+    public void movesPetsBetweenTypes() {
+        this.counters.getStatistics();
+        // Basil (pet 2) is a hamster, and becomes a dog
+        this.counters.petSavedAfterCommit(newPet(2, 2, "dog"));
+        this.counters.petSavedAfterCommit(newPet(14, 1, "snake"));
+        this.counters.visitsSavedAfterCommit(Collections.singleton(newVisit(14, "2013-03-01")));
+        Owner owner = new Owner();
+        owner.setId(1);
+        owner.setFirstName("George");
+        owner.setLastName("Franklyn");
+        this.counters.ownerSavedAfterCommit(owner);
+
+        ClinicStatistics statistics = this.counters.getStatistics();
+        assertEquals(14, statistics.getPetCount());
+        assertNull(statistics.getPetsPerType().get("hamster"));
+        assertEquals(5, statistics.getPetsPerType().get("dog").intValue());
+        assertEquals(2, statistics.getPetsPerType().get("snake").intValue());
+        assertEquals("Franklyn", statistics.getBusiestOwners().get(1).getLastName());
+    }
+
+    @Test
+    public void rebuildPicksUpChangesMadeInTheDatabase() {
+        assertEquals(4, this.counters.getStatistics().getVisitCount());
+        new JdbcTemplate(this.database.getDataSource()).update("DELETE FROM visits WHERE pet_id = 8");
+        assertEquals(4, this.counters.getStatistics().getVisitCount());
+
+        this.counters.rebuild();
+        assertEquals(2, this.counters.getStatistics().getVisitCount());
+        assertEquals(2, this.counters.getStatistics().getBusiestOwners().get(0).getVisitCount());
+        assertEquals(2, this.counters.getLoadCount());
+    }
+
+
+    private static Visit newVisit(int petId, String date) {
+        Visit visit = new Visit();
+        visit.setPet(newPet(petId, null, null));
+        visit.setDate(new DateTime(date));
+        return visit;
+    }
+
+    private static Pet newPet(int petId, Integer ownerId, String type) {
+        Pet pet = new Pet();
+        pet.setId(petId);
+        if (ownerId != null) {
+            Owner owner = new Owner();
+            owner.setId(ownerId);
+            owner.addPet(pet);
+        }
+        if (type != null) {
+            PetType petType = new PetType();
+            petType.setName(type);
+            pet.setType(petType);
+        }
+        return pet;
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.samples.petclinic.util.SampleDatabase;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests for {@link OwnerLastNameIndex}.
+ */
+public class OwnerLastNameIndexTests {
+
+    @Rule
+    public SampleDatabase database = new SampleDatabase();
+
+    private OwnerLastNameIndex index;
+
+    @Before
+    public void setUp() {
+        this.index = new OwnerLastNameIndex(this.database.getDataSource(),
+                new DataSourceTransactionManager(this.database.getDataSource()));
+    }
+
+    @Test
+    public void countsByPrefix() {
+        assertEquals(10, this.index.countByLastName(""));
+        assertEquals(2, this.index.countByLastName("E"));
+        assertEquals(2, this.index.countByLastName("Davis"));
+        assertEquals(0, this.index.countByLastName("Daviss"));
+        assertEquals(0, this.index.countByLastName("davis"));
+        assertEquals(0, this.index.countByLastName("Zz"));
+        assertEquals(1, this.index.getLoadCount());
+    }
+
+    @Test
+    public void foldsCaseLikeACaseInsensitiveCollation() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(this.database.getDataSource());
+        jdbcTemplate.update("ALTER TABLE owners ALTER COLUMN last_name SET DATA TYPE VARCHAR_IGNORECASE(30)");
+        jdbcTemplate.update("INSERT INTO owners VALUES (11, 'Anna', 'DAVIS', '12 Main St.', 'Madison', '6085550000')");
+        assertTrue(this.index.isAvailable());
+        assertEquals(3, this.index.countByLastName("davis"));
+        assertEquals(3, this.index.countByLastName("DAV"));
+        assertEquals(Arrays.asList("Davis"), this.index.findLastNames("d", 10));
+        assertEquals(1, this.index.countByLastName("davis", "Davis", 4));
+    }
+
+    @Test
+    public void unavailableUntilTheCollationIsKnown() {
+        // no last name whose case can be swapped to probe the database with
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(this.database.getDataSource());
+        jdbcTemplate.update("UPDATE owners SET last_name = '42'");
+        assertFalse(this.index.isAvailable());
+        jdbcTemplate.update("UPDATE owners SET last_name = 'Franklin' WHERE id = 1");
+        this.index.updateAfterCommit(1, "Franklin");
+        assertTrue(this.index.isAvailable());
+        assertEquals(1, this.index.countByLastName("Franklin"));
+        assertEquals(0, this.index.countByLastName("franklin"));
+        assertEquals(2, this.index.getLoadCount());
+    }
+
+    @Test
+    public void countsAfterAnOwner() {
+        assertEquals(1, this.index.countByLastName("Davis", "Davis", 2));
+        assertEquals(0, this.index.countByLastName("Davis", "Davis", 4));
+        assertEquals(8, this.index.countByLastName("", "Coleman", 6));
+    }
+
+    @Test
+    public void findsDistinctLastNames() {
+        assertEquals(Arrays.asList("Escobito", "Estaban"), this.index.findLastNames("Es", 10));
+        assertEquals(Arrays.asList("Black", "Coleman", "Davis"), this.index.findLastNames("", 3));
+    }
+
+    @Test
+    public void updatesOnceCommitted() {
+        assertEquals(2, this.index.countByLastName("Davis"));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            this.index.updateAfterCommit(2, "Franklin");
+            this.index.updateAfterCommit(11, "Davies");
+            assertFalse(this.index.isAvailable());
+            assertEquals(2, this.index.countByLastName("Davis"));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(this.index.isAvailable());
+        assertEquals(1, this.index.countByLastName("Davis"));
+        assertEquals(2, this.index.countByLastName("Franklin"));
+        assertEquals(Arrays.asList("Davies", "Davis"), this.index.findLastNames("Dav", 10));
+        assertEquals(11, this.index.getSize());
+    }
+
+    @Test
+    public void verifyDetectsChangesMadeInTheDatabase() {
+        this.index.countByLastName("");
+        assertTrue(this.index.verify().startsWith("The index matches"));
+
+        new JdbcTemplate(this.database.getDataSource()).update("UPDATE owners SET last_name = 'Davies' WHERE id = 2");
+        assertEquals("The index differs from the table: 1 owner(s) missing and 1 outdated or unknown; " +
+                "call rebuild to fix it", this.index.verify());
+
+        this.index.rebuild();
+        assertEquals(1, this.index.countByLastName("Davies"));
+        assertTrue(this.index.verify().startsWith("The index matches"));
+    }
+
+}
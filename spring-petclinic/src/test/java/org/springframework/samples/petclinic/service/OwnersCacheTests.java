@@ -0,0 +1,252 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.model.OwnerSummary;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.PetType;
+import org.springframework.samples.petclinic.repository.OwnerRepository;
+import org.springframework.samples.petclinic.repository.PetRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests for {@link OwnersCache}, backed by in-memory repositories that count their loads.
+ */
+public class OwnersCacheTests {
+
+    private StubRepositories repositories;
+
+    private OwnersCache cache;
+
+    @Before
+    public void setUp() {
+        this.repositories = new StubRepositories();
+        for (int ownerId = 1; ownerId <= 3; ownerId++) {
+            this.repositories.addOwner(ownerId, ownerId * 10, ownerId * 10 + 1);
+        }
+        this.cache = new OwnersCache(this.repositories.ownerRepository, this.repositories.petRepository,
+                new NoOpTransactionManager());
+    }
+
+    @Test
+    public void loadsOnceAndReturnsCopies() {
+        Owner owner = this.cache.getOwner(1);
+        owner.setFirstName("Changed");
+        Owner again = this.cache.getOwner(1);
+        assertNotSame(owner, again);
+        assertEquals("George", again.getFirstName());
+        assertEquals(2, again.getPets().size());
+        assertEquals(1, this.repositories.ownerLoads);
+        assertEquals(1, this.cache.getHitCount());
+    }
+
+    @Test
+    public void servesPetsFromTheAggregateOfTheirOwner() {
+        this.cache.getOwner(2);
+        Pet pet = this.cache.getPet(21);
+        assertEquals("pet21", pet.getName());
+        assertEquals(2, pet.getOwner().getId().intValue());
+        assertEquals(0, this.repositories.petLoads);
+
+        // an unknown pet brings in the aggregate of its owner, and its sibling with it
+        this.cache.getPet(30);
+        this.cache.getPet(31);
+        assertEquals(1, this.repositories.petLoads);
+        assertEquals(2, this.cache.getOwnerCount());
+    }
+
+    @Test
+    public void evictsTheOwnerOfAChangedPet() {
+        this.cache.getOwner(1);
+        this.cache.getOwner(2);
+        this.cache.evict(null, Collections.singleton(11));
+        this.cache.getOwner(1);
+        this.cache.getOwner(2);
+        assertEquals(3, this.repositories.ownerLoads);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedOwner() {
+        this.cache.setMaxOwners(2);
+        this.cache.getOwner(1);
+        this.cache.getOwner(2);
+        this.cache.getOwner(1);
+        this.cache.getOwner(3);
+        assertEquals(2, this.cache.getOwnerCount());
+        this.cache.getOwner(1);
+        assertEquals(3, this.repositories.ownerLoads);
+        this.cache.getOwner(2);
+        assertEquals(4, this.repositories.ownerLoads);
+        // the pets of an evicted owner are no longer found through the cache
+        this.cache.getPet(30);
+        assertEquals(1, this.repositories.petLoads);
+    }
+
+    @Test
+    public void doesNotStoreAnOwnerEvictedWhileLoading() {
+        this.repositories.evictWhileLoading = this.cache;
+        this.cache.getOwner(1);
+        this.repositories.evictWhileLoading = null;
+        this.cache.getOwner(1);
+        assertEquals(2, this.repositories.ownerLoads);
+    }
+
+    @Test
+    public void bypassedWithinTransactions() {
+        this.cache.getOwner(1);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            this.cache.getOwner(1);
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertEquals(2, this.repositories.ownerLoads);
+    }
+
+
+    private static class StubRepositories {
+
+        private final Map<Integer, Integer> ownerIdsByPetId = new HashMap<Integer, Integer>();
+
+        private final Map<Integer, Integer[]> petIdsByOwnerId = new HashMap<Integer, Integer[]>();
+
+        private final OwnerRepository ownerRepository = new StubOwnerRepository();
+
+        private final PetRepository petRepository = new StubPetRepository();
+
+        private int ownerLoads;
+
+        private int petLoads;
+
+        private OwnersCache evictWhileLoading;
+
+        private void addOwner(int ownerId, Integer... petIds) {
+            this.petIdsByOwnerId.put(ownerId, petIds);
+            for (Integer petId : petIds) {
+                this.ownerIdsByPetId.put(petId, ownerId);
+            }
+        }
+
+        private Owner createOwner(int id) {
+            Owner owner = new Owner();
+            owner.setId(id);
+            owner.setFirstName("George");
+            for (Integer petId : this.petIdsByOwnerId.get(id)) {
+                Pet pet = new Pet();
+                pet.setId(petId);
+                pet.setName("pet" + petId);
+                owner.addPet(pet);
+            }
+            return owner;
+        }
+
+
+        private class StubOwnerRepository implements OwnerRepository {
+
+            @Override
+            public Owner findById(int id) {
+                ownerLoads++;
+                if (evictWhileLoading != null) {
+                    evictWhileLoading.evict(id, Collections.<Integer>emptyList());
+                }
+                return createOwner(id);
+            }
+
+            @Override
+            public Collection<Owner> findByLastName(String lastName) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Page<Owner> findByLastName(String lastName, Pageable pageable) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<OwnerSummary> findSummariesByLastName(String lastName, String afterLastName, Integer afterId,
+                                                              int maxResults) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void save(Owner owner) {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+
+        private class StubPetRepository implements PetRepository {
+
+            @Override
+            public Pet findById(int id) {
+                petLoads++;
+                Owner owner = createOwner(ownerIdsByPetId.get(id));
+                for (Pet pet : owner.getPets()) {
+                    if (pet.getId() == id) {
+                        return pet;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public List<PetType> findPetTypes() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void save(Pet pet) {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+
+
+    private static class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+
+}
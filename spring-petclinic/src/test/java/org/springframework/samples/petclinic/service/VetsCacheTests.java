@@ -0,0 +1,177 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.samples.petclinic.model.Vet;
+import org.springframework.samples.petclinic.repository.VetRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests for {@link VetsCache}, backed by a repository whose list of vets can be changed and whose loads can be held.
+ */
+public class VetsCacheTests {
+
+    private StubVetRepository vetRepository;
+
+    private VetsCache cache;
+
+    @Before
+    public void setUp() {
+        this.vetRepository = new StubVetRepository();
+        this.cache = new VetsCache(this.vetRepository, new NoOpTransactionManager());
+    }
+
+    @After
+    public void tearDown() {
+        this.cache.destroy();
+    }
+
+    @Test
+    public void loadsOnceUntilInvalidated() {
+        this.vetRepository.vetCount = 2;
+        assertEquals(2, this.cache.getVets().size());
+        this.vetRepository.vetCount = 3;
+        assertEquals(2, this.cache.getVets().size());
+        assertEquals(1, this.cache.getLoadCount());
+    }
+
+    @Test
+    public void reloadsOnNextCallAfterInvalidateWithoutRefreshAhead() {
+        this.cache.setRefreshAhead(false);
+        this.vetRepository.vetCount = 2;
+        this.cache.getVets();
+        this.vetRepository.vetCount = 3;
+        this.cache.invalidate();
+        assertEquals(3, this.cache.getVets().size());
+        assertEquals(2, this.cache.getLoadCount());
+    }
+
+    @Test
+    public void servesPreviousListWhileRefreshingAhead() throws Exception {
+        this.vetRepository.vetCount = 2;
+        this.cache.getVets();
+        this.vetRepository.vetCount = 3;
+        this.vetRepository.release = new CountDownLatch(1);
+        this.cache.invalidate();
+        // the reload is held by the repository: callers do not wait for it
+        assertEquals(2, this.cache.getVets().size());
+        this.vetRepository.release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.cache.getLoadCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, this.cache.getVets().size());
+    }
+
+    @Test
+    public void invalidatesOnlyOnceCommitted() {
+        this.cache.getVets();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            this.cache.invalidateAfterCommit();
+            assertEquals(0, this.cache.getVersion());
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            assertEquals(1, this.cache.getVersion());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void versionIsReadBeforeLoading() {
+        this.cache.setRefreshAhead(false);
+        this.vetRepository.invalidateWhileLoading = this.cache;
+        this.cache.getVets();
+        // the list loaded while it was invalidated is outdated, and reloaded on the next call
+        this.vetRepository.invalidateWhileLoading = null;
+        this.cache.getVets();
+        assertEquals(2, this.cache.getLoadCount());
+        assertTrue(this.cache.getVersion() > 0);
+    }
+
+
+    private static class StubVetRepository implements VetRepository {
+
+        private volatile int vetCount;
+
+        private volatile CountDownLatch release;
+
+        private volatile VetsCache invalidateWhileLoading;
+
+        @Override
+        public Collection<Vet> findAll() {
+            if (this.release != null) {
+                try {
+                    this.release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (this.invalidateWhileLoading != null) {
+                this.invalidateWhileLoading.invalidate();
+            }
+            List<Vet> vets = new ArrayList<Vet>();
+            for (int i = 1; i <= this.vetCount; i++) {
+                Vet vet = new Vet();
+                vet.setId(i);
+                vets.add(vet);
+            }
+            return vets;
+        }
+
+        @Override
+        public void save(Vet vet) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+
+    private static class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.model.Visit;
+import org.springframework.samples.petclinic.model.VisitSearchResult;
+import org.springframework.samples.petclinic.util.SampleDatabase;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests for {@link VisitSearchIndex}.
+ */
+public class VisitSearchIndexTests {
+
+    @Rule
+    public SampleDatabase database = new SampleDatabase();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private VisitSearchIndex index;
+
+    @Before
+    public void setUp() {
+        this.jdbcTemplate = new JdbcTemplate(this.database.getDataSource());
+        this.index = new VisitSearchIndex(this.database.getDataSource(),
+                new DataSourceTransactionManager(this.database.getDataSource()));
+    }
+
+    @Test
+    public void splitsWords() {
+        assertEquals(Arrays.asList("rabies", "shot", "2nd", "dose"), VisitSearchIndex.tokenize("Rabies shot (2nd dose)."));
+        assertTrue(VisitSearchIndex.tokenize(" - ").isEmpty());
+        assertTrue(VisitSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void findsVisitsWithTheirPetAndOwner() {
+        assertEquals(-1, this.index.getSize());
+        List<VisitSearchResult> results = this.index.search("RABIES", 10);
+        assertEquals(Arrays.asList(2, 1), visitIds(results));
+        assertEquals("Max", results.get(0).getPetName());
+        assertEquals("Samantha", results.get(1).getPetName());
+        assertEquals("Jean", results.get(1).getOwnerFirstName());
+        assertEquals("2013-01-01", results.get(1).getDate());
+        assertEquals(4, this.index.getSize());
+        assertEquals(4, this.index.getWordCount());
+        assertTrue(this.index.search("rabid", 10).isEmpty());
+        assertTrue(this.index.search("", 10).isEmpty());
+    }
+
+    @Test
+    public void ranksRareWordsAndShortDescriptionsFirst() {
+        this.jdbcTemplate.update("INSERT INTO visits (pet_id, visit_date, description) VALUES " +
+                "(1, '2013-02-01', 'checkup after the rabies shot, all fine')");
+        // "neutered" is rarer than "rabies", the short descriptions of visits 1 and 2 come before the one of visit 5,
+        // and the most recent of equally relevant visits comes first
+        assertEquals(Arrays.asList(3, 2, 1, 5), visitIds(this.index.search("rabies neutered", 10)));
+        assertEquals(Arrays.asList(3, 2), visitIds(this.index.search("rabies neutered", 2)));
+        assertEquals(Arrays.asList(5), visitIds(this.index.search("fine checkup", 10)));
+    }
+
+    @Test
+    public void updatesOnceCommitted() {
+        assertEquals(1, this.index.search("spayed", 10).size());
+        this.jdbcTemplate.update("INSERT INTO visits (pet_id, visit_date, description) VALUES " +
+                "(3, '2013-02-01', 'dental cleaning')");
+        this.jdbcTemplate.update("INSERT INTO visits (pet_id, visit_date, description) VALUES " +
+                "(4, '2013-02-02', 'dental x-ray')");
+
+        Visit cleaning = newVisit(3, "dental cleaning");
+        cleaning.setId(5);
+        // saved by a JDBC batch: no id, found again among the visits of pet 4
+        Visit xray = newVisit(4, "dental x-ray");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            this.index.updateAfterCommit(Arrays.asList(cleaning, xray));
+            assertTrue(this.index.search("dental", 10).isEmpty());
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(Arrays.asList(5, 6), visitIds(this.index.search("dental", 10)));
+        assertEquals(6, this.index.getSize());
+        assertEquals(1, this.index.getLoadCount());
+    }
+
+    @Test
+    public void replacesChangedDescriptions() {
+        assertEquals(1, this.index.search("neutered", 10).size());
+        this.jdbcTemplate.update("UPDATE visits SET description = 'castrated' WHERE id = 3");
+        Visit visit = newVisit(8, "castrated");
+        visit.setId(3);
+        this.index.updateAfterCommit(Collections.singleton(visit));
+        assertTrue(this.index.search("neutered", 10).isEmpty());
+        assertEquals(Arrays.asList(3), visitIds(this.index.search("castrated", 10)));
+        assertEquals(4, this.index.getSize());
+    }
+
+    @Test
+    public void rebuildPicksUpChangesMadeInTheDatabase() {
+        assertEquals(2, this.index.search("rabies", 10).size());
+        this.jdbcTemplate.update("UPDATE visits SET description = 'rabies booster' WHERE id = 4");
+        assertEquals(2, this.index.search("rabies", 10).size());
+
+        this.index.rebuild();
+        assertEquals(3, this.index.search("rabies", 10).size());
+        assertTrue(this.index.search("spayed", 10).isEmpty());
+        assertEquals(2, this.index.getLoadCount());
+    }
+
+
+    private static Visit newVisit(int petId, String description) {
+        Pet pet = new Pet();
+        pet.setId(petId);
+        Visit visit = new Visit();
+        visit.setPet(pet);
+        visit.setDate(new DateTime());
+        visit.setDescription(description);
+        return visit;
+    }
+
+    private static List<Integer> visitIds(List<VisitSearchResult> results) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (VisitSearchResult result : results) {
+            ids.add(result.getVisitId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.samples.petclinic.model.Visit;
+
+/**
+ * Tests for {@link VisitWriteBehindQueue}, against a {@link ClinicService} that records the groups of visits it saves.
+ */
+public class VisitWriteBehindQueueTests {
+
+    private final List<List<Visit>> savedGroups = Collections.synchronizedList(new ArrayList<List<Visit>>());
+
+    private volatile CountDownLatch writerGate;
+
+    private VisitWriteBehindQueue queue;
+
+    @Before
+    public void setUp() {
+        ClinicService clinicService = (ClinicService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ClinicService.class}, new InvocationHandler() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                        if (method.getName().equals("saveVisits")) {
+                            save(new ArrayList<Visit>((Collection<Visit>) args[0]));
+                            return null;
+                        }
+                        if (method.getName().equals("saveVisit")) {
+                            save(Collections.singletonList((Visit) args[0]));
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        this.queue = new VisitWriteBehindQueue(clinicService);
+        this.queue.setEnabled(true);
+        this.queue.setMaxBatchSize(10);
+        this.queue.setMaxDelayMillis(50);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        this.queue.destroy();
+    }
+
+    @Test
+    public void savesRightAwayWhenDisabled() throws Exception {
+        this.queue.setEnabled(false);
+        this.queue.afterPropertiesSet();
+        Visit visit = newVisit("rabies shot");
+        Future<Visit> future = this.queue.submit(visit);
+        assertTrue(future.isDone());
+        assertSame(visit, future.get());
+        assertEquals(1, this.savedGroups.size());
+        assertEquals(0, this.queue.getQueueDepth());
+    }
+
+    @Test
+    public void commitsWaitingVisitsInGroups() throws Exception {
+        this.queue.setQueueCapacity(100);
+        this.writerGate = new CountDownLatch(1);
+        this.queue.afterPropertiesSet();
+        List<Future<Visit>> futures = new ArrayList<Future<Visit>>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(this.queue.submit(newVisit("checkup " + i)));
+        }
+        this.writerGate.countDown();
+        for (Future<Visit> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        int saved = 0;
+        for (List<Visit> group : this.savedGroups) {
+            assertTrue("group of " + group.size(), group.size() <= 10);
+            saved += group.size();
+        }
+        assertEquals(25, saved);
+        // the first group is taken while the others are still being submitted, the rest are full
+        assertTrue(this.savedGroups.size() + " groups", this.savedGroups.size() <= 4);
+        assertEquals(25, this.queue.getCommittedCount());
+        assertTrue(this.queue.getMaxQueueDepth() >= 15);
+        assertTrue(this.queue.getBatchSizeStatistics(), this.queue.getBatchSizeStatistics().contains("max=10"));
+    }
+
+    @Test
+    public void failsOnlyTheVisitsThatCannotBeSaved() throws Exception {
+        this.queue.setQueueCapacity(100);
+        this.writerGate = new CountDownLatch(1);
+        this.queue.afterPropertiesSet();
+        Future<Visit> first = this.queue.submit(newVisit("rabies shot"));
+        Future<Visit> invalid = this.queue.submit(newVisit(null));
+        Future<Visit> last = this.queue.submit(newVisit("spayed"));
+        this.writerGate.countDown();
+
+        assertEquals("rabies shot", first.get(5, TimeUnit.SECONDS).getDescription());
+        assertEquals("spayed", last.get(5, TimeUnit.SECONDS).getDescription());
+        try {
+            invalid.get(5, TimeUnit.SECONDS);
+            fail("DataIntegrityViolationException expected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof DataIntegrityViolationException);
+        }
+        assertEquals(1, this.queue.getFailedCount());
+        assertEquals(2, this.queue.getCommittedCount());
+    }
+
+    @Test
+    public void rejectsVisitsWhenTheQueueStaysFull() throws Exception {
+        this.queue.setQueueCapacity(1);
+        this.queue.setMaxBatchSize(1);
+        this.queue.setOfferTimeoutMillis(10);
+        this.writerGate = new CountDownLatch(1);
+        this.queue.afterPropertiesSet();
+        List<Future<Visit>> futures = new ArrayList<Future<Visit>>();
+        try {
+            // one visit held by the writer, then one waiting in the queue
+            futures.add(this.queue.submit(newVisit("checkup 1")));
+            while (this.queue.getQueueDepth() > 0) {
+                Thread.sleep(1);
+            }
+            futures.add(this.queue.submit(newVisit("checkup 2")));
+            this.queue.submit(newVisit("checkup 3"));
+            fail("TaskRejectedException expected");
+        } catch (TaskRejectedException ex) {
+            assertEquals(1, this.queue.getRejectedCount());
+        } finally {
+            this.writerGate.countDown();
+        }
+        assertEquals(2, futures.size());
+        for (Future<Visit> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void writesQueuedVisitsBeforeStopping() throws Exception {
+        this.queue.setQueueCapacity(100);
+        this.writerGate = new CountDownLatch(1);
+        this.queue.afterPropertiesSet();
+        List<Future<Visit>> futures = new ArrayList<Future<Visit>>();
+        for (int i = 0; i < 15; i++) {
+            futures.add(this.queue.submit(newVisit("checkup " + i)));
+        }
+        this.writerGate.countDown();
+        this.queue.destroy();
+        for (Future<Visit> future : futures) {
+            assertTrue(future.isDone());
+        }
+        assertEquals(15, this.queue.getCommittedCount());
+    }
+
+    @Test
+    public void failsVisitsStillQueuedWhenTheWriterDoesNotStopInTime() throws Exception {
+        this.queue.setQueueCapacity(100);
+        this.queue.setMaxBatchSize(1);
+        this.queue.setStopTimeoutMillis(100);
+        this.writerGate = new CountDownLatch(1);
+        this.queue.afterPropertiesSet();
+        Future<Visit> taken = this.queue.submit(newVisit("checkup 1"));
+        while (this.queue.getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+        Future<Visit> queued = this.queue.submit(newVisit("checkup 2"));
+        try {
+            this.queue.destroy();
+            try {
+                queued.get(5, TimeUnit.SECONDS);
+                fail("TaskRejectedException expected");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof TaskRejectedException);
+            }
+            assertEquals(1, this.queue.getFailedCount());
+        } finally {
+            this.writerGate.countDown();
+        }
+        // the visit the writer had already taken is still saved
+        assertEquals("checkup 1", taken.get(5, TimeUnit.SECONDS).getDescription());
+    }
+
+    @Test
+    public void stopsWaitingForAVisitThatIsNotSavedInTime() throws Exception {
+        this.queue.setSaveTimeoutMillis(50);
+        this.writerGate = new CountDownLatch(1);
+        this.queue.afterPropertiesSet();
+        try {
+            this.queue.save(newVisit("checkup"));
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        } finally {
+            this.writerGate.countDown();
+        }
+    }
+
+
+    private void save(List<Visit> visits) throws InterruptedException {
+        CountDownLatch gate = this.writerGate;
+        if (gate != null) {
+            gate.await(5, TimeUnit.SECONDS);
+        }
+        for (Visit visit : visits) {
+            if (visit.getDescription() == null) {
+                throw new DataIntegrityViolationException("description is null");
+            }
+        }
+        this.savedGroups.add(visits);
+    }
+
+    private static Visit newVisit(String description) {
+        Visit visit = new Visit();
+        visit.setDescription(description);
+        return visit;
+    }
+
+}
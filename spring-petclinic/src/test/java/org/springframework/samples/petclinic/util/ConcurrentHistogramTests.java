@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConcurrentHistogram}.
+ */
+public class ConcurrentHistogramTests {
+
+    @Test
+    public void emptyHistogram() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesWithinRelativeError() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        for (long value = 1; value <= 1000000; value++) {
+            histogram.recordValue(value);
+        }
+        assertEquals(1000000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500000.5, histogram.getMean(), 0.001);
+        assertWithinOnePointSixPercent(500000, histogram.getValueAtPercentile(50));
+        assertWithinOnePointSixPercent(900000, histogram.getValueAtPercentile(90));
+        assertWithinOnePointSixPercent(990000, histogram.getValueAtPercentile(99));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        histogram.recordValue(3);
+        histogram.recordValue(5);
+        histogram.recordValue(100);
+        assertEquals(3, histogram.getValueAtPercentile(0));
+        assertEquals(5, histogram.getValueAtPercentile(50));
+        assertEquals(100, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void slotsCoverTheWholeRange() {
+        long[] values = {0, 127, 128, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            long highest = ConcurrentHistogram.highestEquivalentValue(ConcurrentHistogram.slotFor(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / 64);
+        }
+    }
+
+    @Test
+    public void concurrentRecording() throws InterruptedException {
+        final ConcurrentHistogram histogram = new ConcurrentHistogram();
+        final int threads = 8;
+        final int valuesPerThread = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 1; i <= valuesPerThread; i++) {
+                            histogram.recordValue(i);
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        start.countDown();
+        done.await();
+        assertEquals(threads * valuesPerThread, histogram.getCount());
+        assertEquals((long) threads * valuesPerThread * (valuesPerThread + 1) / 2, histogram.getTotal());
+        assertEquals(valuesPerThread, histogram.getMax());
+    }
+
+    private static void assertWithinOnePointSixPercent(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.016);
+    }
+
+}
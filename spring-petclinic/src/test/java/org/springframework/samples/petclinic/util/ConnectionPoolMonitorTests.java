@@ -0,0 +1,156 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * Tests for {@link ConnectionPoolMonitor}.
+ */
+public class ConnectionPoolMonitorTests {
+
+    private EmbeddedDatabase database;
+
+    private ConnectionPoolMonitor monitor;
+
+    @Before
+    public void setUp() {
+        this.database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("connectionPoolMonitorTests")
+                .build();
+        this.monitor = new ConnectionPoolMonitor(this.database);
+        this.monitor.setLeakThresholdSeconds(60);
+    }
+
+    @After
+    public void tearDown() {
+        this.database.shutdown();
+    }
+
+    @Test
+    public void recordsEachBorrow() throws Exception {
+        this.monitor.getConnection().close();
+        this.monitor.getConnection().close();
+
+        assertEquals(2, this.monitor.getBorrowCount());
+        assertEquals(0, this.monitor.getFailedCount());
+        assertTrue(this.monitor.getWaitTimeStatistics().startsWith("count=2 "));
+
+        this.monitor.reset();
+        assertEquals(0, this.monitor.getBorrowCount());
+    }
+
+    @Test
+    public void trackedConnectionsExposeTheirTarget() throws Exception {
+        Connection connection = this.monitor.getConnection();
+        try {
+            Connection target = ((ConnectionProxy) connection).getTargetConnection();
+            assertFalse(target instanceof ConnectionProxy);
+            assertTrue(connection.equals(connection));
+            assertFalse(connection.equals(target));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void connectionsHeldTooLongAreLeakSuspects() throws Exception {
+        this.monitor.setLeakThresholdSeconds(1);
+        this.monitor.setBorrowStackTraces(true);
+        Connection held = this.monitor.getConnection();
+        Connection closed = this.monitor.getConnection();
+        closed.close();
+        Thread.sleep(1100);
+
+        assertEquals(1, this.monitor.getLeakSuspectCount());
+        String suspect = this.monitor.getLeakSuspects()[0];
+        assertTrue(suspect, suspect.contains(Thread.currentThread().getName()));
+        assertTrue(suspect, suspect.contains("connectionsHeldTooLongAreLeakSuspects"));
+
+        held.close();
+        assertEquals(0, this.monitor.getLeakSuspectCount());
+    }
+
+    @Test
+    public void untrackedWithoutLeakThreshold() throws Exception {
+        this.monitor.setLeakThresholdSeconds(0);
+        Connection connection = this.monitor.getConnection();
+        try {
+            assertFalse(connection instanceof ConnectionProxy);
+            assertEquals(0, this.monitor.getLeakSuspects().length);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void poolCountsReadFromTarget() {
+        assertEquals(-1, this.monitor.getActive());
+        assertEquals(-1, this.monitor.getWaitCount());
+
+        ConnectionPoolMonitor pooled = new ConnectionPoolMonitor(new StubPool(this.database));
+        assertEquals(3, pooled.getActive());
+        assertEquals(7, pooled.getIdle());
+        assertEquals(10, pooled.getSize());
+        assertEquals(2, pooled.getWaitCount());
+        assertSame(StubPool.class, pooled.getTargetDataSource().getClass());
+    }
+
+
+    /**
+     * Exposes the same count properties as the tomcat-jdbc pool.
+     */
+    public static class StubPool extends DelegatingDataSource {
+
+        public StubPool(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        public int getActive() {
+            return 3;
+        }
+
+        public int getIdle() {
+            return 7;
+        }
+
+        public int getSize() {
+            return 10;
+        }
+
+        public int getWaitCount() {
+            return 2;
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * Tests for {@link DatasetGenerator}.
+ */
+public class DatasetGeneratorTests {
+
+    private EmbeddedDatabase first;
+
+    private EmbeddedDatabase second;
+
+    @After
+    public void tearDown() {
+        if (this.first != null) {
+            this.first.shutdown();
+        }
+        if (this.second != null) {
+            this.second.shutdown();
+        }
+    }
+
+    @Test
+    public void generatesTheReportedRows() throws Exception {
+        this.first = createDatabase("datasetGeneratorTests1", false);
+        DatasetGenerator generator = createGenerator(this.first, 42);
+        generator.generate();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(this.first);
+        assertEquals(500, generator.getOwnerCount());
+        assertEquals(generator.getOwnerCount(), count(jdbcTemplate, "owners"));
+        assertEquals(generator.getPetCount(), count(jdbcTemplate, "pets"));
+        assertEquals(generator.getVisitCount(), count(jdbcTemplate, "visits"));
+        assertEquals(20, count(jdbcTemplate, "vets"));
+        assertEquals(generator.getVetSpecialtyCount(), count(jdbcTemplate, "vet_specialties"));
+        assertEquals(6, count(jdbcTemplate, "types"));
+        assertEquals(3, count(jdbcTemplate, "specialties"));
+        assertTrue(generator.getPetCount() >= 500 && generator.getPetCount() <= 1000);
+        assertEquals(1, generator.getFirstOwnerId());
+    }
+
+    @Test
+    public void sameSeedSameData() throws Exception {
+        this.first = createDatabase("datasetGeneratorTests1", false);
+        this.second = createDatabase("datasetGeneratorTests2", false);
+        createGenerator(this.first, 42).generate();
+        createGenerator(this.second, 42).generate();
+        assertEquals(dump(this.first), dump(this.second));
+    }
+
+    @Test
+    public void differentSeedDifferentData() throws Exception {
+        this.first = createDatabase("datasetGeneratorTests1", false);
+        this.second = createDatabase("datasetGeneratorTests2", false);
+        createGenerator(this.first, 42).generate();
+        createGenerator(this.second, 43).generate();
+        assertFalse(dump(this.first).equals(dump(this.second)));
+    }
+
+    @Test
+    public void appendsAfterExistingRows() throws Exception {
+        this.first = createDatabase("datasetGeneratorTests1", true);
+        DatasetGenerator generator = createGenerator(this.first, 42);
+        generator.generate();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(this.first);
+        assertEquals(11, generator.getFirstOwnerId());
+        assertEquals(14, generator.getFirstPetId());
+        assertEquals(10 + 500, count(jdbcTemplate, "owners"));
+        assertEquals(13 + generator.getPetCount(), count(jdbcTemplate, "pets"));
+        assertEquals(6, count(jdbcTemplate, "types"));
+    }
+
+    @Test
+    public void restoresAutoCommitOfThePooledConnection() throws Exception {
+        this.first = createDatabase("datasetGeneratorTests1", false);
+        // stands for a pool handing out the same connection again
+        SingleConnectionDataSource pool = new SingleConnectionDataSource(
+                "jdbc:hsqldb:mem:datasetGeneratorTests1", "sa", "", true);
+        try {
+            DatasetGenerator generator = new DatasetGenerator(pool);
+            generator.setOwners(10);
+            generator.setVets(2);
+            generator.generate();
+            Connection connection = pool.getConnection();
+            assertTrue(connection.getAutoCommit());
+        } finally {
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void lastNamesAreNotPrefixesOfEachOther() {
+        DatasetGenerator generator = new DatasetGenerator(null);
+        generator.setLastNameCount(100);
+        assertEquals("Franklin0", generator.getLastName(0));
+        assertEquals("Franklin6", generator.getLastName(96));
+        generator.setLastNameCount(1000);
+        assertEquals("Davis00", generator.getLastName(1));
+        assertEquals("Davis62", generator.getLastName(993));
+    }
+
+    private static EmbeddedDatabase createDatabase(String name, boolean populate) {
+        EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName(name)
+                .addScript("classpath:db/hsqldb/initDB.sql");
+        if (populate) {
+            builder.addScript("classpath:db/hsqldb/populateDB.sql");
+        }
+        return builder.build();
+    }
+
+    private static DatasetGenerator createGenerator(EmbeddedDatabase database, long seed) {
+        DatasetGenerator generator = new DatasetGenerator(database);
+        generator.setSeed(seed);
+        generator.setOwners(500);
+        generator.setVets(20);
+        // several batches per table
+        generator.setBatchSize(100);
+        return generator;
+    }
+
+    private static int count(JdbcTemplate jdbcTemplate, String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private static String dump(EmbeddedDatabase database) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        StringBuilder dump = new StringBuilder();
+        String[] queries = {"SELECT * FROM owners ORDER BY id", "SELECT * FROM pets ORDER BY id",
+                "SELECT * FROM visits ORDER BY id", "SELECT * FROM vet_specialties ORDER BY vet_id, specialty_id"};
+        for (String query : queries) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(query);
+            dump.append(rows).append('\n');
+        }
+        return dump.toString();
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.samples.petclinic.model.Owner;
+import org.springframework.samples.petclinic.repository.jdbc.JdbcOwnerRepositoryImpl;
+import org.springframework.samples.petclinic.repository.jdbc.JdbcPetRepositoryImpl;
+import org.springframework.samples.petclinic.repository.jdbc.JdbcVisitRepositoryImpl;
+import org.springframework.samples.petclinic.service.OwnerLastNameIndex;
+import org.springframework.samples.petclinic.service.OwnersCache;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Tests for {@link ReadReplicaRoutingDataSource}, with a primary and two replica HSQLDB databases that tell themselves
+ * apart by the city of the first owner.
+ */
+public class ReadReplicaRoutingDataSourceTests {
+
+    @Rule
+    public SampleDatabase primary = new SampleDatabase();
+
+    @Rule
+    public SampleDatabase replica1 = new SampleDatabase();
+
+    @Rule
+    public SampleDatabase replica2 = new SampleDatabase();
+
+    private ReadReplicaRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private TransactionTemplate readWriteTransaction;
+
+    private DataSourceTransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        nameDatabase(this.primary, "primary");
+        nameDatabase(this.replica1, "replica1");
+        nameDatabase(this.replica2, "replica2");
+        this.routingDataSource = new ReadReplicaRoutingDataSource(this.primary.getDataSource(),
+                Arrays.<DataSource>asList(this.replica1.getDataSource(), this.replica2.getDataSource()));
+        DataSource dataSource = new LazyConnectionDataSourceProxy(this.routingDataSource);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
+        this.readOnlyTransaction = new TransactionTemplate(this.transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readWriteTransaction = new TransactionTemplate(this.transactionManager);
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToReplicasInTurn() {
+        assertEquals("replica1", readCity(this.readOnlyTransaction));
+        assertEquals("replica2", readCity(this.readOnlyTransaction));
+        assertEquals("replica1", readCity(this.readOnlyTransaction));
+    }
+
+    @Test
+    public void writesAndNonTransactionalReadsGoToPrimary() {
+        assertEquals("primary", readCity(this.readWriteTransaction));
+        assertEquals("primary", this.jdbcTemplate.queryForObject("SELECT city FROM owners WHERE id = 1", String.class));
+    }
+
+    @Test
+    public void connectionsForExplicitCredentialsComeFromPrimary() throws SQLException {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            Connection connection = this.routingDataSource.getConnection("sa", "");
+            try {
+                assertEquals("primary", cityOf(connection));
+            } finally {
+                connection.close();
+            }
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    @Test
+    public void leastLoadedReplicaIsChosen() throws SQLException {
+        this.routingDataSource.setSelection(ReadReplicaRoutingDataSource.Selection.LEAST_LOADED);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            Connection held = this.routingDataSource.getConnection();
+            String heldCity = cityOf(held);
+            for (int i = 0; i < 3; i++) {
+                Connection connection = this.routingDataSource.getConnection();
+                try {
+                    // always the replica that is not holding a connection
+                    assertEquals(heldCity.equals("replica1") ? "replica2" : "replica1", cityOf(connection));
+                } finally {
+                    connection.close();
+                }
+            }
+            held.close();
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    @Test
+    public void readsArePinnedToPrimaryAfterWrite() {
+        this.routingDataSource.setPinToPrimaryMillis(60000);
+        assertEquals("replica1", readCity(this.readOnlyTransaction));
+
+        this.readWriteTransaction.execute(new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                return jdbcTemplate.update("UPDATE owners SET telephone = '0123456789' WHERE id = 1");
+            }
+        });
+        assertEquals("primary", readCity(this.readOnlyTransaction));
+        assertEquals("primary", readCity(this.readOnlyTransaction));
+
+        this.routingDataSource.setPinToPrimaryMillis(0);
+        assertEquals("replica2", readCity(this.readOnlyTransaction));
+    }
+
+    @Test
+    public void readFromPrimaryBypassesReplicas() {
+        assertEquals("primary", ReadReplicaRoutingDataSource.readFromPrimary(this.readOnlyTransaction, cityReader()));
+        assertEquals("replica1", readCity(this.readOnlyTransaction));
+    }
+
+    @Test
+    public void ownersCacheRefillsFromPrimaryWhileReplicasLag() {
+        DataSource dataSource = this.jdbcTemplate.getDataSource();
+        ReferenceDataCache referenceDataCache = new ReferenceDataCache(dataSource);
+        JdbcVisitRepositoryImpl visitRepository = new JdbcVisitRepositoryImpl(dataSource);
+        JdbcOwnerRepositoryImpl ownerRepository = new JdbcOwnerRepositoryImpl(dataSource,
+                new NamedParameterJdbcTemplate(dataSource), visitRepository, referenceDataCache);
+        OwnersCache ownersCache = new OwnersCache(ownerRepository,
+                new JdbcPetRepositoryImpl(dataSource, ownerRepository, visitRepository, referenceDataCache),
+                this.transactionManager);
+        assertEquals("George", ownersCache.getOwner(1).getFirstName());
+
+        // the replicas do not get this change
+        this.readWriteTransaction.execute(new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                return jdbcTemplate.update("UPDATE owners SET first_name = 'Georges' WHERE id = 1");
+            }
+        });
+        ownersCache.evict(1, Collections.<Integer>emptyList());
+        Owner owner = ownersCache.getOwner(1);
+        assertEquals("Georges", owner.getFirstName());
+        assertEquals("primary", owner.getCity());
+        ownersCache.evict(1, Collections.<Integer>emptyList());
+        assertEquals("Georges", ownersCache.getPet(1).getOwner().getFirstName());
+    }
+
+    @Test
+    public void lastNameIndexLoadsFromPrimaryWithinReadOnlyTransactions() {
+        // the replicas do not have this owner yet
+        new JdbcTemplate(this.primary.getDataSource()).update(
+                "INSERT INTO owners VALUES (11, 'Jean', 'Lagrange', '12 rue Lamarck', 'Paris', '0123456789')");
+        final OwnerLastNameIndex index = new OwnerLastNameIndex(this.jdbcTemplate.getDataSource(),
+                this.transactionManager);
+        int count = this.readOnlyTransaction.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                return index.countByLastName("Lagrange");
+            }
+        });
+        assertEquals(1, count);
+    }
+
+
+    private String readCity(TransactionTemplate transactionTemplate) {
+        return transactionTemplate.execute(cityReader());
+    }
+
+    private TransactionCallback<String> cityReader() {
+        return new TransactionCallback<String>() {
+            @Override
+            public String doInTransaction(TransactionStatus status) {
+                return jdbcTemplate.queryForObject("SELECT city FROM owners WHERE id = 1", String.class);
+            }
+        };
+    }
+
+    private static String cityOf(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT city FROM owners WHERE id = 1");
+            resultSet.next();
+            return resultSet.getString(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void nameDatabase(SampleDatabase database, String name) {
+        new JdbcTemplate(database.getDataSource()).update("UPDATE owners SET city = ? WHERE id = 1", name);
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectRetrievalFailureException;
+import org.springframework.samples.petclinic.model.PetType;
+
+/**
+ * Tests for {@link ReferenceDataCache}.
+ */
+public class ReferenceDataCacheTests {
+
+    @Rule
+    public SampleDatabase database = new SampleDatabase();
+
+    private ReferenceDataCache cache;
+
+    @Before
+    public void setUp() {
+        this.cache = new ReferenceDataCache(this.database.getDataSource());
+    }
+
+    @Test
+    public void lookupsShareOneLoad() {
+        PetType cat = this.cache.getPetType(1);
+        assertEquals("cat", cat.getName());
+        assertSame(cat, this.cache.getPetTypeByName("cat"));
+        assertEquals(6, this.cache.getPetTypes().size());
+        assertEquals("bird", this.cache.getPetTypes().iterator().next().getName());
+        assertEquals("radiology", this.cache.getSpecialty(1).getName());
+        assertNull(this.cache.getPetTypeByName("unicorn"));
+        assertEquals(1, this.cache.getLoadCount());
+    }
+
+    @Test(expected = ObjectRetrievalFailureException.class)
+    public void unknownId() {
+        this.cache.getSpecialty(42);
+    }
+
+    @Test
+    public void unknownIdReloadsOnce() {
+        this.cache.getPetType(1);
+        new JdbcTemplate(this.database.getDataSource()).update("INSERT INTO types VALUES (7, 'ferret')");
+        assertEquals("ferret", this.cache.getPetType(7).getName());
+        assertEquals(2, this.cache.getLoadCount());
+
+        try {
+            this.cache.getSpecialty(42);
+            fail("Expected ObjectRetrievalFailureException");
+        } catch (ObjectRetrievalFailureException ex) {
+            // expected
+        }
+        assertEquals(3, this.cache.getLoadCount());
+    }
+
+    @Test
+    public void invalidateReloads() {
+        assertNull(this.cache.getPetTypeByName("ferret"));
+        new JdbcTemplate(this.database.getDataSource()).update("INSERT INTO types VALUES (7, 'ferret')");
+        assertNull(this.cache.getPetTypeByName("ferret"));
+
+        this.cache.invalidate();
+        assertEquals(7, this.cache.getPetType(7).getId().intValue());
+        assertEquals(2, this.cache.getLoadCount());
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.rules.ExternalResource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * JUnit rule providing each test with its own in-memory HSQLDB database, created from the PetClinic schema and sample
+ * data before the test and shut down after it, for tests of components that are built directly on a DataSource.
+ * <p/>
+ * Each instance gets a database of its own, so a test may change the data freely, and a test class may declare
+ * several instances (a primary and its replicas, for example).
+ */
+public class SampleDatabase extends ExternalResource {
+
+    private static final AtomicInteger databaseCount = new AtomicInteger();
+
+    private EmbeddedDatabase dataSource;
+
+    /**
+     * The database of the running test.
+     */
+    public EmbeddedDatabase getDataSource() {
+        return this.dataSource;
+    }
+
+    @Override
+    protected void before() {
+        this.dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .setName("sampleDatabase" + databaseCount.incrementAndGet())
+                .addScript("classpath:db/hsqldb/initDB.sql")
+                .addScript("classpath:db/hsqldb/populateDB.sql")
+                .build();
+    }
+
+    @Override
+    protected void after() {
+        this.dataSource.shutdown();
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.util.SqlProfiler.Execution;
+import org.springframework.samples.petclinic.util.SqlProfiler.RequestProfile;
+
+/**
+ * Tests for {@link SqlProfiler} and {@link SqlProfilingDataSourcePostProcessor}.
+ */
+public class SqlProfilerTests {
+
+    private static final String PETS_OF_OWNER = "SELECT id FROM pets WHERE owner_id = ?";
+
+    private static final String UPDATE_CITY = "UPDATE owners SET city = ? WHERE id = ?";
+
+    @Rule
+    public SampleDatabase database = new SampleDatabase();
+
+    private SqlProfiler profiler;
+
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        this.profiler = new SqlProfiler();
+        SqlProfilingDataSourcePostProcessor postProcessor = new SqlProfilingDataSourcePostProcessor();
+        postProcessor.setProfiler(this.profiler);
+        this.dataSource = (DataSource) postProcessor.postProcessAfterInitialization(
+                new ConnectionPoolMonitor(this.database.getDataSource()), "dataSource");
+        this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+    }
+
+    @Test
+    public void proxiesOnlyTheDataSourceBean() {
+        assertTrue(this.dataSource instanceof ConnectionPoolMonitor);
+        SqlProfilingDataSourcePostProcessor postProcessor = new SqlProfilingDataSourcePostProcessor();
+        DataSource pooledDataSource = this.database.getDataSource();
+        assertSame(pooledDataSource,
+                postProcessor.postProcessAfterInitialization(pooledDataSource, "pooledDataSource"));
+    }
+
+    @Test
+    public void addsUpTheStatementsOfTheCurrentRequest() {
+        RequestProfile profile = this.profiler.startRequest("GET /owners/6");
+        assertSame(profile, this.profiler.getCurrentRequest());
+        try {
+            // Jean Coleman has two pets
+            assertEquals(2, this.jdbcTemplate.queryForList(PETS_OF_OWNER, Integer.class, 6).size());
+            assertEquals(1, this.jdbcTemplate.update(UPDATE_CITY, "Madison", 1));
+        } finally {
+            this.profiler.endRequest(profile);
+        }
+        assertNull(this.profiler.getCurrentRequest());
+        assertEquals(2, profile.getStatementCount());
+        assertEquals(3, profile.getRowCount());
+        assertTrue(profile.getElapsedMillis() > 0);
+        assertEquals(1, this.profiler.getRequestCount());
+        assertTrue(this.profiler.getStatementsPerRequestStatistics().startsWith("count=1 "));
+
+        List<Execution> statements = this.profiler.getSlowestStatements();
+        assertEquals(2, statements.size());
+        for (Execution statement : statements) {
+            assertEquals("GET /owners/6", statement.getRequest());
+            if (statement.getSql().equals(PETS_OF_OWNER)) {
+                assertEquals(1, statement.getBindCount());
+                assertEquals(2, statement.getRowCount());
+            } else {
+                assertEquals(UPDATE_CITY, statement.getSql());
+                assertEquals(2, statement.getBindCount());
+                assertEquals(1, statement.getRowCount());
+            }
+        }
+    }
+
+    @Test
+    public void recordsBatchesAsOneStatement() {
+        List<Object[]> updates = new ArrayList<Object[]>();
+        for (int ownerId = 1; ownerId <= 3; ownerId++) {
+            updates.add(new Object[]{"Madison", ownerId});
+        }
+        this.jdbcTemplate.batchUpdate(UPDATE_CITY, updates);
+
+        List<Execution> statements = this.profiler.getSlowestStatements();
+        assertEquals(1, statements.size());
+        assertEquals(UPDATE_CITY, statements.get(0).getSql());
+        assertEquals(6, statements.get(0).getBindCount());
+        assertEquals(3, statements.get(0).getRowCount());
+        // outside of a request, statements are attributed to their thread
+        assertEquals(Thread.currentThread().getName(), statements.get(0).getRequest());
+    }
+
+    @Test
+    public void keepsOnlyTheSlowestStatements() {
+        this.profiler.setSlowestStatementCount(3);
+        for (int ownerId = 1; ownerId <= 10; ownerId++) {
+            this.jdbcTemplate.queryForList(PETS_OF_OWNER, Integer.class, ownerId);
+        }
+        List<Execution> statements = this.profiler.getSlowestStatements();
+        assertEquals(3, statements.size());
+        for (int i = 1; i < statements.size(); i++) {
+            assertTrue(statements.get(i - 1).getElapsedMillis() >= statements.get(i).getElapsedMillis());
+        }
+        assertTrue(this.profiler.getStatementTimeStatistics().startsWith("count=10 "));
+        assertEquals(3, this.profiler.getSlowestStatementDescriptions().length);
+
+        this.profiler.setSlowestStatementCount(1);
+        assertEquals(Arrays.asList(statements.get(0)), this.profiler.getSlowestStatements());
+        this.profiler.reset();
+        assertEquals(0, this.profiler.getSlowestStatements().size());
+    }
+
+}
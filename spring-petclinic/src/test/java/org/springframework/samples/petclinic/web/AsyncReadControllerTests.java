@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Test class for the read-only pages served by {@link AsyncReadController} in the "async" profile.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration("VisitsViewTests-config.xml")
+@ActiveProfiles({"jdbc", "async"})
+public class AsyncReadControllerTests {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+    }
+
+    @Test
+    public void showOwner() throws Exception {
+        this.mockMvc.perform(dispatched(get("/owners/1")))
+                .andExpect(status().isOk())
+                .andExpect(view().name("owners/ownerDetails"))
+                .andExpect(model().attributeExists("owner"));
+    }
+
+    @Test
+    public void findSingleOwnerRedirects() throws Exception {
+        this.mockMvc.perform(dispatched(get("/owners").param("lastName", "Franklin")))
+                .andExpect(redirectedUrl("/owners/1"));
+    }
+
+    @Test
+    public void findUnknownOwner() throws Exception {
+        this.mockMvc.perform(dispatched(get("/owners").param("lastName", "Unknown")))
+                .andExpect(view().name("owners/findOwners"))
+                .andExpect(model().attributeHasFieldErrors("owner", "lastName"));
+    }
+
+    @Test
+    public void showVetList() throws Exception {
+        this.mockMvc.perform(dispatched(get("/vets")))
+                .andExpect(status().isOk())
+                .andExpect(view().name("vets/vetList"))
+                .andExpect(model().attributeExists("vets"));
+    }
+
+    @Test
+    public void showVisits() throws Exception {
+        this.mockMvc.perform(dispatched(get("/owners/1/pets/1/visits")))
+                .andExpect(status().isOk())
+                .andExpect(view().name("visitList"))
+                .andExpect(model().attributeExists("visits"));
+    }
+
+    @Test
+    public void formsAndPreRenderedListsStaySynchronous() throws Exception {
+        this.mockMvc.perform(get("/owners/new"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(view().name("owners/createOrUpdateOwnerForm"));
+        this.mockMvc.perform(get("/vets.json"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void readsSeeTheAttributesOfTheirRequest() {
+        RequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        final List<RequestAttributes> seen = new ArrayList<RequestAttributes>();
+        VetController vetController = new VetController(null, null) {
+            @Override
+            public String showVetList(Map<String, Object> model) {
+                seen.add(RequestContextHolder.getRequestAttributes());
+                return "vets/vetList";
+            }
+        };
+        TaskExecutor otherThread = new TaskExecutor() {
+            @Override
+            public void execute(Runnable task) {
+                Thread thread = new Thread(task);
+                thread.start();
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        RequestContextHolder.setRequestAttributes(attributes);
+        try {
+            new AsyncReadController(null, vetController, null, otherThread).showVetList(new HashMap<String, Object>());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        assertEquals(Collections.singletonList(attributes), seen);
+    }
+
+
+    /**
+     * Perform the given request, check that it was handled asynchronously, wait for its result and return the async
+     * dispatch that renders it.
+     */
+    private RequestBuilder dispatched(RequestBuilder requestBuilder) throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvcResult.getAsyncResult();
+        return asyncDispatch(mvcResult);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for {@link ClinicExportController}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration("VisitsViewTests-config.xml")
+@ActiveProfiles("jdbc")
+public class ClinicExportControllerTests {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+    }
+
+    @Test
+    public void exportCsv() throws Exception {
+        this.mockMvc.perform(get("/export/clinic.csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(header().string("Content-Disposition", containsString("clinic.csv")))
+                .andExpect(content().string(startsWith("ownerId,firstName,lastName,address,city,telephone,petId," +
+                        "petName,birthDate,petType,visitId,visitDate,description\r\n" +
+                        "1,George,Franklin,110 W. Liberty St.,Madison,6085551023,1,Leo,2010-09-07,cat,,,\r\n")));
+    }
+
+    @Test
+    public void exportJson() throws Exception {
+        this.mockMvc.perform(get("/export/clinic.json"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("[{\"ownerId\":1,\"firstName\":\"George\"")))
+                .andExpect(content().string(containsString("\"petName\":\"Samantha\",\"birthDate\":\"2012-09-04\"")))
+                .andExpect(content().string(containsString("\"visitId\":null")));
+    }
+
+    @Test
+    public void quoteCsvValues() throws Exception {
+        StringWriter writer = new StringWriter();
+        ClinicExportController.writeCsvLine(writer, new Object[] {7, "checkup, all \"fine\"", null, "two\nlines"});
+        assertEquals("7,\"checkup, all \"\"fine\"\"\",,\"two\nlines\"\r\n", writer.toString());
+    }
+
+}
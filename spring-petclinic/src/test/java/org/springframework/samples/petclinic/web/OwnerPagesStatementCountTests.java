@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.samples.petclinic.model.Pet;
+import org.springframework.samples.petclinic.service.OwnersCache;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Counts the SQL statements Hibernate prepares for the owner pages with the "jpa" profile, starting from cold caches:
+ * the visits are lazy, so the list of owners reads none, and the owner page reads those of all pets in one batch.
+ * The views themselves are not rendered by MockMvc.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration("VisitsViewTests-config.xml")
+@ActiveProfiles("jpa")
+public class OwnerPagesStatementCountTests {
+
+    private static final String VISITS = Pet.class.getName() + ".visits";
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private OwnersCache ownersCache;
+
+    private MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+        SessionFactory sessionFactory = ((HibernateEntityManagerFactory) this.entityManagerFactory).getSessionFactory();
+        Cache cache = sessionFactory.getCache();
+        cache.evictEntityRegions();
+        cache.evictCollectionRegions();
+        cache.evictQueryRegions();
+        this.ownersCache.clear();
+        this.statistics = sessionFactory.getStatistics();
+        this.statistics.setStatisticsEnabled(true);
+        this.statistics.clear();
+    }
+
+    @Test
+    public void showOwner() throws Exception {
+        // Jean Coleman has two pets with visits
+        this.mockMvc.perform(get("/owners/6"))
+                .andExpect(status().isOk())
+                .andExpect(model().attributeExists("owner"))
+                .andExpect(view().name("owners/ownerDetails"));
+        // the owner, its pets (joined with their types) and the visits of both pets
+        assertEquals(3, this.statistics.getPrepareStatementCount());
+        assertEquals(2, this.statistics.getCollectionStatistics(VISITS).getLoadCount());
+        assertEquals(1, this.statistics.getCollectionStatistics(VISITS).getFetchCount());
+    }
+
+    @Test
+    public void listOwners() throws Exception {
+        this.mockMvc.perform(get("/owners"))
+                .andExpect(status().isOk())
+                .andExpect(model().attributeExists("selections"))
+                .andExpect(view().name("owners/ownersList"));
+        // the owner summaries and their pet names
+        assertEquals(2, this.statistics.getPrepareStatementCount());
+        assertEquals(0, this.statistics.getCollectionStatistics(VISITS).getLoadCount());
+    }
+
+}
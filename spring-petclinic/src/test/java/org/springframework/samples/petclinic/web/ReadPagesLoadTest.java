@@ -0,0 +1,188 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the read-only pages of a deployed PetClinic (owner details, owner search, list of vets and visits of a pet)
+ * with an increasing number of concurrent clients, and prints the throughput and the latency percentiles reached at
+ * each step: the curve to compare between the default, blocking configuration and the "async" profile (for instance
+ * <code>jpa,async</code> in <code>web.xml</code>). The difference shows once the number of clients exceeds the
+ * container's request thread pool, so run both against a server whose pool is smaller than the largest step.
+ * <p/>
+ * Not a unit test (it is not picked up by Surefire); run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.springframework.samples.petclinic.web.ReadPagesLoadTest \
+ *     -Dexec.args="http://localhost:8080/jboss-petclinic-spring 1,8,32,128,512 20"
+ * </pre>
+ * The arguments are the base URL of the application, the numbers of clients and the duration of each step in seconds.
+ */
+public class ReadPagesLoadTest {
+
+    private static final String[] PATHS = {
+            "/owners/1", "/owners?lastName=Davis", "/vets", "/owners/1/pets/1/visits",
+            "/owners/3", "/owners?lastName=", "/owners/6/pets/7/visits", "/owners/10"};
+
+    private static final int WARMUP_SECONDS = 5;
+
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = (args.length > 0 ? args[0] : "http://localhost:8080/jboss-petclinic-spring");
+        int[] clientCounts = parseCounts(args.length > 1 ? args[1] : "1,2,4,8,16,32,64,128,256,512");
+        int seconds = (args.length > 2 ? Integer.parseInt(args[2]) : 20);
+
+        run(baseUrl, clientCounts[0], WARMUP_SECONDS);
+        System.out.println(String.format("%8s %12s %10s %10s %10s %10s %8s",
+                "clients", "requests/s", "mean (ms)", "p50 (ms)", "p90 (ms)", "p99 (ms)", "errors"));
+        for (int clients : clientCounts) {
+            Step step = run(baseUrl, clients, seconds);
+            System.out.println(String.format("%8d %12.1f %10.2f %10.2f %10.2f %10.2f %8d",
+                    clients, step.latencies.length / (double) seconds, step.mean(), step.percentile(50),
+                    step.percentile(90), step.percentile(99), step.errors));
+        }
+    }
+
+    private static int[] parseCounts(String counts) {
+        String[] parts = counts.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Have the given number of clients request the pages in a loop, without think time, for the given duration.
+     */
+    private static Step run(final String baseUrl, int clients, int seconds) throws InterruptedException {
+        final long end = System.nanoTime() + seconds * 1000000000L;
+        final AtomicLong errors = new AtomicLong();
+        final List<long[]> latenciesPerClient = new ArrayList<long[]>(clients);
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            final int client = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    try {
+                        for (int request = client; System.nanoTime() < end; request++) {
+                            long start = System.nanoTime();
+                            if (!get(baseUrl + PATHS[request % PATHS.length])) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                            if (count == latencies.length) {
+                                latencies = Arrays.copyOf(latencies, count * 2);
+                            }
+                            latencies[count++] = System.nanoTime() - start;
+                        }
+                    } finally {
+                        synchronized (latenciesPerClient) {
+                            latenciesPerClient.add(Arrays.copyOf(latencies, count));
+                        }
+                        done.countDown();
+                    }
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        int total = 0;
+        for (long[] latencies : latenciesPerClient) {
+            total += latencies.length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] latencies : latenciesPerClient) {
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+            offset += latencies.length;
+        }
+        Arrays.sort(all);
+        return new Step(all, errors.get());
+    }
+
+    /**
+     * @return whether the page was served (redirects, such as a search matching a single owner, are not followed)
+     */
+    private static boolean get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setInstanceFollowRedirects(false);
+            int status = connection.getResponseCode();
+            InputStream body = (status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            if (body != null) {
+                // read the whole page so that the connection can be reused
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) != -1) {
+                }
+                body.close();
+            }
+            return status < 400;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+
+    private static class Step {
+
+        /**
+         * Latencies of the successful requests, in nanoseconds, sorted.
+         */
+        private final long[] latencies;
+
+        private final long errors;
+
+        private Step(long[] latencies, long errors) {
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+
+        private double mean() {
+            if (this.latencies.length == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (long latency : this.latencies) {
+                sum += latency;
+            }
+            return sum / this.latencies.length / 1000000.0;
+        }
+
+        private double percentile(int percent) {
+            if (this.latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percent / 100.0 * this.latencies.length) - 1;
+            return this.latencies[Math.max(index, 0)] / 1000000.0;
+        }
+    }
+
+}
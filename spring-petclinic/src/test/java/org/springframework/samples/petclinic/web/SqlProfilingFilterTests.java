@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.samples.petclinic.service.OwnersCache;
+import org.springframework.samples.petclinic.util.SqlProfiler;
+import org.springframework.samples.petclinic.util.SqlProfiler.Execution;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for the SQL profile headers added by {@link SqlProfilingFilter}, and the page of the slowest statements
+ * served by {@link SqlProfileController}, with the "sql-profiler" profile.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration("VisitsViewTests-config.xml")
+@ActiveProfiles({"jdbc", "sql-profiler"})
+public class SqlProfilingFilterTests {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private OwnersCache ownersCache;
+
+    @Autowired
+    private SqlProfiler sqlProfiler;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() throws Exception {
+        SqlProfilingFilter filter = new SqlProfilingFilter();
+        filter.init(new MockFilterConfig(this.webApplicationContext.getServletContext()));
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).addFilters(filter).build();
+        this.ownersCache.clear();
+        // forget the statements of the database initialization
+        this.sqlProfiler.reset();
+    }
+
+    @Test
+    public void addsProfileHeaders() throws Exception {
+        MockHttpServletResponse response = this.mockMvc.perform(get("/owners/6"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        // owner, pets and visits
+        assertTrue(Integer.parseInt(response.getHeader(SqlProfilingFilter.COUNT_HEADER)) > 0);
+        assertTrue(Double.parseDouble(response.getHeader(SqlProfilingFilter.TIME_HEADER)) > 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void listsSlowestStatements() throws Exception {
+        this.mockMvc.perform(get("/owners/6")).andExpect(status().isOk());
+        List<Execution> statements = (List<Execution>) this.mockMvc.perform(get("/debug/sql"))
+                .andExpect(status().isOk())
+                .andExpect(model().attributeExists("statementTimes", "statementsPerRequest"))
+                .andExpect(view().name("debug/sqlStatements"))
+                .andReturn().getModelAndView().getModel().get("statements");
+        assertFalse(statements.isEmpty());
+        boolean ownerPage = false;
+        for (Execution statement : statements) {
+            ownerPage |= statement.getRequest().equals("GET /owners/6");
+        }
+        assertTrue(ownerPage);
+    }
+
+}
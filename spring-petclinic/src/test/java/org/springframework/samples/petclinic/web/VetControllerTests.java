@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Test class for the pre-rendered lists of vets served by {@link VetController}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration("VisitsViewTests-config.xml")
+@ActiveProfiles("jdbc")
+public class VetControllerTests {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+    }
+
+    @Test
+    public void getVetsJson() throws Exception {
+        this.mockMvc.perform(get("/vets.json"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/json"))
+                .andExpect(content().string(containsString("\"firstName\":\"James\"")));
+    }
+
+    @Test
+    public void getVetsAtom() throws Exception {
+        this.mockMvc.perform(get("/vets.atom"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/atom+xml"))
+                .andExpect(content().string(containsString("Veterinarians")));
+    }
+
+    @Test
+    public void getVetsJsonNotModified() throws Exception {
+        String etag = this.mockMvc.perform(get("/vets.json"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertTrue(etag.startsWith("\""));
+
+        this.mockMvc.perform(get("/vets.json").header("If-None-Match", "\"other\", W/" + etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+        this.mockMvc.perform(get("/vets.json").header("If-None-Match", "\"other\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void etagsDifferPerFormat() throws Exception {
+        String json = this.mockMvc.perform(get("/vets.json")).andReturn().getResponse().getHeader("ETag");
+        String xml = this.mockMvc.perform(get("/vets.xml")).andReturn().getResponse().getHeader("ETag");
+        assertFalse(json.equals(xml));
+    }
+
+}
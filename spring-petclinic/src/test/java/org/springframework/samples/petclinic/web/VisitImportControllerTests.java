@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.web;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.service.ClinicService;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Posts CSV and JSON visit imports to {@link VisitImportController}. Each test runs in a transaction that is rolled
+ * back, so the imported visits do not leak into other tests sharing the in-memory database.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration("VisitsViewTests-config.xml")
+@ActiveProfiles("jdbc")
+@Transactional
+public class VisitImportControllerTests {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private ClinicService clinicService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setup() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+    }
+
+    @Test
+    public void importCsv() throws Exception {
+        int found = this.clinicService.findPetById(7).getVisits().size();
+        String csv = "petId,date,description\n" +
+                "7,2013-01-01,rabies shot\n" +
+                "7,2013-01-02,\"checkup, all fine\"\n";
+        this.mockMvc.perform(post("/visits/import").contentType(MediaType.parseMediaType("text/csv")).content(csv))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"imported\":2")));
+        assertEquals(found + 2, this.clinicService.findPetById(7).getVisits().size());
+    }
+
+    @Test
+    public void importJson() throws Exception {
+        int found = this.clinicService.findPetById(8).getVisits().size();
+        String json = "[{\"petId\": 8, \"date\": \"2013-01-01\", \"description\": \"rabies shot\"}," +
+                "{\"petId\": 8, \"date\": \"2013-01-02\", \"description\": \"neutered\", \"vet\": {\"id\": 1}}]";
+        this.mockMvc.perform(post("/visits/import").contentType(MediaType.APPLICATION_JSON).content(json))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"imported\":2")));
+        assertEquals(found + 2, this.clinicService.findPetById(8).getVisits().size());
+    }
+
+    @Test
+    public void importCsvWithInvalidDate() throws Exception {
+        String csv = "7,2013-01-01,rabies shot\n" +
+                "7,01/02/2013,checkup\n";
+        this.mockMvc.perform(post("/visits/import").contentType(MediaType.parseMediaType("text/csv")).content(csv))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("Line 2")));
+    }
+
+}